@@ -1,17 +1,122 @@
+import daemon.CompileServer;
+import driver.BatchCompiler;
+import driver.CompilationCache;
+import driver.CompilationResult;
+import driver.WatchCompiler;
+import ir.IrBuilder;
+import ir.IrProgram;
+import ir.Optimizer;
+import jvm.JvmCompiler;
+import jvm.JvmProgram;
 import lexical.LexicalAnalysis;
+import lexical.ParallelLexer;
+import lexical.PipelinedLexer;
+import lexical.TokenBuffer;
 import syntatic.SyntacticAnalysis;
+import vm.BytecodeCompiler;
+import vm.Console;
+import vm.ExecutionException;
+import vm.Interpreter;
+import vm.IrCompiler;
+import vm.Program;
+import vm.TieredInterpreter;
+import x86.NativeCompiler;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
     public static void main(String[] args) {
         String fileName = null;
+        boolean parallelLex = false;
+        boolean pipelined = false;
+        boolean explicitStack = false;
+        boolean parallelCheck = false;
+        boolean batch = false;
+        boolean daemon = false;
+        boolean cache = false;
+        boolean watch = false;
+        boolean run = false;
+        boolean jvm = false;
+        boolean tiered = false;
+        boolean optimize = false;
+        boolean dumpIr = false;
+        String emit = null;
+        String executable = null;
+        Console.Flush flush = Console.Flush.INPUT;
+        List<String> inputs = new ArrayList<>();
 
-        if (args.length == 0) {
+        for (String arg : args) {
+            if (arg.equals("--parallel-lex")) {
+                parallelLex = true;
+            } else if (arg.equals("--pipelined")) {
+                pipelined = true;
+            } else if (arg.equals("--explicit-stack")) {
+                explicitStack = true;
+            } else if (arg.equals("--parallel-check")) {
+                parallelCheck = true;
+            } else if (arg.equals("--batch")) {
+                batch = true;
+            } else if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--cache")) {
+                cache = true;
+            } else if (arg.equals("--watch")) {
+                watch = true;
+            } else if (arg.equals("--run")) {
+                run = true;
+            } else if (arg.equals("--jvm")) {
+                run = true;
+                jvm = true;
+            } else if (arg.equals("--tiered")) {
+                run = true;
+                tiered = true;
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--ir")) {
+                dumpIr = true;
+            } else if (arg.startsWith("--emit=")) {
+                emit = arg.substring("--emit=".length());
+            } else if (arg.startsWith("--native=")) {
+                executable = arg.substring("--native=".length());
+            } else if (arg.startsWith("--flush=")) {
+                try {
+                    flush = Console.Flush.valueOf(arg.substring("--flush=".length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown flush policy: " + arg.substring("--flush=".length()));
+                    System.exit(1);
+                }
+            } else {
+                fileName = arg;
+                inputs.add(arg);
+            }
+        }
+
+        if (batch) {
+            System.exit(batch(inputs, cache));
+        }
+        if (daemon) {
+            System.exit(daemon(fileName));
+        }
+        if (watch) {
+            System.exit(watch(fileName));
+        }
+
+        if (fileName == null) {
             Scanner scanner = new Scanner(System.in);
             fileName = scanner.nextLine();
-        } else {
-            fileName = args[0];
         }
 
         if (fileName == null) {
@@ -19,8 +124,197 @@ public class Main {
             System.exit(1);
         }
 
+        CompilationCache compilationCache = null;
+        byte[] source = null;
+        String key = null;
+        boolean lower = run || emit != null || executable != null || optimize || dumpIr;
+        // Only the front end's messages are cached; runs and lowered output are always built.
+        if (cache && !lower) {
+            try {
+                compilationCache = CompilationCache.open();
+                source = Files.readAllBytes(Path.of(fileName));
+                key = CompilationCache.key(source, "");
+            } catch (IOException | InvalidPathException e) {
+                // Compile without the cache; the lexer reports an unreadable file.
+                compilationCache = null;
+            }
+        }
+        if (compilationCache != null) {
+            CompilationResult result = compilationCache.get(key, Path.of(fileName));
+            RuntimeException failure = null;
+            if (result == null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                String error = null;
+                try {
+                    SyntacticAnalysis s = parser(new LexicalAnalysis(ByteBuffer.wrap(source)), parallelLex, pipelined);
+                    s.setOutput(new PrintStream(output, true, StandardCharsets.UTF_8));
+                    s.setExplicitStack(explicitStack);
+                    if (parallelCheck) {
+                        s.setParallelChecks(ForkJoinPool.commonPool());
+                    }
+                    s.start();
+                } catch (RuntimeException e) {
+                    failure = e;
+                    error = e.toString();
+                }
+                result = new CompilationResult(Path.of(fileName), source.length, output.toString(StandardCharsets.UTF_8), error);
+                compilationCache.put(key, result);
+            }
+            System.err.println(compilationCache.stats());
+            System.out.print(result.output);
+            if (result.failed()) {
+                // Ends as the compile without the cache does, with the exception out of main.
+                throw failure != null ? failure : result.exception();
+            }
+            return;
+        }
+
         LexicalAnalysis l = new LexicalAnalysis(fileName);
-        SyntacticAnalysis s = new SyntacticAnalysis(l);
+        SyntacticAnalysis s = parser(l, parallelLex, pipelined);
+        s.setExplicitStack(explicitStack);
+        s.setBuildAst(lower);
+        if (parallelCheck) {
+            s.setParallelChecks(ForkJoinPool.commonPool());
+        }
         s.start();
+        IrProgram ir = null;
+        if (optimize || dumpIr) {
+            ir = IrBuilder.build(s.getAst(), s.getSemanticAnalysis());
+            if (optimize) {
+                Optimizer optimizer = Optimizer.standard();
+                optimizer.optimize(ir);
+                optimizer.report(System.err);
+            }
+            if (dumpIr) {
+                System.out.print(ir);
+            }
+        }
+        if (emit != null) {
+            try {
+                JvmCompiler.write(s.getAst(), s.getSemanticAnalysis(), Path.of(emit));
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("Unable to write " + emit + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (executable != null) {
+            try {
+                if (executable.endsWith(".s")) {
+                    Files.writeString(Path.of(executable), NativeCompiler.compile(s.getAst(), s.getSemanticAnalysis()));
+                } else {
+                    NativeCompiler.build(s.getAst(), s.getSemanticAnalysis(), Path.of(executable));
+                }
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("Unable to write " + executable + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        if (run) {
+            run(s, jvm, tiered, ir, flush);
+        }
+    }
+
+    private static void run(SyntacticAnalysis s, boolean jvm, boolean tiered, IrProgram ir, Console.Flush flush) {
+        // The console buffers the output itself.
+        Console console = new Console(System.in, new FileOutputStream(FileDescriptor.out), flush);
+        try {
+            JvmProgram program = null;
+            if (jvm) {
+                try {
+                    program = JvmCompiler.load(s.getAst(), s.getSemanticAnalysis());
+                } catch (IllegalArgumentException e) {
+                    // Too large for one JVM method; the interpreter has no such limit.
+                    System.err.println(e.getMessage());
+                }
+            }
+            if (program != null) {
+                program.run(console);
+                return;
+            }
+            Program bytecode = ir != null ? IrCompiler.compile(ir)
+                    : BytecodeCompiler.compile(s.getAst(), s.getSemanticAnalysis());
+            if (tiered) {
+                TieredInterpreter interpreter = new TieredInterpreter(console);
+                interpreter.run(bytecode);
+                interpreter.report(System.err);
+            } else {
+                new Interpreter(console).run(bytecode);
+            }
+        } catch (ExecutionException e) {
+            System.out.printf("Erro na linha %02d\n", e.getLine());
+            throw e;
+        }
+    }
+
+    private static SyntacticAnalysis parser(LexicalAnalysis l, boolean parallelLex, boolean pipelined) {
+        if (parallelLex) {
+            return new SyntacticAnalysis(new TokenBuffer(l.getSource()), new ParallelLexer(l.getSource()), false);
+        } else if (pipelined) {
+            return new SyntacticAnalysis(new TokenBuffer(l.getSource()), new PipelinedLexer(l.getSource()), false);
+        }
+        return new SyntacticAnalysis(l);
+    }
+
+    private static int daemon(String address) {
+        if (address == null) {
+            System.out.println("Socket path or port not provided");
+            return 1;
+        }
+        try (CompileServer server = new CompileServer(CompileServer.address(address))) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.stop();
+                } catch (IOException ignored) {
+                    // Exiting anyway.
+                }
+            }));
+            server.serve();
+            return 0;
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Unable to start compile server: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int watch(String fileName) {
+        if (fileName == null) {
+            System.out.println("File name not provided");
+            return 1;
+        }
+        try {
+            new WatchCompiler(Path.of(fileName)).watch(System.out, System.err);
+            return 0;
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Unable to watch file: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            return 0;
+        }
+    }
+
+    private static int batch(List<String> inputs, boolean cache) {
+        List<Path> files;
+        try {
+            files = BatchCompiler.collect(inputs);
+        } catch (IOException e) {
+            System.out.println("Unable to read batch input: " + e.getMessage());
+            return 1;
+        }
+        BatchCompiler compiler = new BatchCompiler();
+        CompilationCache compilationCache = null;
+        if (cache) {
+            try {
+                compilationCache = CompilationCache.open();
+                compiler.setCache(compilationCache);
+            } catch (IOException e) {
+                System.err.println("Unable to open compilation cache: " + e.getMessage());
+            }
+        }
+        List<CompilationResult> results = compiler.compile(files);
+        int failures = BatchCompiler.report(results, System.out);
+        if (compilationCache != null) {
+            System.err.println(compilationCache.stats());
+        }
+        return failures == 0 ? 0 : 1;
     }
-}
\ No newline at end of file
+}
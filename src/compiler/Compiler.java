@@ -0,0 +1,93 @@
+package compiler;
+
+import lexical.LexicalAnalysis;
+import lexical.SourceInput;
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticException;
+import syntatic.SyntacticAnalysis;
+import syntatic.SyntacticException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Compiles sources held in memory and reports errors as values instead of printing them.
+ * Every thread keeps its own lexer, token buffer, parser and semantic analysis and resets
+ * them between sources, so a compilation allocates little besides the source view and,
+ * when it fails, the diagnostic. A successful compilation returns {@link Result#SUCCESS}.
+ */
+public class Compiler {
+    private final ThreadLocal<Session> sessions = ThreadLocal.withInitial(Session::new);
+
+    public Result compile(CharSequence source) {
+        return sessions.get().compile(source);
+    }
+
+    public Result compile(byte[] source) {
+        return compile(ByteBuffer.wrap(source));
+    }
+
+    public Result compile(ByteBuffer source) {
+        return sessions.get().compile(new SourceInput(source));
+    }
+
+    private static class Session {
+        private final LexicalAnalysis lexer;
+        private final TokenBuffer tokens;
+        private final SyntacticAnalysis parser;
+        private final CharsetEncoder encoder;
+        private ByteBuffer encoded;
+
+        Session() {
+            SourceInput empty = new SourceInput(ByteBuffer.allocate(0));
+            this.lexer = new LexicalAnalysis(empty);
+            this.tokens = new TokenBuffer(empty);
+            this.parser = new SyntacticAnalysis(tokens, lexer, false);
+            this.parser.setOutput(null);
+            this.parser.setExplicitStack(true);
+            this.encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.encoded = ByteBuffer.allocate(1024);
+        }
+
+        Result compile(CharSequence source) {
+            int capacity = source.length() * 3;
+            if (encoded.capacity() < capacity) {
+                encoded = ByteBuffer.allocate(Math.max(capacity, encoded.capacity() * 2));
+            }
+            encoded.clear();
+            encoder.reset();
+            encoder.encode(CharBuffer.wrap(source), encoded, true);
+            encoder.flush(encoded);
+            encoded.flip();
+            return compile(new SourceInput(encoded));
+        }
+
+        Result compile(SourceInput input) {
+            lexer.reset(input);
+            tokens.reset(input);
+            try {
+                parser.reset();
+                parser.start();
+                return Result.SUCCESS;
+            } catch (SyntacticException e) {
+                TokenType token = parser.getToken();
+                Phase phase = token == TokenType.INVALID_TOKEN || token == TokenType.UNEXPECTED_EOF
+                        ? Phase.LEXICAL : Phase.SYNTACTIC;
+                return failure(phase, e.getDescription());
+            } catch (SemanticException e) {
+                return failure(Phase.SEMANTIC, e.getMessage());
+            }
+        }
+
+        private Result failure(Phase phase, String message) {
+            return new Result(List.of(new Diagnostic(phase, parser.getLine(), parser.getTokenText(), message)));
+        }
+    }
+}
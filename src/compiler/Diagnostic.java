@@ -0,0 +1,21 @@
+package compiler;
+
+/** An error found by the compiler: where it was reported and what was printed for it. */
+public class Diagnostic {
+    public final Phase phase;
+    public final int line;
+    public final String token;
+    public final String message;
+
+    public Diagnostic(Phase phase, int line, String token, String message) {
+        this.phase = phase;
+        this.line = line;
+        this.token = token;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s na linha %02d [%s]: %s", phase, line, token, message);
+    }
+}
@@ -0,0 +1,7 @@
+package compiler;
+
+public enum Phase {
+    LEXICAL,
+    SYNTACTIC,
+    SEMANTIC
+}
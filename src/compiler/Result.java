@@ -0,0 +1,18 @@
+package compiler;
+
+import java.util.List;
+
+/** Outcome of one compilation. The compiler stops at the first error, so there is at most one diagnostic. */
+public class Result {
+    public static final Result SUCCESS = new Result(List.of());
+
+    public final List<Diagnostic> diagnostics;
+
+    public Result(List<Diagnostic> diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public boolean succeeded() {
+        return diagnostics.isEmpty();
+    }
+}
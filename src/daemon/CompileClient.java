@@ -0,0 +1,86 @@
+package daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Thin client of {@link CompileServer}, a drop-in for {@code Main} in scripts:
+ * {@code CompileClient <address> <file>} prints what the compiler printed and exits with 1
+ * when the file does not compile. {@code CompileClient <address> --stats} prints the
+ * server counters.
+ */
+public class CompileClient {
+    private final SocketAddress address;
+
+    public CompileClient(SocketAddress address) {
+        this.address = address;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: CompileClient <socket path | port> <file | --stats | --health>");
+            System.exit(2);
+        }
+        CompileClient client = new CompileClient(CompileServer.address(args[0]));
+        Response response = switch (args[1]) {
+            case "--stats" -> client.send("STATS", null);
+            case "--health" -> client.send("HEALTH", null);
+            default -> client.send("PATH " + Path.of(args[1]).toAbsolutePath(), null);
+        };
+        System.out.print(response.body);
+        switch (response.status) {
+            case "OK" -> System.exit(0);
+            case "FAIL" -> {
+                System.err.println(response.error);
+                System.exit(1);
+            }
+            default -> {
+                System.err.println("Compile server answered " + response.status);
+                System.exit(2);
+            }
+        }
+    }
+
+    public Response compile(byte[] source) throws IOException {
+        return send("SOURCE " + source.length, source);
+    }
+
+    public Response send(String request, byte[] body) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            byte[] line = (request + "\n").getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(line.length + (body == null ? 0 : body.length));
+            buffer.put(line);
+            if (body != null) {
+                buffer.put(body);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.shutdownOutput();
+
+            InputStream in = Channels.newInputStream(channel);
+            String[] header = CompileServer.readLine(in).split(" ", 3);
+            byte[] bytes = in.readNBytes(Integer.parseInt(header[1]));
+            return new Response(header[0], new String(bytes, StandardCharsets.UTF_8), header.length > 2 ? header[2] : null);
+        }
+    }
+
+    public static class Response {
+        public final String status;
+        public final String body;
+        public final String error;
+
+        public Response(String status, String body, String error) {
+            this.status = status;
+            this.body = body;
+            this.error = error;
+        }
+    }
+}
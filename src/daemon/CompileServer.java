@@ -0,0 +1,312 @@
+package daemon;
+
+import driver.BatchCompiler;
+import driver.CompilationResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compile daemon listening on a Unix-domain socket or a loopback TCP port, so repeated
+ * compiles skip JVM startup and run on warm code. Each connection carries one request,
+ * a single line optionally followed by a body:
+ *
+ * <pre>
+ * PATH &lt;path&gt;          compile a file the server can read
+ * SOURCE &lt;length&gt;      compile the &lt;length&gt; bytes that follow
+ * HEALTH                 liveness check
+ * STATS                  counters, one "name value" per line
+ * </pre>
+ *
+ * The response is a line {@code <status> <length> [<error>]} followed by {@code <length>}
+ * bytes of body. Status is OK or FAIL for a compile (the body holds the messages the
+ * compiler printed, the error is the exception it failed with), BUSY when the request was
+ * rejected by the concurrency limit, TIMEOUT when it did not finish in time and ERROR for
+ * a malformed request.
+ *
+ * Every connection is handled on its own virtual thread. At most {@code maxConcurrent}
+ * compiles run at once and {@code maxQueued} more wait for their turn; a request past both
+ * is answered BUSY at once. The timeout counts from the accept, waiting included. A request
+ * that times out is answered and closed by a watchdog; its compile still runs to the end,
+ * since the parser is not interruptible, but it cannot take longer than a full parse of its
+ * input.
+ */
+public class CompileServer implements AutoCloseable {
+    public static final int DEFAULT_QUEUE = 64;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+    public static final int MAX_SOURCE_LENGTH = 64 << 20;
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final SocketAddress address;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService watchdog;
+    private final int maxConcurrent;
+    private final Semaphore compiling;
+    private final Semaphore admitted;
+    private final long timeoutMillis;
+    private final long startTime;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong compiled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    private final AtomicLong compileNanos = new AtomicLong();
+    private final AtomicLong sourceBytes = new AtomicLong();
+
+    public CompileServer(SocketAddress address, int maxConcurrent, int maxQueued, long timeoutMillis) throws IOException {
+        this.address = address;
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address);
+        this.workers = Executors.newVirtualThreadPerTaskExecutor();
+        this.maxConcurrent = maxConcurrent;
+        this.compiling = new Semaphore(maxConcurrent);
+        this.admitted = new Semaphore(maxConcurrent + maxQueued);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> daemonThread(runnable, "watchdog"));
+        this.timeoutMillis = timeoutMillis;
+        this.startTime = System.nanoTime();
+    }
+
+    public CompileServer(SocketAddress address) throws IOException {
+        this(address, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * A port number means that port on the loopback interface, anything else a socket file.
+     * Throws IllegalArgumentException for a port out of range or a path that is not valid.
+     */
+    public static SocketAddress address(String spec) {
+        if (!spec.isEmpty() && spec.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            int port = spec.length() > 5 ? -1 : Integer.parseInt(spec);
+            if (port < 0 || port > 65535) {
+                throw new IllegalArgumentException("Port out of range: " + spec);
+            }
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    public SocketAddress getAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    /** Accepts connections until the server is closed. */
+    public void serve() throws IOException {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            requests.incrementAndGet();
+            if (!admitted.tryAcquire()) {
+                rejected.incrementAndGet();
+                try (channel) {
+                    respond(channel, "BUSY", "", null);
+                } catch (IOException ignored) {
+                    // The client is gone.
+                }
+                continue;
+            }
+            AtomicBoolean answered = new AtomicBoolean();
+            ScheduledFuture<?> timer = watchdog.schedule(() -> {
+                if (answered.compareAndSet(false, true)) {
+                    timeouts.incrementAndGet();
+                    try (channel) {
+                        respond(channel, "TIMEOUT", "", null);
+                    } catch (IOException ignored) {
+                        // The client is gone.
+                    }
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            workers.execute(() -> {
+                try {
+                    handle(channel, answered, timer);
+                } finally {
+                    admitted.release();
+                }
+            });
+        }
+    }
+
+    private void handle(SocketChannel channel, AtomicBoolean answered, ScheduledFuture<?> timer) {
+        try (channel) {
+            String status;
+            String body;
+            String error = null;
+            InputStream in = Channels.newInputStream(channel);
+            String[] request = readLine(in).split(" ", 2);
+            switch (request[0]) {
+                case "PATH", "SOURCE" -> {
+                    CompilationResult result = compile(request, in, answered);
+                    if (result == null) {
+                        malformed.incrementAndGet();
+                        status = "ERROR";
+                        body = "";
+                    } else {
+                        (result.failed() ? failed : compiled).incrementAndGet();
+                        status = result.failed() ? "FAIL" : "OK";
+                        body = result.output;
+                        error = result.error;
+                    }
+                }
+                case "HEALTH" -> {
+                    status = "OK";
+                    body = "";
+                }
+                case "STATS" -> {
+                    status = "OK";
+                    body = stats();
+                }
+                default -> {
+                    malformed.incrementAndGet();
+                    status = "ERROR";
+                    body = "";
+                }
+            }
+            if (answered.compareAndSet(false, true)) {
+                timer.cancel(false);
+                respond(channel, status, body, error);
+            }
+        } catch (IOException e) {
+            // The client went away or the watchdog closed the connection.
+        } finally {
+            timer.cancel(false);
+        }
+    }
+
+    private CompilationResult compile(String[] request, InputStream in, AtomicBoolean answered) throws IOException {
+        if (request.length < 2) {
+            return null;
+        }
+        Path path = null;
+        byte[] source = null;
+        if (request[0].equals("PATH")) {
+            try {
+                path = Path.of(request[1]);
+            } catch (InvalidPathException e) {
+                return null;
+            }
+        } else {
+            int length;
+            try {
+                length = Integer.parseInt(request[1]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length < 0 || length > MAX_SOURCE_LENGTH) {
+                return null;
+            }
+            source = in.readNBytes(length);
+            if (source.length < length) {
+                return null;
+            }
+        }
+        compiling.acquireUninterruptibly();
+        if (answered.get()) {
+            // Timed out while waiting; the watchdog closed the connection.
+            compiling.release();
+            throw new ClosedChannelException();
+        }
+        long start = System.nanoTime();
+        CompilationResult result;
+        try {
+            result = path != null ? BatchCompiler.compile(path)
+                    : BatchCompiler.compile(Path.of("<source>"), ByteBuffer.wrap(source));
+        } finally {
+            compiling.release();
+        }
+        compileNanos.addAndGet(System.nanoTime() - start);
+        sourceBytes.addAndGet(result.size);
+        return result;
+    }
+
+    public String stats() {
+        return "uptime_ms " + (System.nanoTime() - startTime) / 1_000_000 + "\n"
+                + "requests " + requests.get() + "\n"
+                + "compiled " + compiled.get() + "\n"
+                + "failed " + failed.get() + "\n"
+                + "rejected " + rejected.get() + "\n"
+                + "timeouts " + timeouts.get() + "\n"
+                + "malformed " + malformed.get() + "\n"
+                + "active " + (maxConcurrent - compiling.availablePermits()) + "\n"
+                + "queued " + compiling.getQueueLength() + "\n"
+                + "max_concurrent " + maxConcurrent + "\n"
+                + "compile_ms " + compileNanos.get() / 1_000_000 + "\n"
+                + "source_bytes " + sourceBytes.get() + "\n";
+    }
+
+    /** Stops accepting and removes the socket file; requests already accepted still finish. */
+    public void stop() throws IOException {
+        server.close();
+        workers.shutdown();
+        watchdog.shutdownNow();
+        if (address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    private static void respond(SocketChannel channel, String status, String body, String error) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String header = status + " " + bytes.length + (error == null ? "" : " " + error.replace('\n', ' ')) + "\n";
+        ByteBuffer buffer = ByteBuffer.allocate(header.length() * 3 + bytes.length);
+        buffer.put(header.getBytes(StandardCharsets.UTF_8)).put(bytes).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0 || line.size() == MAX_LINE_LENGTH) {
+                throw new IOException("Malformed line");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Thread daemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,194 @@
+package driver;
+
+import lexical.LexicalAnalysis;
+import syntatic.SyntacticAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many files on a work-stealing pool. Every file gets its own lexer, parser and
+ * semantic analysis, and its messages are captured instead of printed, so a failing file
+ * does not affect the others. Files are submitted largest first to the pool's FIFO queue,
+ * so the longest compilations start early and do not end up alone at the tail.
+ */
+public class BatchCompiler {
+    public static final String EXTENSION = ".cc";
+
+    private final ForkJoinPool pool;
+    private CompilationCache cache;
+
+    public BatchCompiler(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public BatchCompiler() {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+    }
+
+    /** Looks every file up in {@code cache} before compiling it, and stores what was compiled. */
+    public void setCache(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Expands the inputs of a batch: a directory stands for every {@code .cc} file below it,
+     * {@code @file} for the paths listed in it one per line, and an argument containing
+     * {@code *}, {@code ?}, {@code [} or <code>{</code> for the files matching it as a glob.
+     */
+    public static List<Path> collect(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            if (input.startsWith("@")) {
+                for (String line : Files.readAllLines(Path.of(input.substring(1)))) {
+                    if (!line.isBlank()) {
+                        files.add(Path.of(line.strip()).normalize());
+                    }
+                }
+            } else if (isGlob(input)) {
+                files.addAll(glob(input));
+            } else if (Files.isDirectory(Path.of(input))) {
+                files.addAll(walk(Path.of(input), path -> path.toString().endsWith(EXTENSION)));
+            } else {
+                files.add(Path.of(input).normalize());
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    public List<CompilationResult> compile(List<Path> files) {
+        List<Path> largestFirst = new ArrayList<>(files);
+        largestFirst.sort(Comparator.comparingLong(BatchCompiler::size).reversed());
+
+        List<ForkJoinTask<CompilationResult>> tasks = new ArrayList<>();
+        for (Path file : largestFirst) {
+            tasks.add(pool.submit(() -> cache == null ? compile(file) : compile(file, cache)));
+        }
+        List<CompilationResult> results = new ArrayList<>();
+        for (ForkJoinTask<CompilationResult> task : tasks) {
+            results.add(task.join());
+        }
+        results.sort(Comparator.comparing(result -> result.path.toString()));
+        return results;
+    }
+
+    /**
+     * Compiles one file with the explicit-stack parser, so deep nesting does not depend on
+     * the stack size of the pool threads.
+     */
+    public static CompilationResult compile(Path file) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        String error;
+        try (LexicalAnalysis lex = new LexicalAnalysis(file)) {
+            error = run(lex, buffer);
+        } catch (Exception e) {
+            error = describe(e);
+        }
+        return new CompilationResult(file, size(file), buffer.toString(StandardCharsets.UTF_8), error);
+    }
+
+    /** Compiles a file unless {@code cache} holds a result for its content. */
+    public static CompilationResult compile(Path file, CompilationCache cache) {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(file);
+        } catch (IOException e) {
+            return compile(file);
+        }
+        String key = CompilationCache.key(source, "");
+        CompilationResult result = cache.get(key, file);
+        if (result == null) {
+            result = compile(file, ByteBuffer.wrap(source));
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /** Compiles a source held in memory; {@code name} only labels the result. */
+    public static CompilationResult compile(Path name, ByteBuffer source) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        String error = run(new LexicalAnalysis(source), buffer);
+        return new CompilationResult(name, source.remaining(), buffer.toString(StandardCharsets.UTF_8), error);
+    }
+
+    private static String run(LexicalAnalysis lex, ByteArrayOutputStream buffer) {
+        try {
+            SyntacticAnalysis syntacticAnalysis = new SyntacticAnalysis(lex);
+            syntacticAnalysis.setOutput(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+            syntacticAnalysis.setExplicitStack(true);
+            syntacticAnalysis.start();
+            return null;
+        } catch (RuntimeException e) {
+            return describe(e);
+        }
+    }
+
+    private static String describe(Exception e) {
+        return e.getClass().getName() + ": " + e.getMessage();
+    }
+
+    /** Prints the results in path order, then a summary line. Returns the number of failures. */
+    public static int report(List<CompilationResult> results, PrintStream out) {
+        int failures = 0;
+        for (CompilationResult result : results) {
+            out.print("== " + result.path + "\n");
+            out.print(result.output);
+            if (result.failed()) {
+                out.print(result.error + "\n");
+                failures++;
+            }
+        }
+        out.printf("%d arquivos compilados, %d com erros\n", results.size(), failures);
+        return failures;
+    }
+
+    private static boolean isGlob(String input) {
+        return input.chars().anyMatch(c -> c == '*' || c == '?' || c == '[' || c == '{');
+    }
+
+    private static List<Path> glob(String pattern) throws IOException {
+        int wildcard = 0;
+        while ("*?[{".indexOf(pattern.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        int slash = pattern.lastIndexOf('/', wildcard);
+        Path base = slash < 0 ? Path.of("") : Path.of(pattern.substring(0, slash + 1));
+        PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+        return walk(base, matcher::matches);
+    }
+
+    private static List<Path> walk(Path directory, PathMatcher matcher) throws IOException {
+        Path start = directory.toString().isEmpty() ? Path.of(".") : directory;
+        try (Stream<Path> paths = Files.walk(start)) {
+            return paths.map(path -> directory.toString().isEmpty() ? start.relativize(path) : path)
+                    .filter(path -> matcher.matches(path) && Files.isRegularFile(path))
+                    .map(Path::normalize)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of compilation results, keyed by a SHA-256 of the compiler {@link #VERSION},
+ * the options that change the result and the source bytes. Entries are written to a temporary
+ * file and moved into place, so readers never see a partial entry, even across processes.
+ *
+ * The modification time of an entry is its last use: a hit touches it, and when the store
+ * grows past its bound the least recently used entries are deleted until it is back under
+ * three quarters of it. The size of the store is kept in a file next to the entries, so
+ * opening the cache does not list them: every write adds to it and every eviction recounts
+ * it from disk, which also repairs updates lost to other processes writing at the same time.
+ */
+public class CompilationCache {
+    /**
+     * Identifies the build of the compiler: a SHA-256 of the class files it was loaded from,
+     * so any change to them misses every entry of the previous build.
+     */
+    public static final String VERSION = version();
+    public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private static final int MAGIC = 0x43434301;
+    private static final String SIZE_FILE = "size";
+
+    private final Path directory;
+    private final Path sizeFile;
+    private final long maxBytes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CompilationCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.sizeFile = directory.resolve(SIZE_FILE);
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * The cache configured by the {@code compiler.cache} (directory, by default
+     * {@code ~/.cache/cc-compiler}) and {@code compiler.cache.size} (bytes) properties.
+     */
+    public static CompilationCache open() throws IOException {
+        Path directory = Path.of(System.getProperty("compiler.cache",
+                Path.of(System.getProperty("user.home"), ".cache", "cc-compiler").toString()));
+        return new CompilationCache(directory, Long.getLong("compiler.cache.size", DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * {@code options} names whatever changes the result besides the source. The parsing and
+     * lexing modes of {@code Main} print the same for every source, so they are not part of it.
+     */
+    public static String key(byte[] source, String options) {
+        MessageDigest digest = sha256();
+        digest.update((VERSION + '\0' + options + '\0').getBytes(StandardCharsets.UTF_8));
+        return hex(digest.digest(source));
+    }
+
+    /** Result stored under {@code key}, relabelled with {@code path}, or null on a miss. */
+    public CompilationResult get(String key, Path path) {
+        Path entry = entry(key);
+        try (InputStream file = Files.newInputStream(entry)) {
+            DataInputStream in = new DataInputStream(file);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cache entry");
+            }
+            long sourceSize = in.readLong();
+            String output = readString(in);
+            String error = in.readBoolean() ? readString(in) : null;
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return new CompilationResult(path, sourceSize, output, error);
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void put(String key, CompilationResult result) {
+        Path entry = entry(key);
+        Path temporary = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeLong(result.size);
+            writeString(out, result.output);
+            out.writeBoolean(result.failed());
+            if (result.failed()) {
+                writeString(out, result.error);
+            }
+            out.flush();
+
+            Files.createDirectories(entry.getParent());
+            temporary = Files.createTempFile(entry.getParent(), key, ".tmp");
+            Files.write(temporary, bytes.toByteArray());
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+            temporary = null;
+            grow(bytes.size());
+        } catch (IOException e) {
+            // A result that cannot be stored is simply compiled again next time.
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Left for the next eviction.
+                }
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public String stats() {
+        return String.format("cache: %d hits, %d misses, %d evictions", hits(), misses(), evictions());
+    }
+
+    /** Adds {@code bytes} to the recorded size, which is counted from disk if there is none. */
+    private synchronized void grow(long bytes) throws IOException {
+        long total;
+        try {
+            total = Long.parseLong(Files.readString(sizeFile).strip()) + bytes;
+        } catch (IOException | NumberFormatException e) {
+            total = count();
+        }
+        if (total > maxBytes) {
+            evict();
+        } else {
+            writeSize(total);
+        }
+    }
+
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>(entries());
+        entries.sort(Comparator.comparingLong(CompilationCache::lastUse));
+        long total = entries.stream().mapToLong(CompilationCache::size).sum();
+        for (Path entry : entries) {
+            if (total <= maxBytes * 3 / 4) {
+                break;
+            }
+            long entrySize = size(entry);
+            if (Files.deleteIfExists(entry)) {
+                evictions.incrementAndGet();
+            }
+            total -= entrySize;
+        }
+        writeSize(total);
+    }
+
+    private long count() throws IOException {
+        return entries().stream().mapToLong(CompilationCache::size).sum();
+    }
+
+    private void writeSize(long total) throws IOException {
+        Path temporary = Files.createTempFile(directory, SIZE_FILE, ".tmp");
+        try {
+            Files.writeString(temporary, Long.toString(total));
+            Files.move(temporary, sizeFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, sizeFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /** Entries and their temporary files, which all sit one directory down. */
+    private List<Path> entries() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            return paths.filter(path -> directory.relativize(path).getNameCount() == 2 && Files.isRegularFile(path))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Hashes the class files in the directory or jar this class was loaded from. Where that
+     * cannot be read, the version is unique to this process, so nothing stale is ever served.
+     */
+    private static String version() {
+        MessageDigest digest = sha256();
+        try {
+            Path location = Path.of(CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                List<Path> classes;
+                try (Stream<Path> paths = Files.walk(location)) {
+                    classes = paths.filter(path -> path.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+                }
+                for (Path file : classes) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return UUID.randomUUID().toString();
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path entry(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long lastUse(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
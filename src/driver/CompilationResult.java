@@ -0,0 +1,48 @@
+package driver;
+
+import lexical.LexicalException;
+import semantic.SemanticException;
+import syntatic.SyntacticException;
+
+import java.nio.file.Path;
+
+/** Outcome of compiling one file of a batch: what the compiler printed and how it failed. */
+public class CompilationResult {
+    private static final String LEXICAL_PREFIX = new LexicalException("").getMessage();
+
+    public final Path path;
+    public final long size;
+    public final String output;
+    public final String error;
+
+    public CompilationResult(Path path, long size, String output, String error) {
+        this.path = path;
+        this.size = size;
+        this.output = output;
+        this.error = error;
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+
+    /**
+     * The exception the compile failed with, rebuilt from {@link #error} so that a stored
+     * result can end like the compile did. The front end's exceptions come back as they
+     * were; any other as an IllegalStateException holding the error.
+     */
+    public RuntimeException exception() {
+        int colon = error.indexOf(": ");
+        String type = colon < 0 ? error : error.substring(0, colon);
+        String message = colon < 0 ? null : error.substring(colon + 2);
+        if (type.equals(SemanticException.class.getName())) {
+            return new SemanticException(message);
+        } else if (type.equals(SyntacticException.class.getName())) {
+            return new SyntacticException(message);
+        } else if (type.equals(LexicalException.class.getName()) && message != null
+                && message.startsWith(LEXICAL_PREFIX)) {
+            return new LexicalException(message.substring(LEXICAL_PREFIX.length()));
+        }
+        return new IllegalStateException(error);
+    }
+}
@@ -0,0 +1,130 @@
+package driver;
+
+import java.util.Arrays;
+
+/**
+ * Counts of recorded values, in nanoseconds, laid out as in HdrHistogram: every power of two
+ * range is split into the same number of linear sub-buckets, enough for
+ * {@code significantDigits} decimal digits, so every value is kept within that relative
+ * precision and recording is a few shifts and an increment. It is not thread safe; every
+ * thread records into its own histogram and they are {@link #add added} together.
+ */
+public class LatencyHistogram {
+    private final long highest;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    /** Tracks values from 0 to {@code highest}; larger ones are counted as {@code highest}. */
+    public LatencyHistogram(long highest, int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("Significant digits must be between 1 and 5");
+        }
+        this.highest = highest;
+        long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude = 64 - Long.numberOfLeadingZeros(largestSingleUnitResolution - 1);
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        int buckets = 1;
+        for (long smallestUntrackable = subBucketCount; smallestUntrackable <= highest; smallestUntrackable <<= 1) {
+            buckets++;
+            if (smallestUntrackable > Long.MAX_VALUE / 2) {
+                break;
+            }
+        }
+        this.counts = new long[(buckets + 1) * subBucketHalfCount];
+    }
+
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, highest));
+        counts[index(clamped)]++;
+        total++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+    }
+
+    /** Adds the counts of {@code other}, which must have the same range and precision. */
+    public void add(LatencyHistogram other) {
+        if (other.counts.length != counts.length) {
+            throw new IllegalArgumentException("Histograms differ in range or precision");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+        sum = 0;
+    }
+
+    /**
+     * Value that {@code percentile} percent of the recorded values are at or below, as the
+     * highest value equivalent to it at the histogram's precision; the maximum for 100.
+     */
+    public long percentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    public long min() {
+        return total == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return total == 0 ? 0 : sum / total;
+    }
+
+    private int index(long value) {
+        int bucket = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucket = (int) (value >>> bucket);
+        return ((bucket + 1) << subBucketHalfCountMagnitude) + (subBucket - subBucketHalfCount);
+    }
+
+    private long highestEquivalent(int index) {
+        int bucket = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucket < 0) {
+            subBucket -= subBucketHalfCount;
+            bucket = 0;
+        }
+        long lowest = (long) subBucket << bucket;
+        return lowest + (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,503 @@
+package driver;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import compiler.Compiler;
+import ir.IrBuilder;
+import ir.IrProgram;
+import ir.Optimizer;
+import lexical.LexicalAnalysis;
+import syntatic.ProgramGenerator;
+import syntatic.SyntacticAnalysis;
+import vm.IrCompiler;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a corpus against in-process compilation and reports what its callers would see:
+ * {@code java driver.LoadTest [options] <inputs>}, where the inputs are collected as by
+ * {@link BatchCompiler#collect} and {@code --generate=<n>} adds n programs written by a
+ * {@link ProgramGenerator} with the generator options. Files are compiled round robin in a
+ * shuffled order by {@code --concurrency} threads, for {@code --warmup} seconds that are
+ * discarded and then {@code --duration} seconds that are measured.
+ *
+ * <ul>
+ * <li>{@code --mode=api} compiles sources held in memory with the embeddable
+ * {@link Compiler};</li>
+ * <li>{@code --mode=file} compiles every file from disk as a batch does;</li>
+ * <li>{@code --mode=bytecode} also builds and optimizes the IR and compiles it for the VM,
+ * as {@code --run --optimize} does before running.</li>
+ * </ul>
+ *
+ * Without {@code --rate} every thread starts the next file as soon as one is done. With it,
+ * the files are started on a fixed schedule of that many per second, and a file's latency is
+ * counted from when it should have started, so a compiler that falls behind shows the queueing
+ * in the percentiles instead of hiding it. Latencies go into a {@link LatencyHistogram}; the
+ * report adds files and bytes per second, the collections that ran while measuring and their
+ * longest pause, and the peak resident set size. {@code --json=<file>} also writes it as
+ * JSON, or to standard output for {@code -}, so that two builds can be compared.
+ */
+public class LoadTest {
+    public enum Mode {
+        API,
+        FILE,
+        BYTECODE
+    }
+
+    private static final long HIGHEST = TimeUnit.MINUTES.toNanos(10);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final List<Path> files;
+    private final byte[][] sources;
+    private final long bytes;
+    private final Mode mode;
+    private final int concurrency;
+    private final double rate;
+    private final Compiler compiler;
+    private final LatencyHistogram pauses;
+    private volatile boolean measuring;
+
+    public LoadTest(List<Path> files, Mode mode, int concurrency, double rate) throws IOException {
+        this.files = files;
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.compiler = new Compiler();
+        this.pauses = new LatencyHistogram(HIGHEST, SIGNIFICANT_DIGITS);
+        this.sources = mode == Mode.API ? new byte[files.size()][] : null;
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            if (sources != null) {
+                sources[i] = Files.readAllBytes(files.get(i));
+            }
+            total += Files.size(files.get(i));
+        }
+        this.bytes = total;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Mode mode = Mode.API;
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        double rate = 0;
+        double warmup = 3;
+        double duration = 10;
+        int generate = 0;
+        long seed = 1;
+        String json = null;
+        List<String> options = new ArrayList<>();
+        List<String> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--mode=")) {
+                try {
+                    mode = Mode.valueOf(arg.substring("--mode=".length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    usage();
+                }
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+            } else if (arg.startsWith("--rate=")) {
+                rate = Double.parseDouble(arg.substring("--rate=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Double.parseDouble(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--duration=")) {
+                duration = Double.parseDouble(arg.substring("--duration=".length()));
+            } else if (arg.startsWith("--generate=")) {
+                generate = Integer.parseInt(arg.substring("--generate=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--json=")) {
+                json = arg.substring("--json=".length());
+            } else if (arg.startsWith("--")) {
+                options.add(arg);
+            } else {
+                inputs.add(arg);
+            }
+        }
+
+        List<Path> files = new ArrayList<>(BatchCompiler.collect(inputs));
+        if (generate > 0) {
+            Path directory = Files.createTempDirectory("load");
+            directory.toFile().deleteOnExit();
+            for (int i = 0; i < generate; i++) {
+                ProgramGenerator generator = new ProgramGenerator(seed + i);
+                for (String option : options) {
+                    if (!generator.configure(option)) {
+                        usage();
+                    }
+                }
+                Path file = directory.resolve(String.format("generated%04d%s", i, BatchCompiler.EXTENSION));
+                file.toFile().deleteOnExit();
+                try (OutputStream out = Files.newOutputStream(file)) {
+                    generator.write(out);
+                }
+                files.add(file);
+            }
+        } else if (!options.isEmpty()) {
+            usage();
+        }
+        if (files.isEmpty()) {
+            usage();
+        }
+        Collections.shuffle(files, new Random(seed));
+
+        LoadTest test = new LoadTest(files, mode, concurrency, rate);
+        test.run(seconds(warmup));
+        Report report = test.measure(seconds(duration));
+        report.print("-".equals(json) ? System.err : System.out);
+        if (json != null) {
+            if (json.equals("-")) {
+                System.out.println(report.json());
+            } else {
+                Files.writeString(Path.of(json), report.json() + "\n");
+            }
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: driver.LoadTest [--mode=api|file|bytecode] [--concurrency=<threads>] "
+                + "[--rate=<files/s>] [--warmup=3] [--duration=10] [--json=<file>|-] [--generate=<n>] [--seed=1] "
+                + "[--size=64k] [--nesting=3] [--identifiers=32] [--expression-depth=3] [--comments=0.1] "
+                + "[--texts=0.1] <inputs>");
+        System.exit(1);
+    }
+
+    private static long seconds(double seconds) {
+        return (long) (seconds * 1e9);
+    }
+
+    /** Runs for {@code nanos} while watching the collector, and reports on it. */
+    public Report measure(long nanos) throws InterruptedException {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        NotificationListener listener = this::collected;
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+        long[] counts = new long[collectors.size()];
+        long[] times = new long[collectors.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = collectors.get(i).getCollectionCount();
+            times[i] = collectors.get(i).getCollectionTime();
+        }
+        pauses.clear();
+        measuring = true;
+        Report report = run(nanos);
+        measuring = false;
+        for (int i = 0; i < counts.length; i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            report.collectors.add(new Report.Collector(collector.getName(),
+                    collector.getCollectionCount() - counts[i], collector.getCollectionTime() - times[i]));
+        }
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) collector).removeNotificationListener(listener);
+                } catch (Exception e) {
+                    // Already gone.
+                }
+            }
+        }
+        synchronized (pauses) {
+            report.longestPause = pauses.max();
+        }
+        report.peakRss = status("VmHWM:");
+        return report;
+    }
+
+    private void collected(Notification notification, Object handback) {
+        if (measuring && notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData());
+            synchronized (pauses) {
+                pauses.record(TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration()));
+            }
+        }
+    }
+
+    /**
+     * Compiles files on every thread for {@code nanos}. No file starts after that, but the
+     * ones already started are finished.
+     */
+    public Report run(long nanos) throws InterruptedException {
+        AtomicLong next = new AtomicLong();
+        Worker[] workers = new Worker[concurrency];
+        Thread[] threads = new Thread[concurrency];
+        long start = System.nanoTime();
+        long end = start + nanos;
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(next, start, end);
+            threads[i] = new Thread(workers[i], "load-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Report report = new Report(this, System.nanoTime() - start);
+        for (Worker worker : workers) {
+            report.latencies.add(worker.latencies);
+            report.failures += worker.failures;
+            report.bytes += worker.bytes;
+        }
+        if (rate > 0) {
+            report.missed = (long) Math.ceil(nanos * rate / 1e9) - report.latencies.count();
+        }
+        return report;
+    }
+
+    private boolean compile(int file) {
+        switch (mode) {
+            case API:
+                return compiler.compile(sources[file]).succeeded();
+            case FILE:
+                return !BatchCompiler.compile(files.get(file)).failed();
+            default:
+                try (LexicalAnalysis lexer = new LexicalAnalysis(files.get(file))) {
+                    SyntacticAnalysis parser = new SyntacticAnalysis(lexer);
+                    parser.setOutput(null);
+                    parser.setExplicitStack(true);
+                    parser.setBuildAst(true);
+                    parser.start();
+                    IrProgram ir = IrBuilder.build(parser.getAst(), parser.getSemanticAnalysis());
+                    Optimizer.standard().optimize(ir);
+                    IrCompiler.compile(ir);
+                    return true;
+                } catch (Exception e) {
+                    return false;
+                }
+        }
+    }
+
+    /** A line of /proc/self/status in kilobytes, or -1 where there is none. */
+    private static long status(String key) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith(key)) {
+                    return Long.parseLong(line.substring(key.length()).replace("kB", "").strip());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not Linux.
+        }
+        return -1;
+    }
+
+    private class Worker implements Runnable {
+        private final AtomicLong next;
+        private final long start;
+        private final long end;
+        private final LatencyHistogram latencies;
+        private long failures;
+        private long bytes;
+
+        Worker(AtomicLong next, long start, long end) {
+            this.next = next;
+            this.start = start;
+            this.end = end;
+            this.latencies = new LatencyHistogram(HIGHEST, SIGNIFICANT_DIGITS);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long request = next.getAndIncrement();
+                long due;
+                if (rate > 0) {
+                    due = start + (long) (request * 1e9 / rate);
+                    if (due >= end) {
+                        return;
+                    }
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (System.nanoTime() >= end) {
+                        // Too far behind to start it in time; the report counts it as missed.
+                        return;
+                    }
+                } else {
+                    due = System.nanoTime();
+                    if (due >= end) {
+                        return;
+                    }
+                }
+                int file = (int) (request % files.size());
+                if (!compile(file)) {
+                    failures++;
+                }
+                latencies.record(System.nanoTime() - due);
+                bytes += mode == Mode.API ? sources[file].length : size(file);
+            }
+        }
+
+        private long size(int file) {
+            try {
+                return Files.size(files.get(file));
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /** What one run measured. */
+    public static class Report {
+        public final Mode mode;
+        public final int concurrency;
+        public final double rate;
+        public final int files;
+        public final long corpusBytes;
+        public final long nanos;
+        public final LatencyHistogram latencies;
+        public final List<Collector> collectors;
+        public long failures;
+        /** Files scheduled by {@code --rate} that could not be started in time. */
+        public long missed;
+        public long bytes;
+        public long longestPause;
+        public long peakRss = -1;
+
+        Report(LoadTest test, long nanos) {
+            this.mode = test.mode;
+            this.concurrency = test.concurrency;
+            this.rate = test.rate;
+            this.files = test.files.size();
+            this.corpusBytes = test.bytes;
+            this.nanos = nanos;
+            this.latencies = new LatencyHistogram(HIGHEST, SIGNIFICANT_DIGITS);
+            this.collectors = new ArrayList<>();
+        }
+
+        public static class Collector {
+            public final String name;
+            public final long count;
+            public final long millis;
+
+            public Collector(String name, long count, long millis) {
+                this.name = name;
+                this.count = count;
+                this.millis = millis;
+            }
+        }
+
+        public double filesPerSecond() {
+            return latencies.count() * 1e9 / nanos;
+        }
+
+        public double bytesPerSecond() {
+            return bytes * 1e9 / nanos;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%s: %d compilations of %d files in %.2f s, %d threads, %s, %d failed%n",
+                    mode.name().toLowerCase(), latencies.count(), files, nanos / 1e9, concurrency,
+                    rate > 0 ? String.format("%.1f files/s scheduled, %d missed", rate, missed) : "unthrottled",
+                    failures);
+            out.printf("throughput: %.1f files/s, %.2f MB/s%n", filesPerSecond(), bytesPerSecond() / (1 << 20));
+            out.printf("latency: mean %.1f us", latencies.mean() / 1e3);
+            for (double percentile : PERCENTILES) {
+                out.printf(", p%s %.1f us", label(percentile), latencies.percentile(percentile) / 1e3);
+            }
+            out.printf(", max %.1f us%n", latencies.max() / 1e3);
+            long count = 0;
+            long millis = 0;
+            for (Collector collector : collectors) {
+                count += collector.count;
+                millis += collector.millis;
+            }
+            out.printf("gc: %d collections, %d ms, longest pause %.1f ms%n", count, millis, longestPause / 1e6);
+            if (peakRss >= 0) {
+                out.printf("peak rss: %d kB%n", peakRss);
+            }
+        }
+
+        public String json() {
+            StringBuilder json = new StringBuilder("{");
+            field(json, "mode", quote(mode.name().toLowerCase()));
+            field(json, "concurrency", concurrency);
+            field(json, "rate", number(rate));
+            field(json, "files", files);
+            field(json, "corpus_bytes", corpusBytes);
+            field(json, "seconds", number(nanos / 1e9));
+            field(json, "compilations", latencies.count());
+            field(json, "failures", failures);
+            field(json, "missed", missed);
+            field(json, "files_per_second", number(filesPerSecond()));
+            field(json, "bytes_per_second", number(bytesPerSecond()));
+            StringBuilder latency = new StringBuilder("{");
+            field(latency, "min", number(latencies.min() / 1e3));
+            field(latency, "mean", number(latencies.mean() / 1e3));
+            for (double percentile : PERCENTILES) {
+                field(latency, "p" + label(percentile).replace(".", ""), number(latencies.percentile(percentile) / 1e3));
+            }
+            field(latency, "max", number(latencies.max() / 1e3));
+            field(json, "latency_us", latency.append('}'));
+            StringBuilder gc = new StringBuilder("{");
+            long count = 0;
+            long millis = 0;
+            StringBuilder list = new StringBuilder("[");
+            for (Collector collector : collectors) {
+                count += collector.count;
+                millis += collector.millis;
+                StringBuilder entry = new StringBuilder("{");
+                field(entry, "name", quote(collector.name));
+                field(entry, "count", collector.count);
+                field(entry, "ms", collector.millis);
+                list.append(list.length() > 1 ? ", " : "").append(entry.append('}'));
+            }
+            field(gc, "count", count);
+            field(gc, "ms", millis);
+            field(gc, "longest_pause_ms", number(longestPause / 1e6));
+            field(gc, "collectors", list.append(']'));
+            field(json, "gc", gc.append('}'));
+            field(json, "peak_rss_kb", peakRss >= 0 ? peakRss : "null");
+            field(json, "max_heap_bytes", Runtime.getRuntime().maxMemory());
+            field(json, "processors", Runtime.getRuntime().availableProcessors());
+            field(json, "java", quote(System.getProperty("java.version")));
+            return json.append('}').toString();
+        }
+
+        private static String label(double percentile) {
+            return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+        }
+
+        private static void field(StringBuilder json, String name, Object value) {
+            json.append(json.length() > 1 ? ", " : "").append(quote(name)).append(": ").append(value);
+        }
+
+        private static String number(double value) {
+            return String.format(Locale.ROOT, "%.3f", value);
+        }
+
+        private static String quote(String text) {
+            StringBuilder quoted = new StringBuilder("\"");
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    quoted.append('\\').append(c);
+                } else if (c < 0x20) {
+                    quoted.append(String.format("\\u%04x", (int) c));
+                } else {
+                    quoted.append(c);
+                }
+            }
+            return quoted.append('"').toString();
+        }
+    }
+}
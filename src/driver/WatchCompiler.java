@@ -0,0 +1,108 @@
+package driver;
+
+import lexical.IncrementalLexer;
+import syntatic.IncrementalParser;
+import syntatic.SyntacticException;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiles a file again every time it changes. The tokens and the outcome of every
+ * top-level statement are kept between compilations, so an edit is lexed, parsed and
+ * checked again only around the bytes it changed; see {@link IncrementalLexer} and
+ * {@link IncrementalParser}.
+ */
+public class WatchCompiler {
+    /** How long events must stop arriving before the file is read, since saves take several writes. */
+    private static final long SETTLE_MILLIS = 20;
+
+    private final Path file;
+    private IncrementalLexer lexer;
+    private IncrementalParser parser;
+    private long nanos;
+
+    public WatchCompiler(Path file) {
+        this.file = file.toAbsolutePath().normalize();
+    }
+
+    /** Compiles the current content of the file, or returns null when it did not change. */
+    public CompilationResult compile() throws IOException {
+        byte[] source = Files.readAllBytes(file);
+        long start = System.nanoTime();
+        if (lexer == null) {
+            lexer = new IncrementalLexer(source);
+            parser = new IncrementalParser(lexer);
+        } else if (lexer.update(source)) {
+            parser.update();
+        } else {
+            return null;
+        }
+        nanos = System.nanoTime() - start;
+
+        RuntimeException error = parser.getError();
+        if (error == null) {
+            return new CompilationResult(file, source.length, "", null);
+        }
+        String output = String.format("Erro na linha %02d\n", parser.getErrorLine());
+        if (error instanceof SyntacticException syntacticError) {
+            output = syntacticError.getDescription() + "\n" + output;
+        }
+        return new CompilationResult(file, source.length, output, error.getClass().getName() + ": " + error.getMessage());
+    }
+
+    /**
+     * Compiles the file, then again after every change until the thread is interrupted.
+     * Results go to {@code out} and what every compilation redid to {@code log}.
+     */
+    public void watch(PrintStream out, PrintStream log) throws IOException, InterruptedException {
+        try (WatchService watcher = file.getFileSystem().newWatchService()) {
+            file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            report(compile(), out, log);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                    key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    try {
+                        report(compile(), out, log);
+                    } catch (IOException e) {
+                        // Replaced by a rename in progress; the next event reads it again.
+                        log.println("Unable to read " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private void report(CompilationResult result, PrintStream out, PrintStream log) {
+        if (result == null) {
+            return;
+        }
+        out.print("== " + result.path + "\n");
+        out.print(result.output);
+        if (result.failed()) {
+            out.print(result.error + "\n");
+        }
+        out.flush();
+        log.printf("%d tokens lexed, %d of %d statements parsed in %.3f ms\n",
+                lexer.getSpliceCount(), parser.getParsedCount(), parser.getStatementCount(), nanos / 1e6);
+    }
+}
@@ -0,0 +1,41 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Basic block: straight-line instructions ending in exactly one JUMP, BRANCH or HALT.
+ * {@link #index} is the position of the block in {@link IrProgram#blocks} and is kept up to
+ * date by {@link IrProgram#renumber}.
+ */
+public final class Block {
+    public final List<Instruction> instructions;
+    public int index;
+
+    public Block(int index) {
+        this.instructions = new ArrayList<>();
+        this.index = index;
+    }
+
+    public Instruction terminator() {
+        return instructions.get(instructions.size() - 1);
+    }
+
+    public boolean isTerminated() {
+        return !instructions.isEmpty() && terminator().op.isTerminator();
+    }
+
+    public List<Block> successors() {
+        Instruction terminator = terminator();
+        return switch (terminator.op) {
+            case JUMP -> List.of(terminator.first);
+            case BRANCH -> List.of(terminator.first, terminator.second);
+            default -> List.of();
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "b" + index;
+    }
+}
@@ -0,0 +1,180 @@
+package ir;
+
+import semantic.Type;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replaces operations on constants by their result, computed exactly as the interpreters
+ * compute them: ints wrap, reals follow IEEE 754, and an integer division by zero is left
+ * to fail at run time. The I2D instructions carry the integer/real promotion of
+ * {@code checkArithmeticOperation}, so folding one constant at a time gives the same value
+ * as the mixed expression. Also applies the identities that hold for every value of the
+ * other operand, such as {@code x * 1} and {@code x and false}; {@code x * 0} only for
+ * ints, since a real x may be NaN or infinite.
+ *
+ * A temporary that folds to a constant is replaced by it in the rest of its block during the
+ * same walk, so a whole nested expression such as {@code 1 + (1 + (1 + 1))} folds in one run
+ * instead of one level per round of {@link CopyPropagation}.
+ */
+public class ConstantFolding implements Pass {
+    private static final int UNORDERED = 2;
+
+    @Override
+    public String name() {
+        return "constant folding";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean changed = false;
+        Map<Integer, Operand> constants = new HashMap<>();
+        for (Block block : program.blocks) {
+            constants.clear();
+            for (Instruction instruction : block.instructions) {
+                Operand a = substitute(instruction.a, constants);
+                Operand b = substitute(instruction.b, constants);
+                if (a != instruction.a || b != instruction.b) {
+                    instruction.a = a;
+                    instruction.b = b;
+                    changed = true;
+                }
+                int target = instruction.target;
+                if (target == Instruction.NONE) {
+                    continue;
+                }
+                constants.remove(target);
+                if (instruction.op != Opcode.COPY && instruction.op != Opcode.READ) {
+                    Operand value = fold(instruction.op, instruction.type, a, b);
+                    if (value == null) {
+                        value = simplify(instruction.op, instruction.type, a, b);
+                    }
+                    if (value != null) {
+                        instruction.copy(value);
+                        changed = true;
+                    }
+                }
+                if (instruction.op == Opcode.COPY && instruction.a.isConstant() && !program.isVariable(target)) {
+                    constants.put(target, instruction.a);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** The constant a temporary of the block holds, or the operand itself. */
+    private static Operand substitute(Operand operand, Map<Integer, Operand> constants) {
+        if (operand == null || !operand.isRegister()) {
+            return operand;
+        }
+        Operand value = constants.get(operand.register);
+        return value != null ? value : operand;
+    }
+
+    /** Value of an operation on constants, or null when an operand is not constant or it would fail. */
+    public static Operand fold(Opcode op, Type type, Operand a, Operand b) {
+        if (!a.isConstant() || b != null && !b.isConstant()) {
+            return null;
+        }
+        if (op.isComparison()) {
+            int order = type == Type.REAL ? compare(a.realValue, b.realValue) : Integer.compare(a.intValue, b.intValue);
+            return Operand.constant(switch (op) {
+                case EQ -> order == 0;
+                case NE -> order != 0;
+                case LT -> order == -1;
+                case LE -> order == -1 || order == 0;
+                case GT -> order == 1;
+                default -> order == 0 || order == 1;
+            });
+        }
+        switch (op) {
+            case I2D:
+                return Operand.constant((double) a.intValue);
+            case NOT:
+                return Operand.constant(!a.booleanValue());
+            case AND:
+                return Operand.constant(a.booleanValue() & b.booleanValue());
+            case OR:
+                return Operand.constant(a.booleanValue() | b.booleanValue());
+            case NEG:
+                return type == Type.REAL ? Operand.constant(-a.realValue) : Operand.constant(-a.intValue);
+            default:
+                break;
+        }
+        if (type == Type.REAL) {
+            double x = a.realValue;
+            double y = b.realValue;
+            return Operand.constant(switch (op) {
+                case ADD -> x + y;
+                case SUB -> x - y;
+                case MUL -> x * y;
+                default -> x / y;
+            });
+        }
+        int x = a.intValue;
+        int y = b.intValue;
+        if (op == Opcode.DIV && y == 0) {
+            return null;
+        }
+        return Operand.constant(switch (op) {
+            case ADD -> x + y;
+            case SUB -> x - y;
+            case MUL -> x * y;
+            default -> x / y;
+        });
+    }
+
+    /** Like {@link Double#compare} but with NaN unordered and -0.0 equal to 0.0, as {@code <} and {@code ==} see them. */
+    private static int compare(double x, double y) {
+        if (x < y) {
+            return -1;
+        } else if (x > y) {
+            return 1;
+        }
+        return x == y ? 0 : UNORDERED;
+    }
+
+    /** Operand an operation with one constant operand always equals, or null. */
+    private static Operand simplify(Opcode op, Type type, Operand a, Operand b) {
+        switch (op) {
+            case ADD:
+                if (type == Type.INTEGER && a.isConstant(0)) {
+                    return b;
+                }
+                return type == Type.INTEGER && b.isConstant(0) ? a : null;
+            case SUB:
+                if (type == Type.INTEGER && a.isRegister() && a.equals(b)) {
+                    return Operand.constant(0);
+                }
+                return type == Type.INTEGER && b.isConstant(0) || isReal(b, 0.0) ? a : null;
+            case MUL:
+                if (type == Type.INTEGER && (a.isConstant(0) || b.isConstant(0))) {
+                    return Operand.constant(0);
+                }
+                if (a.isConstant(1) || isReal(a, 1.0)) {
+                    return b;
+                }
+                return b.isConstant(1) || isReal(b, 1.0) ? a : null;
+            case DIV:
+                return b.isConstant(1) || isReal(b, 1.0) ? a : null;
+            case AND:
+                if (a.isConstant()) {
+                    return a.booleanValue() ? b : Operand.FALSE;
+                }
+                return b.isConstant() ? b.booleanValue() ? a : Operand.FALSE : null;
+            case OR:
+                if (a.isConstant()) {
+                    return a.booleanValue() ? Operand.TRUE : b;
+                }
+                return b.isConstant() ? b.booleanValue() ? Operand.TRUE : a : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isReal(Operand operand, double value) {
+        return operand.isConstant() && operand.type == Type.REAL
+                && Double.doubleToLongBits(operand.realValue) == Double.doubleToLongBits(value);
+    }
+}
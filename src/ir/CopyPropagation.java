@@ -0,0 +1,152 @@
+package ir;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces a register by the constant or register it was copied from, wherever every path
+ * to the use agrees on that copy. Variables start as the constant 0, so their first reads
+ * before any assignment fold too. Facts about variables flow between blocks by a forward
+ * analysis that meets at joins; temporaries are only followed inside their block, which
+ * keeps the state of a block as small as the number of variables. A copy of the value a
+ * register already holds, such as {@code soma := 0} before anything is assigned to soma,
+ * is removed.
+ */
+public class CopyPropagation implements Pass {
+    @Override
+    public String name() {
+        return "copy propagation";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        List<List<Block>> predecessors = program.predecessors();
+        List<Block> order = program.reversePostorder();
+        Operand[][] out = new Operand[program.blocks.size()][];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Block block : order) {
+                Operand[] state = in(program, block, predecessors, out);
+                transfer(program, block, state, false);
+                if (!Arrays.equals(state, out[block.index])) {
+                    out[block.index] = state;
+                    changed = true;
+                }
+            }
+        }
+        boolean rewritten = false;
+        for (Block block : order) {
+            rewritten |= transfer(program, block, in(program, block, predecessors, out), true);
+        }
+        return rewritten;
+    }
+
+    /** Facts that hold on entry to {@code block}: those all of its analysed predecessors agree on. */
+    private static Operand[] in(IrProgram program, Block block, List<List<Block>> predecessors, Operand[][] out) {
+        Operand[] state = null;
+        if (block.index == 0) {
+            state = new Operand[program.variables];
+            for (int variable = 0; variable < program.variables; variable++) {
+                state[variable] = zero(program, variable);
+            }
+        }
+        for (Block predecessor : predecessors.get(block.index)) {
+            Operand[] facts = out[predecessor.index];
+            if (facts == null) {
+                continue;
+            }
+            if (state == null) {
+                state = facts.clone();
+                continue;
+            }
+            for (int variable = 0; variable < state.length; variable++) {
+                if (state[variable] != null && !state[variable].equals(facts[variable])) {
+                    state[variable] = null;
+                }
+            }
+        }
+        return state != null ? state : new Operand[program.variables];
+    }
+
+    /**
+     * Runs the instructions of {@code block} over {@code state}, rewriting their operands when
+     * {@code rewrite} is set. Returns whether an instruction changed.
+     */
+    private static boolean transfer(IrProgram program, Block block, Operand[] state, boolean rewrite) {
+        Map<Integer, Operand> temporaries = new HashMap<>();
+        boolean changed = false;
+        Iterator<Instruction> instructions = block.instructions.iterator();
+        while (instructions.hasNext()) {
+            Instruction instruction = instructions.next();
+            Operand a = resolve(instruction.a, state, temporaries);
+            Operand b = resolve(instruction.b, state, temporaries);
+            if (rewrite && (a != instruction.a || b != instruction.b)) {
+                instruction.a = a;
+                instruction.b = b;
+                changed = true;
+            }
+            int target = instruction.target;
+            if (target == Instruction.NONE) {
+                continue;
+            }
+            if (instruction.op == Opcode.COPY && (a.isRegister() && a.register == target
+                    || a.equals(target < state.length ? state[target] : temporaries.get(target)))) {
+                if (rewrite) {
+                    instructions.remove();
+                    changed = true;
+                }
+                continue;
+            }
+            kill(state, temporaries, target);
+            if (instruction.op == Opcode.COPY) {
+                if (program.isVariable(target)) {
+                    state[target] = a;
+                } else {
+                    temporaries.put(target, a);
+                }
+            }
+        }
+        // Facts naming a temporary do not leave its block.
+        for (int variable = 0; variable < state.length; variable++) {
+            if (state[variable] != null && state[variable].isRegister() && !program.isVariable(state[variable].register)) {
+                state[variable] = null;
+            }
+        }
+        return changed;
+    }
+
+    private static Operand resolve(Operand operand, Operand[] state, Map<Integer, Operand> temporaries) {
+        if (operand == null || !operand.isRegister()) {
+            return operand;
+        }
+        Operand value = operand.register < state.length ? state[operand.register] : temporaries.get(operand.register);
+        return value != null ? value : operand;
+    }
+
+    /** Forgets what {@code register} held and every copy taken from it. */
+    private static void kill(Operand[] state, Map<Integer, Operand> temporaries, int register) {
+        if (register < state.length) {
+            state[register] = null;
+        } else {
+            temporaries.remove(register);
+        }
+        for (int variable = 0; variable < state.length; variable++) {
+            if (state[variable] != null && state[variable].isRegister() && state[variable].register == register) {
+                state[variable] = null;
+            }
+        }
+        temporaries.values().removeIf(value -> value.isRegister() && value.register == register);
+    }
+
+    private static Operand zero(IrProgram program, int variable) {
+        return switch (program.type(variable)) {
+            case INTEGER -> Operand.constant(0);
+            case REAL -> Operand.constant(0.0);
+            case BOOLEAN -> Operand.FALSE;
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package ir;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Removes the instructions whose result is never read on any path, unless they have an
+ * effect of their own (see {@link Instruction#hasEffect}). Liveness is computed backwards
+ * over the registers that are read in some block before being written there, the only
+ * ones that can be live between blocks, and repeated until removing a use frees nothing
+ * more.
+ */
+public class DeadCodeElimination implements Pass {
+    @Override
+    public String name() {
+        return "dead code";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean changed = false;
+        while (sweep(program)) {
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean sweep(IrProgram program) {
+        List<Block> blocks = program.blocks;
+        BitSet[] exposed = new BitSet[blocks.size()];
+        BitSet global = new BitSet();
+        BitSet written = new BitSet();
+        for (Block block : blocks) {
+            BitSet uses = new BitSet();
+            written.clear();
+            for (Instruction instruction : block.instructions) {
+                use(uses, written, instruction.a);
+                use(uses, written, instruction.b);
+                if (instruction.target != Instruction.NONE) {
+                    written.set(instruction.target);
+                }
+            }
+            exposed[block.index] = uses;
+            global.or(uses);
+        }
+        BitSet[] defined = new BitSet[blocks.size()];
+        for (Block block : blocks) {
+            BitSet definitions = new BitSet();
+            for (Instruction instruction : block.instructions) {
+                if (instruction.target != Instruction.NONE && global.get(instruction.target)) {
+                    definitions.set(instruction.target);
+                }
+            }
+            defined[block.index] = definitions;
+        }
+
+        List<Block> order = program.reversePostorder();
+        BitSet[] liveIn = new BitSet[blocks.size()];
+        BitSet[] liveOut = new BitSet[blocks.size()];
+        for (Block block : blocks) {
+            liveIn[block.index] = (BitSet) exposed[block.index].clone();
+            liveOut[block.index] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.size() - 1; i >= 0; i--) {
+                Block block = order.get(i);
+                BitSet out = liveOut[block.index];
+                for (Block successor : block.successors()) {
+                    out.or(liveIn[successor.index]);
+                }
+                BitSet in = (BitSet) out.clone();
+                in.andNot(defined[block.index]);
+                in.or(exposed[block.index]);
+                if (!in.equals(liveIn[block.index])) {
+                    liveIn[block.index] = in;
+                    changed = true;
+                }
+            }
+        }
+
+        boolean removed = false;
+        BitSet live = new BitSet();
+        for (Block block : blocks) {
+            live.clear();
+            live.or(liveOut[block.index]);
+            ListIterator<Instruction> instructions = block.instructions.listIterator(block.instructions.size());
+            while (instructions.hasPrevious()) {
+                Instruction instruction = instructions.previous();
+                if (instruction.target != Instruction.NONE) {
+                    if (!live.get(instruction.target) && !instruction.hasEffect()) {
+                        instructions.remove();
+                        removed = true;
+                        continue;
+                    }
+                    live.clear(instruction.target);
+                }
+                if (instruction.a != null && instruction.a.isRegister()) {
+                    live.set(instruction.a.register);
+                }
+                if (instruction.b != null && instruction.b.isRegister()) {
+                    live.set(instruction.b.register);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static void use(BitSet uses, BitSet written, Operand operand) {
+        if (operand != null && operand.isRegister() && !written.get(operand.register)) {
+            uses.set(operand.register);
+        }
+    }
+}
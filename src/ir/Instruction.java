@@ -0,0 +1,104 @@
+package ir;
+
+import semantic.Type;
+
+/**
+ * One three-address instruction. The passes rewrite instructions in place, so every field
+ * but the line is mutable. {@link #target} is the register written, or {@link #NONE}.
+ */
+public final class Instruction {
+    public static final int NONE = -1;
+
+    public Opcode op;
+    public Type type;
+    public int target;
+    public Operand a;
+    public Operand b;
+    /** Destination of a JUMP, and of a BRANCH whose condition holds. */
+    public Block first;
+    /** Destination of a BRANCH whose condition fails. */
+    public Block second;
+    /** Source line reported when the instruction fails at run time. */
+    public final int line;
+
+    public Instruction(Opcode op, Type type, int target, Operand a, Operand b, int line) {
+        this.op = op;
+        this.type = type;
+        this.target = target;
+        this.a = a;
+        this.b = b;
+        this.line = line;
+    }
+
+    public static Instruction jump(Block block, int line) {
+        Instruction jump = new Instruction(Opcode.JUMP, null, NONE, null, null, line);
+        jump.first = block;
+        return jump;
+    }
+
+    public static Instruction branch(Operand condition, Block first, Block second, int line) {
+        Instruction branch = new Instruction(Opcode.BRANCH, Type.BOOLEAN, NONE, condition, null, line);
+        branch.first = first;
+        branch.second = second;
+        return branch;
+    }
+
+    /** Turns this instruction into {@code target = value}. */
+    public void copy(Operand value) {
+        op = Opcode.COPY;
+        type = value.type;
+        a = value;
+        b = null;
+    }
+
+    /** Turns this branch into a jump to {@code block}. */
+    public void jump(Block block) {
+        op = Opcode.JUMP;
+        type = null;
+        a = null;
+        first = block;
+        second = null;
+    }
+
+    /**
+     * Whether the instruction must run even when nothing uses its target: input and output,
+     * control flow, and an integer division that may fail.
+     */
+    public boolean hasEffect() {
+        return switch (op) {
+            case READ, SKIP, WRITE, JUMP, BRANCH, HALT -> true;
+            case DIV -> type == Type.INTEGER && !(b.isConstant() && b.intValue != 0);
+            default -> false;
+        };
+    }
+
+    public boolean uses(int register) {
+        return a != null && a.isRegister() && a.register == register
+                || b != null && b.isRegister() && b.register == register;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (target != NONE) {
+            builder.append('r').append(target).append(" = ");
+        }
+        builder.append(op.name().toLowerCase());
+        if (type != null && op != Opcode.BRANCH) {
+            builder.append(' ').append(type.name().toLowerCase());
+        }
+        if (a != null) {
+            builder.append(' ').append(a);
+        }
+        if (b != null) {
+            builder.append(", ").append(b);
+        }
+        if (first != null) {
+            builder.append(op == Opcode.BRANCH ? " ? " : " ").append(first);
+        }
+        if (second != null) {
+            builder.append(" : ").append(second);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,228 @@
+package ir;
+
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+import semantic.Type;
+import semantic.Variable;
+import syntatic.Ast;
+import syntatic.AstCursor;
+import syntatic.NodeKind;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lowers a checked {@link Ast} to an {@link IrProgram}. Like {@code vm.BytecodeCompiler} it
+ * generates code from the exits of an {@link AstCursor} walk, so nesting is not limited by
+ * the thread stack. Every operation writes a new temporary, or the variable it is assigned
+ * to when no conversion is needed; an I2D is inserted wherever
+ * {@code checkArithmeticOperation}, the ordering comparisons or {@code checkAssignment}
+ * mix an integer into a real. Nothing is optimized here, that is left to the passes.
+ */
+public class IrBuilder {
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final SemanticAnalysis semantics;
+    private final IrProgram program;
+    private final List<Operand> values;
+    /** Blocks control flow continues at: join and else of every open if, header of every open repeat. */
+    private final List<Block> controls;
+    private Block current;
+    private int line;
+
+    private IrBuilder(Ast ast, SemanticAnalysis semantics) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.semantics = semantics;
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (Variable variable : semantics.getVariables()) {
+            names.add(variable.name);
+            types.add(variable.type);
+        }
+        this.program = new IrProgram(ast.text(ast.root()), names, types);
+        this.values = new ArrayList<>();
+        this.controls = new ArrayList<>();
+        this.line = 1;
+    }
+
+    public static IrProgram build(Ast ast, SemanticAnalysis semantics) {
+        return new IrBuilder(ast, semantics).build();
+    }
+
+    private IrProgram build() {
+        int statements = ast.child(ast.root());
+        while (ast.kind(statements) == NodeKind.DECLARATION) {
+            statements = ast.next(statements);
+        }
+        current = program.newBlock();
+        AstCursor cursor = new AstCursor(ast);
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            if (ast.token(node) != Ast.NONE) {
+                line = tokens.line(ast.token(node));
+            }
+            if (!cursor.isEntering()) {
+                exit(node, cursor.parent());
+            } else if (ast.kind(node) == NodeKind.REPEAT) {
+                Block header = new Block(-1);
+                place(header);
+                controls.add(header);
+            }
+        }
+        emit(new Instruction(Opcode.HALT, null, Instruction.NONE, null, null, line));
+        return program;
+    }
+
+    private void exit(int node, int parent) {
+        switch (ast.kind(node)) {
+            case IDENTIFIER -> value(node, parent, program.operand(semantics.getSlot(ast.identifier(node))));
+            case INTEGER_CONST -> value(node, parent, Operand.constant(new BigInteger(ast.text(node)).intValue()));
+            case REAL_CONST -> value(node, parent, Operand.constant(Double.parseDouble(ast.text(node))));
+            case BINARY -> binary(node, parent);
+            case NEGATE, NOT -> unary(node, parent);
+            case ASSIGN -> assign(node);
+            case READ -> read(node);
+            case WRITE -> write(node);
+            case STATEMENTS -> {
+                if (parent != Ast.NONE && ast.kind(parent) == NodeKind.IF
+                        && ast.next(ast.child(parent)) == node && ast.next(node) != Ast.NONE) {
+                    // End of the then branch: jump over the else branch, which starts here.
+                    emit(Instruction.jump(controls.get(controls.size() - 2), line));
+                    place(controls.get(controls.size() - 1));
+                }
+            }
+            case IF -> {
+                controls.remove(controls.size() - 1);
+                place(controls.remove(controls.size() - 1));
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void value(int node, int parent, Operand value) {
+        if (parent == Ast.NONE) {
+            values.add(value);
+            return;
+        }
+        if (ast.kind(parent) == NodeKind.IF && ast.child(parent) == node) {
+            Block then = new Block(-1);
+            Block join = new Block(-1);
+            Block otherwise = ast.next(ast.next(node)) != Ast.NONE ? new Block(-1) : join;
+            emit(Instruction.branch(value, then, otherwise, line));
+            controls.add(join);
+            controls.add(otherwise);
+            place(then);
+        } else if (ast.kind(parent) == NodeKind.REPEAT && ast.next(ast.child(parent)) == node) {
+            Block header = controls.remove(controls.size() - 1);
+            Block exit = new Block(-1);
+            emit(Instruction.branch(value, exit, header, line));
+            place(exit);
+        } else {
+            values.add(value);
+        }
+    }
+
+    private void binary(int node, int parent) {
+        TokenType token = tokens.type(ast.token(node));
+        Operand right = pop();
+        Operand left = pop();
+        Opcode op = switch (token) {
+            case ADD -> Opcode.ADD;
+            case SUB -> Opcode.SUB;
+            case MUL -> Opcode.MUL;
+            case DIV -> Opcode.DIV;
+            case AND -> Opcode.AND;
+            case OR -> Opcode.OR;
+            case EQUAL -> Opcode.EQ;
+            case NOT_EQUAL -> Opcode.NE;
+            case LOWER_THAN -> Opcode.LT;
+            case LOWER_EQUAL -> Opcode.LE;
+            case GREATER_THAN -> Opcode.GT;
+            default -> Opcode.GE;
+        };
+        Type type = op.isComparison()
+                ? left.type == Type.REAL || right.type == Type.REAL ? Type.REAL : left.type
+                : ast.type(node);
+        if (type == Type.REAL) {
+            left = toReal(left);
+            right = toReal(right);
+        }
+        int target = target(node, parent);
+        emit(new Instruction(op, type, target, left, right, line));
+        value(node, parent, program.operand(target));
+    }
+
+    private void unary(int node, int parent) {
+        Operand operand = pop();
+        int target = target(node, parent);
+        Opcode op = ast.kind(node) == NodeKind.NOT ? Opcode.NOT : Opcode.NEG;
+        emit(new Instruction(op, operand.type, target, operand, null, line));
+        value(node, parent, program.operand(target));
+    }
+
+    /** Register an operation writes: the assigned variable when it needs no conversion, or a new temporary. */
+    private int target(int node, int parent) {
+        if (parent != Ast.NONE && ast.kind(parent) == NodeKind.ASSIGN && ast.type(parent) == ast.type(node)) {
+            return semantics.getSlot(ast.identifier(parent));
+        }
+        return program.newRegister(ast.type(node));
+    }
+
+    private void assign(int node) {
+        Operand value = pop();
+        int slot = semantics.getSlot(ast.identifier(node));
+        if (ast.type(node) == Type.REAL && value.type == Type.INTEGER) {
+            emit(new Instruction(Opcode.I2D, Type.REAL, slot, value, null, line));
+        } else if (!value.isRegister() || value.register != slot) {
+            emit(new Instruction(Opcode.COPY, value.type, slot, value, null, line));
+        }
+    }
+
+    private void read(int node) {
+        int identifier = ast.identifier(node);
+        if (semantics.isVariableDeclared(identifier)) {
+            emit(new Instruction(Opcode.READ, semantics.getType(identifier), semantics.getSlot(identifier),
+                    null, null, line));
+        } else {
+            emit(new Instruction(Opcode.SKIP, null, Instruction.NONE, null, null, line));
+        }
+    }
+
+    private void write(int node) {
+        int child = ast.child(node);
+        Operand value = ast.kind(child) == NodeKind.TEXT ? Operand.text(ast.text(child)) : pop();
+        emit(new Instruction(Opcode.WRITE, value.type, Instruction.NONE, value, null, line));
+    }
+
+    private Operand toReal(Operand operand) {
+        if (operand.type == Type.REAL) {
+            return operand;
+        }
+        int converted = program.newRegister(Type.REAL);
+        emit(new Instruction(Opcode.I2D, Type.REAL, converted, operand, null, line));
+        return program.operand(converted);
+    }
+
+    /** Ends the current block with a jump to {@code block}, which then becomes current. */
+    private void place(Block block) {
+        if (!current.isTerminated()) {
+            emit(Instruction.jump(block, line));
+        }
+        block.index = program.blocks.size();
+        program.blocks.add(block);
+        current = block;
+    }
+
+    private void emit(Instruction instruction) {
+        current.instructions.add(instruction);
+    }
+
+    private Operand pop() {
+        return values.remove(values.size() - 1);
+    }
+}
@@ -0,0 +1,149 @@
+package ir;
+
+import semantic.Type;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A checked program as three-address code over typed registers. Registers below
+ * {@link #variables} are the variables, at the slots {@code SemanticAnalysis} gave them,
+ * and start as 0; the rest are temporaries. The first block is the entry.
+ */
+public final class IrProgram {
+    public final String name;
+    public final int variables;
+    public final List<Block> blocks;
+    private final List<Type> types;
+    private final List<String> names;
+
+    public IrProgram(String name, List<String> names, List<Type> types) {
+        this.name = name;
+        this.variables = types.size();
+        this.blocks = new ArrayList<>();
+        this.types = new ArrayList<>(types);
+        this.names = new ArrayList<>(names);
+    }
+
+    public Block newBlock() {
+        Block block = new Block(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    public int newRegister(Type type) {
+        types.add(type);
+        return types.size() - 1;
+    }
+
+    public int registers() {
+        return types.size();
+    }
+
+    public Type type(int register) {
+        return types.get(register);
+    }
+
+    public Operand operand(int register) {
+        return Operand.register(register, types.get(register));
+    }
+
+    public boolean isVariable(int register) {
+        return register < variables;
+    }
+
+    /** Number of instructions, the measure the passes report. */
+    public int size() {
+        int size = 0;
+        for (Block block : blocks) {
+            size += block.instructions.size();
+        }
+        return size;
+    }
+
+    /** Drops the blocks no path from the entry reaches and numbers the rest in order. */
+    public boolean removeUnreachable() {
+        BitSet reached = new BitSet();
+        List<Block> work = new ArrayList<>();
+        work.add(blocks.get(0));
+        reached.set(0);
+        while (!work.isEmpty()) {
+            for (Block successor : work.remove(work.size() - 1).successors()) {
+                if (!reached.get(successor.index)) {
+                    reached.set(successor.index);
+                    work.add(successor);
+                }
+            }
+        }
+        int before = blocks.size();
+        blocks.removeIf(block -> !reached.get(block.index));
+        renumber();
+        return blocks.size() != before;
+    }
+
+    public void renumber() {
+        for (int i = 0; i < blocks.size(); i++) {
+            blocks.get(i).index = i;
+        }
+    }
+
+    /** Predecessors of every block, by index. */
+    public List<List<Block>> predecessors() {
+        List<List<Block>> predecessors = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            predecessors.add(new ArrayList<>(2));
+        }
+        for (Block block : blocks) {
+            for (Block successor : block.successors()) {
+                predecessors.get(successor.index).add(block);
+            }
+        }
+        return predecessors;
+    }
+
+    /** Blocks in reverse postorder from the entry, so a block follows its forward predecessors. */
+    public List<Block> reversePostorder() {
+        List<Block> order = new ArrayList<>(blocks.size());
+        boolean[] visited = new boolean[blocks.size()];
+        int[] stack = new int[blocks.size()];
+        int[] next = new int[blocks.size()];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        while (depth > 0) {
+            Block block = blocks.get(stack[depth - 1]);
+            List<Block> successors = block.successors();
+            int i = next[block.index]++;
+            if (i < successors.size()) {
+                Block successor = successors.get(i);
+                if (!visited[successor.index]) {
+                    visited[successor.index] = true;
+                    stack[depth++] = successor.index;
+                }
+            } else {
+                depth--;
+                order.add(block);
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("program ").append(name).append('\n');
+        for (int register = 0; register < variables; register++) {
+            builder.append("  r").append(register).append(' ').append(types.get(register).name().toLowerCase())
+                    .append(' ').append(names.get(register)).append('\n');
+        }
+        for (Block block : blocks) {
+            builder.append(block).append(":\n");
+            for (Instruction instruction : block.instructions) {
+                builder.append("    ").append(instruction).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,142 @@
+package ir;
+
+import lexical.LexicalAnalysis;
+import semantic.SemanticAnalysis;
+import syntatic.Ast;
+import syntatic.SyntacticAnalysis;
+import vm.Interpreter;
+import vm.IrCompiler;
+import vm.Program;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what {@link LoopOptimization} gains on generated loop programs:
+ * {@code java ir.LoopBenchmark [programs] [iterations] [seed]}. Every program runs a few
+ * {@code repeat} loops, some nested, whose bodies recompute invariant expressions of the
+ * values read and multiply the counters by constants and invariants. Each one is
+ * optimized with and without the loop pass, both versions are checked to print the same,
+ * and the best time of several rounds on the {@link Interpreter} is reported.
+ */
+public class LoopBenchmark {
+    private static final int ROUNDS = 5;
+    private static final String INPUT = "3 7 2.5";
+
+    public static void main(String[] args) {
+        int programs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        byte[] input = INPUT.getBytes(StandardCharsets.UTF_8);
+        double product = 1;
+        for (int p = 0; p < programs; p++) {
+            String source = generate(new Random(seed + p), iterations);
+            SyntacticAnalysis parser = new SyntacticAnalysis(
+                    new LexicalAnalysis(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8))));
+            parser.setExplicitStack(true);
+            parser.setBuildAst(true);
+            parser.start();
+            Ast ast = parser.getAst();
+            SemanticAnalysis semantics = parser.getSemanticAnalysis();
+
+            IrProgram plain = IrBuilder.build(ast, semantics);
+            new Optimizer(List.of(new ConstantFolding(), new CopyPropagation(), new UnreachableCodeElimination(),
+                    new DeadCodeElimination())).optimize(plain);
+            IrProgram looped = IrBuilder.build(ast, semantics);
+            Optimizer.standard().optimize(looped);
+            Program without = IrCompiler.compile(plain);
+            Program with = IrCompiler.compile(looped);
+
+            String expected = run(without, input);
+            if (!expected.equals(run(with, input))) {
+                System.out.println("Outputs differ for program " + p + ":\n" + source);
+                System.exit(1);
+            }
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            long bestWithout = Long.MAX_VALUE;
+            long bestWith = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                new Interpreter(new ByteArrayInputStream(input), discard).run(without);
+                bestWithout = Math.min(bestWithout, System.nanoTime() - start);
+                start = System.nanoTime();
+                new Interpreter(new ByteArrayInputStream(input), discard).run(with);
+                bestWith = Math.min(bestWith, System.nanoTime() - start);
+            }
+            product *= (double) bestWithout / bestWith;
+            System.out.printf("program %d: %d -> %d instructions, %.2f -> %.2f ms (%.2fx)%n", p, plain.size(),
+                    looped.size(), bestWithout / 1e6, bestWith / 1e6, (double) bestWithout / bestWith);
+        }
+        System.out.printf("geometric mean speedup: %.2fx%n", Math.pow(product, 1.0 / programs));
+    }
+
+    private static String run(Program program, byte[] input) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new Interpreter(new ByteArrayInputStream(input), new PrintStream(output, false, StandardCharsets.UTF_8))
+                .run(program);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    /** A program whose loops together run about {@code iterations} times per loop nest. */
+    static String generate(Random random, int iterations) {
+        StringBuilder source = new StringBuilder();
+        source.append("app Loops\nvar\n    integer a, b, c, i, j, s, t, u;\n    real r, x, y\ninit\n");
+        source.append("    read(a);\n    read(b);\n    read(r);\n    c := a * b - 1;\n");
+        int loops = 1 + random.nextInt(3);
+        for (int loop = 0; loop < loops; loop++) {
+            boolean nested = random.nextBoolean();
+            int inner = nested ? 4 + random.nextInt(12) : 1;
+            int outer = Math.max(1, iterations / inner);
+            source.append("    i := 0;\n    repeat\n");
+            body(random, source, "i", "        ");
+            if (nested) {
+                source.append("        j := 0;\n        repeat\n");
+                body(random, source, "j", "            ");
+                source.append("            j := j + 1\n        until (j >= ").append(inner).append(");\n");
+            }
+            source.append("        i := i + 1\n    until ");
+            if (random.nextBoolean()) {
+                source.append("(i >= ").append(outer).append(");\n");
+            } else {
+                source.append("(i > ").append(outer - 1).append(".5);\n");
+            }
+        }
+        source.append("    write(s);\n    write(t);\n    write(u);\n    write(x);\n    write(y)\nreturn\n");
+        return source.toString();
+    }
+
+    private static void body(Random random, StringBuilder source, String counter, String indent) {
+        int statements = 2 + random.nextInt(4);
+        for (int k = 0; k < statements; k++) {
+            source.append(indent);
+            switch (random.nextInt(6)) {
+                case 0 -> source.append("s := s + ").append(counter).append(" * ").append(2 + random.nextInt(9));
+                case 1 -> source.append("t := t + ").append(counter).append(" * ").append(invariant(random));
+                case 2 -> source.append("u := u + (").append(invariant(random)).append(") * ").append(counter);
+                case 3 -> source.append("x := x + (r * ").append(random.nextInt(9) + 1).append(".5 + a) / ")
+                        .append(random.nextInt(9) + 2).append(".0");
+                case 4 -> source.append("y := y + (").append(invariant(random)).append(") / 4.0 - ")
+                        .append(counter);
+                default -> source.append("if (").append(counter).append(" / 2 * 2 = ").append(counter)
+                        .append(") then\n").append(indent).append("    s := s - ").append(invariant(random))
+                        .append("\n").append(indent).append("end");
+            }
+            source.append(";\n");
+        }
+    }
+
+    private static String invariant(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> "a * b";
+            case 1 -> "(a + b) * c";
+            case 2 -> "a * " + (random.nextInt(9) + 2) + " - b";
+            default -> "(c - a) * (b + " + random.nextInt(9) + ")";
+        };
+    }
+}
@@ -0,0 +1,463 @@
+package ir;
+
+import semantic.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Optimizes the loops a {@code repeat ... until} compiles to, innermost first.
+ *
+ * A loop is found from its back edge, the jump from the {@code until} test to the header,
+ * which is a retreating edge of a depth-first walk since the control flow of these
+ * programs is structured. Instead of building SSA form the pass counts the definitions of
+ * every register inside the loop, which gives the same facts for it: a register with no
+ * definition in the loop is invariant, and a variable whose only definition is
+ * {@code i = i + c}, with c invariant, is an induction variable. Temporaries are written
+ * once and read after, so one written in the loop from invariant operands is invariant.
+ *
+ * <ul>
+ * <li>An operation on invariant operands that cannot fail is computed once, in a block
+ * before the header that every entry into the loop passes. A temporary moves there; a
+ * variable is then assigned a copy of the hoisted value.</li>
+ * <li>A product {@code i * k} of an integer induction variable and an invariant is kept in
+ * a temporary, set to {@code i * k} before the loop and increased by {@code c * k} wherever
+ * i is increased by c. Ints wrap, so the sum is always the product; reals are left alone
+ * as their sums round.</li>
+ * <li>A comparison of an integer converted to real with another converted integer or with a
+ * real constant, as in {@code until (i > n)} with a real n, compares ints instead.</li>
+ * </ul>
+ *
+ * Collecting loops stops after {@link #BUDGET} blocks, so a pathologically deep nest costs
+ * linear time and only its innermost loops are optimized.
+ */
+public class LoopOptimization implements Pass {
+    private static final int BUDGET = 1 << 18;
+
+    private static final class Loop {
+        final Block header;
+        final Set<Block> body;
+        Loop parent;
+        Block preheader;
+
+        Loop(Block header, Set<Block> body) {
+            this.header = header;
+            this.body = body;
+        }
+    }
+
+    private IrProgram program;
+    private int[] definitions;
+    private Map<Block, List<Block>> predecessors;
+    private Map<Block, Block> preheaders;
+
+    @Override
+    public String name() {
+        return "loop optimization";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        List<Loop> loops = loops(program);
+        if (loops.isEmpty()) {
+            return false;
+        }
+        this.program = program;
+        this.definitions = new int[program.registers()];
+        this.predecessors = new HashMap<>();
+        this.preheaders = new HashMap<>();
+        List<List<Block>> entries = program.predecessors();
+        for (Block block : program.blocks) {
+            predecessors.put(block, entries.get(block.index));
+            for (Instruction instruction : block.instructions) {
+                if (instruction.target != Instruction.NONE) {
+                    definitions[instruction.target]++;
+                }
+            }
+        }
+        boolean changed = false;
+        for (Loop loop : loops) {
+            changed |= hoist(loop);
+            changed |= reduce(loop);
+            changed |= compareInts(loop);
+        }
+        if (!preheaders.isEmpty()) {
+            List<Block> blocks = new ArrayList<>(program.blocks);
+            program.blocks.clear();
+            for (Block block : blocks) {
+                Block preheader = preheaders.get(block);
+                if (preheader != null) {
+                    program.blocks.add(preheader);
+                }
+                program.blocks.add(block);
+            }
+            program.renumber();
+        }
+        this.program = null;
+        this.predecessors = null;
+        this.preheaders = null;
+        return changed;
+    }
+
+    /** Natural loops by header, innermost first, with each one's enclosing loop. */
+    private static List<Loop> loops(IrProgram program) {
+        List<Block> blocks = program.blocks;
+        Map<Block, List<Block>> latches = new HashMap<>();
+        List<Block> headers = new ArrayList<>();
+        boolean[] visited = new boolean[blocks.size()];
+        boolean[] onPath = new boolean[blocks.size()];
+        int[] stack = new int[blocks.size()];
+        int[] next = new int[blocks.size()];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = onPath[0] = true;
+        while (depth > 0) {
+            Block block = blocks.get(stack[depth - 1]);
+            List<Block> successors = block.successors();
+            int i = next[block.index]++;
+            if (i == successors.size()) {
+                onPath[block.index] = false;
+                depth--;
+                continue;
+            }
+            Block successor = successors.get(i);
+            if (onPath[successor.index]) {
+                if (!latches.containsKey(successor)) {
+                    latches.put(successor, new ArrayList<>());
+                    headers.add(successor);
+                }
+                latches.get(successor).add(block);
+            } else if (!visited[successor.index]) {
+                visited[successor.index] = onPath[successor.index] = true;
+                stack[depth++] = successor.index;
+            }
+        }
+
+        // Inner headers are reached later, so collecting backwards meets them first.
+        List<List<Block>> predecessors = program.predecessors();
+        List<Loop> loops = new ArrayList<>();
+        int budget = BUDGET;
+        for (int h = headers.size() - 1; h >= 0 && budget > 0; h--) {
+            Block header = headers.get(h);
+            Set<Block> body = new LinkedHashSet<>();
+            body.add(header);
+            List<Block> work = new ArrayList<>(latches.get(header));
+            while (!work.isEmpty() && budget > 0) {
+                Block block = work.remove(work.size() - 1);
+                if (body.add(block)) {
+                    budget--;
+                    work.addAll(predecessors.get(block.index));
+                }
+            }
+            if (work.isEmpty()) {
+                loops.add(new Loop(header, body));
+            }
+        }
+        loops.sort(Comparator.comparingInt(loop -> loop.body.size()));
+        Map<Block, Loop> innermost = new HashMap<>();
+        for (int i = loops.size() - 1; i >= 0; i--) {
+            Loop loop = loops.get(i);
+            loop.parent = innermost.get(loop.header);
+            for (Block block : loop.body) {
+                innermost.put(block, loop);
+            }
+        }
+        return loops;
+    }
+
+    private boolean hoist(Loop loop) {
+        Map<Integer, Integer> written = writtenIn(loop);
+        boolean changed = false;
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (Block block : loop.body) {
+                for (int i = 0; i < block.instructions.size(); i++) {
+                    Instruction instruction = block.instructions.get(i);
+                    if (!isInvariant(instruction, written)) {
+                        continue;
+                    }
+                    int target = instruction.target;
+                    if (!program.isVariable(target) && definitions[target] == 1) {
+                        block.instructions.remove(i--);
+                        append(preheader(loop), instruction);
+                        written.remove(target);
+                    } else if (program.isVariable(target) && instruction.op != Opcode.COPY) {
+                        int value = newRegister(program.type(target));
+                        append(preheader(loop), new Instruction(instruction.op, instruction.type, value,
+                                instruction.a, instruction.b, instruction.line));
+                        instruction.copy(program.operand(value));
+                    } else {
+                        continue;
+                    }
+                    moved = changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private boolean isInvariant(Instruction instruction, Map<Integer, Integer> written) {
+        return instruction.target != Instruction.NONE && instruction.op != Opcode.READ && !instruction.hasEffect()
+                && isInvariant(instruction.a, written) && isInvariant(instruction.b, written);
+    }
+
+    private static boolean isInvariant(Operand operand, Map<Integer, Integer> written) {
+        return operand == null || !operand.isRegister() || !written.containsKey(operand.register);
+    }
+
+    private boolean reduce(Loop loop) {
+        Map<Integer, Integer> written = writtenIn(loop);
+        Map<Integer, Instruction> steps = new HashMap<>();
+        Map<Integer, Block> stepBlocks = new HashMap<>();
+        for (Block block : loop.body) {
+            for (Instruction instruction : block.instructions) {
+                int target = instruction.target;
+                if (target != Instruction.NONE && program.isVariable(target) && written.get(target) == 1
+                        && step(instruction, written) != null) {
+                    steps.put(target, instruction);
+                    stepBlocks.put(target, block);
+                }
+            }
+        }
+        if (steps.isEmpty()) {
+            return false;
+        }
+        List<Instruction> multiplications = new ArrayList<>();
+        for (Block block : loop.body) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction.op == Opcode.MUL && instruction.type == Type.INTEGER) {
+                    multiplications.add(instruction);
+                }
+            }
+        }
+        Map<List<Operand>, Operand> products = new HashMap<>();
+        boolean changed = false;
+        for (Instruction instruction : multiplications) {
+            Operand variable = instruction.a;
+            Operand factor = instruction.b;
+            if (!isInduction(variable, steps) || !isInvariant(factor, written)) {
+                variable = instruction.b;
+                factor = instruction.a;
+            }
+            if (!isInduction(variable, steps) || !isInvariant(factor, written)) {
+                continue;
+            }
+            List<Operand> key = List.of(variable, factor);
+            Operand product = products.get(key);
+            if (product == null) {
+                product = program.operand(newRegister(Type.INTEGER));
+                Instruction step = steps.get(variable.register);
+                Block preheader = preheader(loop);
+                append(preheader, new Instruction(Opcode.MUL, Type.INTEGER, product.register, variable, factor,
+                        instruction.line));
+                Operand increment = ConstantFolding.fold(Opcode.MUL, Type.INTEGER, step(step, written), factor);
+                if (increment == null) {
+                    increment = program.operand(newRegister(Type.INTEGER));
+                    append(preheader, new Instruction(Opcode.MUL, Type.INTEGER, increment.register,
+                            step(step, written), factor, instruction.line));
+                }
+                List<Instruction> instructions = stepBlocks.get(variable.register).instructions;
+                instructions.add(instructions.indexOf(step) + 1, new Instruction(step.op, Type.INTEGER,
+                        product.register, product, increment, step.line));
+                definitions[product.register]++;
+                products.put(key, product);
+            }
+            instruction.copy(product);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /** The invariant c of {@code i = i + c}, {@code i = c + i} or {@code i = i - c} on ints, or null. */
+    private static Operand step(Instruction instruction, Map<Integer, Integer> written) {
+        if (instruction.type != Type.INTEGER || instruction.op != Opcode.ADD && instruction.op != Opcode.SUB) {
+            return null;
+        }
+        Operand self = Operand.register(instruction.target, Type.INTEGER);
+        if (self.equals(instruction.a) && isInvariant(instruction.b, written)) {
+            return instruction.b;
+        }
+        if (instruction.op == Opcode.ADD && self.equals(instruction.b) && isInvariant(instruction.a, written)) {
+            return instruction.a;
+        }
+        return null;
+    }
+
+    private static boolean isInduction(Operand operand, Map<Integer, Instruction> steps) {
+        return operand.isRegister() && steps.containsKey(operand.register);
+    }
+
+    private boolean compareInts(Loop loop) {
+        boolean changed = false;
+        for (Block block : loop.body) {
+            List<Instruction> instructions = block.instructions;
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction comparison = instructions.get(i);
+                if (!comparison.op.isComparison() || comparison.type != Type.REAL) {
+                    continue;
+                }
+                Operand a = integerSource(instructions, i, comparison.a);
+                Operand b = integerSource(instructions, i, comparison.b);
+                if (a != null && b != null) {
+                    comparison.type = Type.INTEGER;
+                    comparison.a = a;
+                    comparison.b = b;
+                    changed = true;
+                } else if (a != null && comparison.b.isConstant()) {
+                    changed |= compareWithConstant(comparison, comparison.op, a, comparison.b.realValue, false);
+                } else if (b != null && comparison.a.isConstant()) {
+                    changed |= compareWithConstant(comparison, comparison.op, b, comparison.a.realValue, true);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * The int operand a real operand of the instruction at {@code index} was converted from in
+     * the same block, with nothing writing it in between, or null.
+     */
+    private static Operand integerSource(List<Instruction> instructions, int index, Operand operand) {
+        if (!operand.isRegister()) {
+            return null;
+        }
+        for (int i = index - 1; i >= 0; i--) {
+            Instruction instruction = instructions.get(i);
+            if (instruction.target != operand.register) {
+                continue;
+            }
+            if (instruction.op != Opcode.I2D) {
+                return null;
+            }
+            Operand source = instruction.a;
+            if (source.isConstant()) {
+                return null;
+            }
+            for (int j = i + 1; j < index; j++) {
+                if (instructions.get(j).target == source.register) {
+                    return null;
+                }
+            }
+            return source;
+        }
+        return null;
+    }
+
+    /**
+     * Rewrites {@code (double) x op c} as a comparison of ints: x < c holds when x < ceil(c),
+     * x <= c when x <= floor(c), and a bound outside the ints decides the result alone.
+     * With {@code swapped} the constant is the left operand.
+     */
+    private static boolean compareWithConstant(Instruction comparison, Opcode op, Operand x, double c,
+                                               boolean swapped) {
+        if (swapped) {
+            op = switch (op) {
+                case LT -> Opcode.GT;
+                case LE -> Opcode.GE;
+                case GT -> Opcode.LT;
+                case GE -> Opcode.LE;
+                default -> op;
+            };
+        }
+        if (Double.isNaN(c)) {
+            comparison.copy(Operand.constant(op == Opcode.NE));
+            return true;
+        }
+        double bound = switch (op) {
+            case LT, GE -> Math.ceil(c);
+            case LE, GT -> Math.floor(c);
+            default -> c;
+        };
+        if ((op == Opcode.EQ || op == Opcode.NE) && bound != Math.rint(bound)) {
+            comparison.copy(Operand.constant(op == Opcode.NE));
+            return true;
+        }
+        if (bound < Integer.MIN_VALUE || bound > Integer.MAX_VALUE) {
+            boolean above = bound > Integer.MAX_VALUE;
+            comparison.copy(Operand.constant(switch (op) {
+                case LT, LE -> above;
+                case GT, GE -> !above;
+                case EQ -> false;
+                default -> true;
+            }));
+            return true;
+        }
+        comparison.type = Type.INTEGER;
+        comparison.op = op;
+        comparison.a = x;
+        comparison.b = Operand.constant((int) bound);
+        return true;
+    }
+
+    /** Registers written in the loop, with the number of instructions writing each. */
+    private static Map<Integer, Integer> writtenIn(Loop loop) {
+        Map<Integer, Integer> written = new HashMap<>();
+        for (Block block : loop.body) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction.target != Instruction.NONE) {
+                    written.merge(instruction.target, 1, Integer::sum);
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Block every entry into the loop passes just before the header: the only block outside
+     * the loop that jumps to it, or a new one placed before the header.
+     */
+    private Block preheader(Loop loop) {
+        if (loop.preheader != null) {
+            return loop.preheader;
+        }
+        List<Block> inside = new ArrayList<>();
+        List<Block> outside = new ArrayList<>();
+        for (Block block : predecessors.get(loop.header)) {
+            (loop.body.contains(block) ? inside : outside).add(block);
+        }
+        if (outside.size() == 1 && outside.get(0).terminator().op == Opcode.JUMP) {
+            loop.preheader = outside.get(0);
+            return loop.preheader;
+        }
+        Block preheader = new Block(-1);
+        preheader.instructions.add(Instruction.jump(loop.header, loop.header.instructions.get(0).line));
+        for (Block block : outside) {
+            Instruction terminator = block.terminator();
+            if (terminator.first == loop.header) {
+                terminator.first = preheader;
+            }
+            if (terminator.second == loop.header) {
+                terminator.second = preheader;
+            }
+        }
+        inside.add(preheader);
+        predecessors.put(loop.header, inside);
+        predecessors.put(preheader, outside);
+        preheaders.put(loop.header, preheader);
+        for (Loop enclosing = loop.parent; enclosing != null; enclosing = enclosing.parent) {
+            enclosing.body.add(preheader);
+        }
+        loop.preheader = preheader;
+        return preheader;
+    }
+
+    private static void append(Block block, Instruction instruction) {
+        block.instructions.add(block.instructions.size() - 1, instruction);
+    }
+
+    private int newRegister(Type type) {
+        int register = program.newRegister(type);
+        if (register >= definitions.length) {
+            definitions = Arrays.copyOf(definitions, Math.max(register + 1, definitions.length * 2));
+        }
+        definitions[register] = 1;
+        return register;
+    }
+}
@@ -0,0 +1,40 @@
+package ir;
+
+/**
+ * Operations of the three-address code. The type of an {@link Instruction} is the type its
+ * operands are computed in: an ADD of type REAL adds doubles, an LT of type INTEGER
+ * compares ints and writes a boolean. Conversions are explicit, so both operands of an
+ * operation always have its type.
+ */
+public enum Opcode {
+    COPY,    // target = a
+    I2D,     // target = (double) a
+    ADD,     // target = a op b
+    SUB,
+    MUL,
+    DIV,     // an integer DIV fails on a zero divisor
+    NEG,     // target = -a
+    NOT,     // target = !a
+    AND,     // target = a & b, both operands evaluated
+    OR,      // target = a | b, both operands evaluated
+    EQ,      // target = a op b, a boolean
+    NE,
+    LT,
+    LE,
+    GT,
+    GE,
+    READ,    // target = next number of the input
+    SKIP,    // skip the next word of the input
+    WRITE,   // print a and a newline
+    JUMP,    // goto first
+    BRANCH,  // if a goto first else goto second
+    HALT;
+
+    public boolean isComparison() {
+        return compareTo(EQ) >= 0 && compareTo(GE) <= 0;
+    }
+
+    public boolean isTerminator() {
+        return this == JUMP || this == BRANCH || this == HALT;
+    }
+}
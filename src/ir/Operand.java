@@ -0,0 +1,106 @@
+package ir;
+
+import semantic.Type;
+
+/**
+ * Argument of an {@link Instruction}: a register of the {@link IrProgram}, a constant or
+ * the text of a write. Booleans are the ints 0 and 1. Operands are values: two constants
+ * are equal when they have the same type and bits, so a NaN equals itself and 0.0 differs
+ * from -0.0.
+ */
+public final class Operand {
+    public enum Kind {
+        REGISTER,
+        CONSTANT,
+        TEXT
+    }
+
+    public static final Operand TRUE = new Operand(Kind.CONSTANT, Type.BOOLEAN, -1, 1, 0, null);
+    public static final Operand FALSE = new Operand(Kind.CONSTANT, Type.BOOLEAN, -1, 0, 0, null);
+
+    public final Kind kind;
+    public final Type type;
+    public final int register;
+    public final int intValue;
+    public final double realValue;
+    public final String text;
+
+    private Operand(Kind kind, Type type, int register, int intValue, double realValue, String text) {
+        this.kind = kind;
+        this.type = type;
+        this.register = register;
+        this.intValue = intValue;
+        this.realValue = realValue;
+        this.text = text;
+    }
+
+    public static Operand register(int register, Type type) {
+        return new Operand(Kind.REGISTER, type, register, 0, 0, null);
+    }
+
+    public static Operand constant(int value) {
+        return new Operand(Kind.CONSTANT, Type.INTEGER, -1, value, 0, null);
+    }
+
+    public static Operand constant(double value) {
+        return new Operand(Kind.CONSTANT, Type.REAL, -1, 0, value, null);
+    }
+
+    public static Operand constant(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public static Operand text(String text) {
+        return new Operand(Kind.TEXT, null, -1, 0, 0, text);
+    }
+
+    public boolean isRegister() {
+        return kind == Kind.REGISTER;
+    }
+
+    public boolean isConstant() {
+        return kind == Kind.CONSTANT;
+    }
+
+    public boolean isConstant(int value) {
+        return kind == Kind.CONSTANT && type == Type.INTEGER && intValue == value;
+    }
+
+    public boolean booleanValue() {
+        return intValue != 0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Operand)) {
+            return false;
+        }
+        Operand operand = (Operand) other;
+        return kind == operand.kind && type == operand.type && register == operand.register
+                && intValue == operand.intValue
+                && Double.doubleToLongBits(realValue) == Double.doubleToLongBits(operand.realValue)
+                && (text == null ? operand.text == null : text.equals(operand.text));
+    }
+
+    @Override
+    public int hashCode() {
+        return switch (kind) {
+            case REGISTER -> register;
+            case CONSTANT -> 31 * type.ordinal() + intValue + Double.hashCode(realValue);
+            case TEXT -> text.hashCode();
+        };
+    }
+
+    @Override
+    public String toString() {
+        return switch (kind) {
+            case REGISTER -> "r" + register;
+            case CONSTANT -> switch (type) {
+                case INTEGER -> Integer.toString(intValue);
+                case REAL -> Double.toString(realValue);
+                case BOOLEAN -> Boolean.toString(booleanValue());
+            };
+            case TEXT -> "{" + text + "}";
+        };
+    }
+}
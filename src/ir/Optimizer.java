@@ -0,0 +1,89 @@
+package ir;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a list of {@link Pass}es over a program, round after round until a whole round
+ * changes nothing, and records how long every pass took and how many instructions the
+ * program had before and after it. A program still changing after {@code MAX_ROUNDS}
+ * rounds is left as it is, and the report says so.
+ */
+public class Optimizer {
+    private static final int MAX_ROUNDS = 8;
+
+    /** One run of one pass. */
+    public static class Timing {
+        public final int round;
+        public final String pass;
+        public final long nanos;
+        public final int before;
+        public final int after;
+
+        public Timing(int round, String pass, long nanos, int before, int after) {
+            this.round = round;
+            this.pass = pass;
+            this.nanos = nanos;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private final List<Pass> passes;
+    private final List<Timing> timings;
+    private boolean converged = true;
+
+    public Optimizer(List<Pass> passes) {
+        this.passes = passes;
+        this.timings = new ArrayList<>();
+    }
+
+    /** Folding, propagation, the loop pass and the two eliminations, in the order that lets each feed the next. */
+    public static Optimizer standard() {
+        return new Optimizer(List.of(new ConstantFolding(), new CopyPropagation(), new LoopOptimization(),
+                new UnreachableCodeElimination(), new DeadCodeElimination()));
+    }
+
+    /** Returns whether the program reached a round that changed nothing. */
+    public boolean optimize(IrProgram program) {
+        boolean changed = true;
+        for (int round = 1; changed && round <= MAX_ROUNDS; round++) {
+            changed = false;
+            for (Pass pass : passes) {
+                int before = program.size();
+                long start = System.nanoTime();
+                changed |= pass.run(program);
+                timings.add(new Timing(round, pass.name(), System.nanoTime() - start, before, program.size()));
+            }
+        }
+        converged &= !changed;
+        return !changed;
+    }
+
+    public List<Timing> getTimings() {
+        return timings;
+    }
+
+    /** Whether every program optimized so far reached a round that changed nothing. */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public void report(PrintStream out) {
+        long total = 0;
+        out.printf("%-5s %-20s %10s %8s %8s%n", "round", "pass", "ms", "before", "after");
+        for (Timing timing : timings) {
+            out.printf("%-5d %-20s %10.3f %8d %8d%n", timing.round, timing.pass, timing.nanos / 1e6,
+                    timing.before, timing.after);
+            total += timing.nanos;
+        }
+        if (!timings.isEmpty()) {
+            out.printf("%-26s %10.3f %8d %8d%n", "total", total / 1e6, timings.get(0).before,
+                    timings.get(timings.size() - 1).after);
+        }
+        if (!converged) {
+            out.printf("stopped after %d rounds with the program still changing%n", MAX_ROUNDS);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ir;
+
+/** A transformation of an {@link IrProgram} that keeps what the program prints. */
+public interface Pass {
+    String name();
+
+    /** Rewrites the program in place, returning whether anything changed. */
+    boolean run(IrProgram program);
+}
@@ -0,0 +1,96 @@
+package ir;
+
+import java.util.List;
+
+/**
+ * Turns a branch on a constant, such as an {@code if} whose condition folded, into a jump
+ * and drops the blocks no longer reached. Then straightens the control flow left behind:
+ * an edge to a block that only jumps on goes straight to its destination, and a block
+ * entered only by a jump from the block before is merged into it.
+ */
+public class UnreachableCodeElimination implements Pass {
+    @Override
+    public String name() {
+        return "unreachable code";
+    }
+
+    @Override
+    public boolean run(IrProgram program) {
+        boolean changed = false;
+        for (Block block : program.blocks) {
+            Instruction terminator = block.terminator();
+            if (terminator.op != Opcode.BRANCH) {
+                continue;
+            }
+            if (terminator.a.isConstant()) {
+                terminator.jump(terminator.a.booleanValue() ? terminator.first : terminator.second);
+                changed = true;
+            } else if (terminator.first == terminator.second) {
+                terminator.jump(terminator.first);
+                changed = true;
+            }
+        }
+        for (Block block : program.blocks) {
+            Instruction terminator = block.terminator();
+            if (terminator.first != null) {
+                Block first = forward(program, terminator.first);
+                changed |= first != terminator.first;
+                terminator.first = first;
+            }
+            if (terminator.second != null) {
+                Block second = forward(program, terminator.second);
+                changed |= second != terminator.second;
+                terminator.second = second;
+            }
+        }
+        changed |= program.removeUnreachable();
+        changed |= merge(program);
+        return changed;
+    }
+
+    /** First block on the path from {@code block} that does more than jump, or the entry of a cycle of jumps. */
+    private static Block forward(IrProgram program, Block block) {
+        for (int steps = 0; steps < program.blocks.size() && block.index != 0 && isJump(block); steps++) {
+            if (block.terminator().first == block) {
+                break;
+            }
+            block = block.terminator().first;
+        }
+        return block;
+    }
+
+    private static boolean isJump(Block block) {
+        return block.instructions.size() == 1 && block.terminator().op == Opcode.JUMP;
+    }
+
+    private static boolean merge(IrProgram program) {
+        List<List<Block>> predecessors = program.predecessors();
+        boolean merged = false;
+        for (Block block : program.blocks) {
+            while (true) {
+                Instruction terminator = block.terminator();
+                if (terminator.op != Opcode.JUMP) {
+                    break;
+                }
+                Block next = terminator.first;
+                if (next == block || next.index == 0 || predecessors.get(next.index).size() != 1) {
+                    break;
+                }
+                block.instructions.remove(block.instructions.size() - 1);
+                block.instructions.addAll(next.instructions);
+                next.instructions.clear();
+                next.instructions.add(Instruction.jump(next, terminator.line));
+                for (Block successor : block.successors()) {
+                    List<Block> entries = predecessors.get(successor.index);
+                    entries.set(entries.indexOf(next), block);
+                }
+                predecessors.get(next.index).clear();
+                merged = true;
+            }
+        }
+        if (merged) {
+            program.removeUnreachable();
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,311 @@
+package jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file of version 49 with static methods only. That version predates
+ * StackMapTable, so the JVM infers the frames itself and the generated code needs none.
+ * The bytes are written by hand because java.lang.classfile is not part of the JDK 21 this
+ * tree targets: it is a preview API from JDK 22 and final only from JDK 24.
+ */
+final class ClassWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int VERSION = 49;
+    private static final int MAX_CODE = 65535;
+
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolOut;
+    private final Map<String, Integer> entries;
+    private final List<byte[]> methods;
+    private final int thisClass;
+    private final int superClass;
+    private final int sourceFile;
+    private int poolCount;
+
+    ClassWriter(String name, String source) {
+        this.pool = new ByteArrayOutputStream();
+        this.poolOut = new DataOutputStream(pool);
+        this.entries = new HashMap<>();
+        this.methods = new ArrayList<>();
+        this.poolCount = 1;
+        this.thisClass = classRef(name);
+        this.superClass = classRef("java/lang/Object");
+        this.sourceFile = utf8(source);
+        utf8("Code");
+        utf8("LineNumberTable");
+        utf8("SourceFile");
+    }
+
+    int utf8(String value) {
+        return entry("U" + value, 1, out -> out.writeUTF(value), 1);
+    }
+
+    int classRef(String name) {
+        int index = utf8(name);
+        return entry("C" + name, 7, out -> out.writeShort(index), 1);
+    }
+
+    int string(String value) {
+        int index = utf8(value);
+        return entry("S" + value, 8, out -> out.writeShort(index), 1);
+    }
+
+    int integer(int value) {
+        return entry("I" + value, 3, out -> out.writeInt(value), 1);
+    }
+
+    int real(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return entry("D" + bits, 6, out -> out.writeLong(bits), 2);
+    }
+
+    int field(String owner, String name, String descriptor) {
+        return member(9, owner, name, descriptor);
+    }
+
+    int method(String owner, String name, String descriptor) {
+        return member(10, owner, name, descriptor);
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code) {
+        if (code.size > MAX_CODE) {
+            throw Code.tooLarge(code.size);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(code.size + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        try {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            int lineTable = 2 + 4 * code.lineCount;
+            out.writeShort(utf8("Code"));
+            out.writeInt(12 + code.size + 8 * code.handlerCount + 6 + lineTable);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(code.size);
+            out.write(code.bytes, 0, code.size);
+            out.writeShort(code.handlerCount);
+            for (int i = 0; i < code.handlerCount * 4; i++) {
+                out.writeShort(code.handlers[i]);
+            }
+            out.writeShort(1);
+            out.writeShort(utf8("LineNumberTable"));
+            out.writeInt(lineTable);
+            out.writeShort(code.lineCount);
+            for (int i = 0; i < code.lineCount * 2; i++) {
+                out.writeShort(code.lines[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(pool.size() + 256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(1);
+            out.writeShort(utf8("SourceFile"));
+            out.writeInt(2);
+            out.writeShort(sourceFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ' ' + descriptor, 12, out -> {
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        }, 1);
+        return entry(tag + owner + '.' + name + ' ' + descriptor, tag, out -> {
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int entry(String key, int tag, Body body, int slots) {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (poolCount + slots > 65535) {
+            throw new IllegalArgumentException("Programa grande demais para uma classe da JVM");
+        }
+        try {
+            poolOut.writeByte(tag);
+            body.write(poolOut);
+        } catch (IOException e) {
+            // Only a text longer than 65535 bytes in modified UTF-8 fails.
+            throw new IllegalArgumentException("Texto grande demais para uma classe da JVM");
+        }
+        index = poolCount;
+        poolCount += slots;
+        entries.put(key, index);
+        return index;
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Bytecode of one method. Every instruction is appended with its effect on the operand
+     * stack, so the maximum depth is known when the method is added.
+     */
+    static final class Code {
+        private byte[] bytes;
+        private int size;
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+        private int[] lines;
+        private int lineCount;
+        private int lastLine;
+        private int[] handlers;
+        private int handlerCount;
+
+        Code(int maxLocals) {
+            this.bytes = new byte[256];
+            this.lines = new int[32];
+            this.handlers = new int[4];
+            this.maxLocals = maxLocals;
+        }
+
+        void op(int opcode, int delta) {
+            reserve(1);
+            bytes[size++] = (byte) opcode;
+            adjust(delta);
+        }
+
+        void op1(int opcode, int operand, int delta) {
+            reserve(2);
+            bytes[size++] = (byte) opcode;
+            bytes[size++] = (byte) operand;
+            adjust(delta);
+        }
+
+        void op2(int opcode, int operand, int delta) {
+            reserve(3);
+            bytes[size++] = (byte) opcode;
+            bytes[size++] = (byte) (operand >> 8);
+            bytes[size++] = (byte) operand;
+            adjust(delta);
+        }
+
+        /** Emits a branch to {@code target}, or to a target given to {@link #patch} when it is -1. */
+        int branch(int opcode, int target, int delta) {
+            int at = size;
+            op2(opcode, 0, delta);
+            if (target >= 0) {
+                patch(at, target);
+            }
+            return at;
+        }
+
+        void patch(int at, int target) {
+            int offset = target - at;
+            if (offset != (short) offset) {
+                throw tooLarge(size);
+            }
+            bytes[at + 1] = (byte) (offset >> 8);
+            bytes[at + 2] = (byte) offset;
+        }
+
+        /** Sets the stack depth at a point reached only by a jump. */
+        void stack(int depth) {
+            stack = depth;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        void local(int index, int words) {
+            maxLocals = Math.max(maxLocals, index + words);
+        }
+
+        void line(int line) {
+            if (line == lastLine) {
+                return;
+            }
+            lastLine = line;
+            if (lineCount > 0 && lines[lineCount * 2 - 2] == size) {
+                lines[lineCount * 2 - 1] = line;
+                return;
+            }
+            if (lineCount * 2 == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[lineCount * 2] = size;
+            lines[lineCount * 2 + 1] = line;
+            lineCount++;
+        }
+
+        /** Routes exceptions of any type thrown in {@code [start, end)} to {@code handler}. */
+        void handler(int start, int end, int handler) {
+            if (handlerCount * 4 == handlers.length) {
+                handlers = Arrays.copyOf(handlers, handlers.length * 2);
+            }
+            handlers[handlerCount * 4] = start;
+            handlers[handlerCount * 4 + 1] = end;
+            handlers[handlerCount * 4 + 2] = handler;
+            handlers[handlerCount * 4 + 3] = 0;
+            handlerCount++;
+        }
+
+        int position() {
+            return size;
+        }
+
+        int depth() {
+            return stack;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void reserve(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+
+        static IllegalArgumentException tooLarge(int size) {
+            return new IllegalArgumentException("Programa grande demais para um método da JVM (" + size + " bytes)");
+        }
+    }
+}
@@ -0,0 +1,499 @@
+package jvm;
+
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+import semantic.Type;
+import semantic.Variable;
+import syntatic.Ast;
+import syntatic.AstCursor;
+import syntatic.NodeKind;
+import vm.Console;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Compiles a checked {@link Ast} into a JVM class, so the program runs as code the JIT
+ * compiles. The class has a static {@code run(vm.Console)} with the statements, where every
+ * variable is a local of its type ({@code int} for integer and boolean, {@code double} for
+ * real) initialized to 0, and a {@code main} that runs it on standard input and output.
+ * {@code read} and {@code write} call the {@link vm.Console} passed in.
+ *
+ * Code is generated from the exits of an {@link AstCursor} walk like the
+ * {@link vm.BytecodeCompiler}, with the same semantics: integer operands are widened with
+ * {@code i2d} where {@code checkArithmeticOperation}, the ordering comparisons and
+ * {@code checkAssignment} accept a mix of both, integer division by zero throws an
+ * {@link vm.ExecutionException}, and a comparison used as a condition is a single branch.
+ */
+public class JvmCompiler {
+    private static final String CONSOLE = "vm/Console";
+    private static final String RUN = "(Lvm/Console;)V";
+    /** Classes a program written to a jar needs besides its own. */
+    private static final String[] RUNTIME = {"vm/Console", "vm/Console$Flush", "vm/DoubleToDecimal",
+            "vm/ExecutionException"};
+
+    private static final int ICONST_0 = 3;
+    private static final int ICONST_1 = 4;
+    private static final int DCONST_0 = 14;
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC = 18;
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int ILOAD = 21;
+    private static final int DLOAD = 24;
+    private static final int ALOAD = 25;
+    private static final int ISTORE = 54;
+    private static final int DSTORE = 57;
+    private static final int ASTORE = 58;
+    private static final int DUP = 89;
+    private static final int IADD = 96;
+    private static final int DADD = 99;
+    private static final int ISUB = 100;
+    private static final int DSUB = 103;
+    private static final int IMUL = 104;
+    private static final int DMUL = 107;
+    private static final int IDIV = 108;
+    private static final int DDIV = 111;
+    private static final int INEG = 116;
+    private static final int DNEG = 119;
+    private static final int IAND = 126;
+    private static final int IOR = 128;
+    private static final int IXOR = 130;
+    private static final int I2D = 135;
+    private static final int DCMPL = 151;
+    private static final int DCMPG = 152;
+    private static final int IFEQ = 153;
+    private static final int IFNE = 154;
+    private static final int GOTO = 167;
+    private static final int RETURN = 177;
+    private static final int GETSTATIC = 178;
+    private static final int INVOKEVIRTUAL = 182;
+    private static final int INVOKESPECIAL = 183;
+    private static final int INVOKESTATIC = 184;
+    private static final int NEW = 187;
+    private static final int ATHROW = 191;
+    private static final int WIDE = 196;
+
+    /** Branches taken when a comparison holds, in the EQ, NE, LT, LE, GT, GE order of {@link #comparisonIndex}. */
+    private static final int[] IF_ICMP = {159, 160, 161, 164, 163, 162};
+    private static final int[] IF = {153, 154, 155, 158, 157, 156};
+    /** The double comparison that makes NaN fail each test. */
+    private static final int[] DCMP = {DCMPL, DCMPL, DCMPG, DCMPG, DCMPL, DCMPL};
+    private static final int[] NEGATED = {1, 0, 5, 4, 3, 2};
+
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final SemanticAnalysis semantics;
+    private final AstCursor cursor;
+    private final String name;
+    private final ClassWriter writer;
+    private final ClassWriter.Code code;
+    private final int[] locals;
+    private final boolean[] reals;
+    private int[] controls;
+    private int controlCount;
+
+    private JvmCompiler(Ast ast, SemanticAnalysis semantics, String name) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.semantics = semantics;
+        this.cursor = new AstCursor(ast);
+        this.name = name;
+        this.writer = new ClassWriter(name, ast.text(ast.root()) + ".cc");
+        List<Variable> variables = semantics.getVariables();
+        this.locals = new int[variables.size()];
+        this.reals = new boolean[variables.size()];
+        int local = 1;
+        for (Variable variable : variables) {
+            locals[variable.slot] = local;
+            reals[variable.slot] = variable.type == Type.REAL;
+            local += reals[variable.slot] ? 2 : 1;
+        }
+        this.code = new ClassWriter.Code(local);
+        this.controls = new int[16];
+    }
+
+    /** Class file of the program, named {@code name} in internal form ({@code a/b/Name}). */
+    public static byte[] compile(Ast ast, SemanticAnalysis semantics, String name) {
+        return new JvmCompiler(ast, semantics, name).compile();
+    }
+
+    /** Compiles the program and defines it as a hidden class of this package. */
+    public static JvmProgram load(Ast ast, SemanticAnalysis semantics) {
+        byte[] classFile = compile(ast, semantics, "jvm/" + ast.text(ast.root()));
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return new JvmProgram(lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(void.class, Console.class)), classFile.length);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the program as a class named after it to {@code path}, or into it when it is a
+     * directory, or, when the path ends in {@code .jar}, as an executable jar that also holds
+     * the runtime it calls.
+     */
+    public static void write(Ast ast, SemanticAnalysis semantics, Path path) throws IOException {
+        String name = ast.text(ast.root());
+        byte[] classFile = compile(ast, semantics, name);
+        if (Files.isDirectory(path)) {
+            Files.write(path.resolve(name + ".class"), classFile);
+            return;
+        } else if (!path.toString().endsWith(".jar")) {
+            Files.write(path, classFile);
+            return;
+        }
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, name);
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            jar.putNextEntry(new JarEntry(name + ".class"));
+            jar.write(classFile);
+            for (String runtime : RUNTIME) {
+                try (InputStream in = JvmCompiler.class.getClassLoader().getResourceAsStream(runtime + ".class")) {
+                    if (in == null) {
+                        throw new IOException("Runtime class not found: " + runtime);
+                    }
+                    jar.putNextEntry(new JarEntry(runtime + ".class"));
+                    in.transferTo(jar);
+                }
+            }
+        }
+    }
+
+    private byte[] compile() {
+        int statements = ast.child(ast.root());
+        while (ast.kind(statements) == NodeKind.DECLARATION) {
+            statements = ast.next(statements);
+        }
+        for (int slot = 0; slot < locals.length; slot++) {
+            if (reals[slot]) {
+                code.op(DCONST_0, 2);
+                local(DSTORE, locals[slot], -2);
+            } else {
+                code.op(ICONST_0, 1);
+                local(ISTORE, locals[slot], -1);
+            }
+        }
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            if (ast.token(node) != Ast.NONE) {
+                code.line(tokens.line(ast.token(node)));
+            }
+            if (cursor.isEntering()) {
+                enter(node);
+            } else {
+                exit(node, cursor.parent());
+            }
+        }
+        code.op(RETURN, 0);
+        writer.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, "run", RUN, code);
+        writer.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, "main", "([Ljava/lang/String;)V", main());
+        return writer.toByteArray();
+    }
+
+    /** Runs the program on standard input and output, flushing the output however it ends. */
+    private ClassWriter.Code main() {
+        ClassWriter.Code main = new ClassWriter.Code(3);
+        main.op2(NEW, writer.classRef(CONSOLE), 1);
+        main.op(DUP, 1);
+        main.op2(GETSTATIC, writer.field("java/lang/System", "in", "Ljava/io/InputStream;"), 1);
+        main.op2(GETSTATIC, writer.field("java/lang/System", "out", "Ljava/io/PrintStream;"), 1);
+        main.op2(INVOKESPECIAL, writer.method(CONSOLE, "<init>", "(Ljava/io/InputStream;Ljava/io/OutputStream;)V"), -3);
+        main.op1(ASTORE, 1, -1);
+        int start = main.position();
+        main.op1(ALOAD, 1, 1);
+        main.op2(INVOKESTATIC, writer.method(name, "run", RUN), -1);
+        int end = main.position();
+        main.op1(ALOAD, 1, 1);
+        main.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "flush", "()V"), -1);
+        main.op(RETURN, 0);
+        int handler = main.position();
+        main.stack(1);
+        main.op1(ASTORE, 2, -1);
+        main.op1(ALOAD, 1, 1);
+        main.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "flush", "()V"), -1);
+        main.op1(ALOAD, 2, 1);
+        main.op(ATHROW, -1);
+        main.handler(start, end, handler);
+        return main;
+    }
+
+    private void enter(int node) {
+        switch (ast.kind(node)) {
+            case REPEAT -> control(code.position());
+            case WRITE, READ -> code.op1(ALOAD, 0, 1);
+            default -> {
+            }
+        }
+    }
+
+    private void exit(int node, int parent) {
+        switch (ast.kind(node)) {
+            case IDENTIFIER -> {
+                int slot = semantics.getSlot(ast.identifier(node));
+                if (reals[slot]) {
+                    local(DLOAD, locals[slot], 2);
+                } else {
+                    local(ILOAD, locals[slot], 1);
+                }
+                operand(node, parent);
+            }
+            case INTEGER_CONST -> {
+                pushInt(new BigInteger(ast.text(node)).intValue());
+                operand(node, parent);
+            }
+            case REAL_CONST -> {
+                double value = Double.parseDouble(ast.text(node));
+                if (Double.doubleToRawLongBits(value) == 0 || value == 1) {
+                    code.op(DCONST_0 + (int) value, 2);
+                } else {
+                    code.op2(LDC2_W, writer.real(value), 2);
+                }
+                operand(node, parent);
+            }
+            case TEXT -> ldc(writer.string(ast.text(node)));
+            case BINARY -> binary(node, parent);
+            case NEGATE -> {
+                code.op(ast.type(node) == Type.REAL ? DNEG : INEG, 0);
+                operand(node, parent);
+            }
+            case NOT -> {
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+                operand(node, parent);
+            }
+            case ASSIGN -> {
+                int slot = semantics.getSlot(ast.identifier(node));
+                if (reals[slot]) {
+                    local(DSTORE, locals[slot], -2);
+                } else {
+                    local(ISTORE, locals[slot], -1);
+                }
+            }
+            case READ -> read(node);
+            case WRITE -> write(node);
+            case STATEMENTS -> {
+                if (parent != Ast.NONE && ast.kind(parent) == NodeKind.IF
+                        && ast.next(ast.child(parent)) == node && ast.next(node) != Ast.NONE) {
+                    // End of the then branch: jump over the else branch, which starts here.
+                    int jump = code.branch(GOTO, -1, 0);
+                    code.patch(controls[--controlCount], code.position());
+                    control(jump);
+                }
+            }
+            case IF -> code.patch(controls[--controlCount], code.position());
+            case REPEAT -> controlCount--;
+            default -> {
+            }
+        }
+    }
+
+    private void binary(int node, int parent) {
+        int left = ast.child(node);
+        int right = ast.next(left);
+        TokenType op = tokens.type(ast.token(node));
+        boolean real = ast.type(left) == Type.REAL || ast.type(right) == Type.REAL;
+        switch (op) {
+            case ADD -> code.op(real ? DADD : IADD, real ? -2 : -1);
+            case SUB -> code.op(real ? DSUB : ISUB, real ? -2 : -1);
+            case MUL -> code.op(real ? DMUL : IMUL, real ? -2 : -1);
+            case DIV -> {
+                if (real) {
+                    code.op(DDIV, -2);
+                } else {
+                    divide(node);
+                }
+            }
+            case AND -> code.op(IAND, -1);
+            case OR -> code.op(IOR, -1);
+            default -> {
+                int index = comparisonIndex(op);
+                if (isCondition(node, parent)) {
+                    // Jump when the comparison fails.
+                    branch(compare(index, real, true), parent);
+                    return;
+                }
+                int taken = code.branch(compare(index, real, false), -1, 0);
+                code.op(ICONST_0, 1);
+                int done = code.branch(GOTO, -1, 0);
+                code.stack(code.depth() - 1);
+                code.patch(taken, code.position());
+                code.op(ICONST_1, 1);
+                code.patch(done, code.position());
+            }
+        }
+        operand(node, parent);
+    }
+
+    /**
+     * Emits the comparison of the two operands on the stack up to its branch opcode, which
+     * is returned and tests for the comparison holding, or failing when {@code negate}.
+     */
+    private int compare(int index, boolean real, boolean negate) {
+        int test = negate ? NEGATED[index] : index;
+        if (!real) {
+            code.stack(code.depth() - 2);
+            return IF_ICMP[test];
+        }
+        // Fails on NaN either way: the negated test of a dcmpg/dcmpl result holds for NaN.
+        code.op(DCMP[index], -3);
+        code.stack(code.depth() - 1);
+        return IF[test];
+    }
+
+    /** Integer division, failing like the interpreters when the divisor is zero. */
+    private void divide(int node) {
+        code.op(DUP, 1);
+        int nonZero = code.branch(IFNE, -1, -1);
+        code.op2(NEW, writer.classRef("vm/ExecutionException"), 1);
+        code.op(DUP, 1);
+        ldc(writer.string("Divisão por zero"));
+        pushInt(tokens.line(ast.token(node)));
+        code.op2(INVOKESPECIAL, writer.method("vm/ExecutionException", "<init>", "(Ljava/lang/String;I)V"), -3);
+        code.op(ATHROW, -1);
+        code.patch(nonZero, code.position());
+        code.op(IDIV, -1);
+    }
+
+    /** Widens an integer operand where a real is expected and branches on a condition. */
+    private void operand(int node, int parent) {
+        if (parent == Ast.NONE) {
+            return;
+        }
+        if (ast.type(node) == Type.INTEGER && isWidened(node, parent)) {
+            code.op(I2D, 1);
+        }
+        if (isCondition(node, parent)) {
+            code.stack(code.depth() - 1);
+            branch(IFEQ, parent);
+        }
+    }
+
+    private boolean isWidened(int node, int parent) {
+        return switch (ast.kind(parent)) {
+            case ASSIGN -> ast.type(parent) == Type.REAL;
+            case BINARY -> {
+                int sibling = ast.child(parent) == node ? ast.next(node) : ast.child(parent);
+                yield ast.type(sibling) == Type.REAL;
+            }
+            default -> false;
+        };
+    }
+
+    /**
+     * Emits a branch whose operands are already popped, taken when the condition of
+     * {@code parent} is false: back to the start of the loop for a repeat, to a target
+     * patched later for an if.
+     */
+    private void branch(int opcode, int parent) {
+        if (ast.kind(parent) == NodeKind.REPEAT) {
+            code.branch(opcode, controls[controlCount - 1], 0);
+        } else {
+            control(code.branch(opcode, -1, 0));
+        }
+    }
+
+    private void read(int node) {
+        int identifier = ast.identifier(node);
+        pushInt(tokens.line(ast.token(node)));
+        if (!semantics.isVariableDeclared(identifier)) {
+            code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "skip", "(I)V"), -2);
+        } else if (reals[semantics.getSlot(identifier)]) {
+            code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "readReal", "(I)D"), 0);
+            local(DSTORE, locals[semantics.getSlot(identifier)], -2);
+        } else {
+            code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "readInt", "(I)I"), -1);
+            local(ISTORE, locals[semantics.getSlot(identifier)], -1);
+        }
+    }
+
+    private void write(int node) {
+        int child = ast.child(node);
+        if (ast.kind(child) == NodeKind.TEXT) {
+            code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(Ljava/lang/String;)V"), -2);
+            return;
+        }
+        switch (ast.type(child)) {
+            case INTEGER -> code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(I)V"), -2);
+            case REAL -> code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(D)V"), -3);
+            case BOOLEAN -> code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(Z)V"), -2);
+        }
+    }
+
+    private boolean isCondition(int node, int parent) {
+        if (parent == Ast.NONE) {
+            return false;
+        }
+        return switch (ast.kind(parent)) {
+            case IF -> ast.child(parent) == node;
+            case REPEAT -> ast.next(ast.child(parent)) == node;
+            default -> false;
+        };
+    }
+
+    /** Offset of a comparison in the EQ, NE, LT, LE, GT, GE tables. */
+    private static int comparisonIndex(TokenType op) {
+        return switch (op) {
+            case EQUAL -> 0;
+            case NOT_EQUAL -> 1;
+            case LOWER_THAN -> 2;
+            case LOWER_EQUAL -> 3;
+            case GREATER_THAN -> 4;
+            default -> 5;
+        };
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value, 1);
+        } else if (value == (byte) value) {
+            code.op1(BIPUSH, value, 1);
+        } else if (value == (short) value) {
+            code.op2(SIPUSH, value, 1);
+        } else {
+            ldc(writer.integer(value));
+        }
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            code.op1(LDC, index, 1);
+        } else {
+            code.op2(LDC_W, index, 1);
+        }
+    }
+
+    private void local(int opcode, int index, int delta) {
+        code.local(index, opcode == DLOAD || opcode == DSTORE ? 2 : 1);
+        if (index < 256) {
+            code.op1(opcode, index, delta);
+        } else {
+            code.op(WIDE, 0);
+            code.op2(opcode, index, delta);
+        }
+    }
+
+    private void control(int index) {
+        if (controlCount == controls.length) {
+            controls = Arrays.copyOf(controls, controlCount * 2);
+        }
+        controls[controlCount++] = index;
+    }
+}
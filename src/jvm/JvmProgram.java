@@ -0,0 +1,35 @@
+package jvm;
+
+import vm.Console;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+
+/** A program compiled by {@link JvmCompiler} and defined as a hidden class. */
+public class JvmProgram {
+    private final MethodHandle run;
+    public final int classBytes;
+
+    JvmProgram(MethodHandle run, int classBytes) {
+        this.run = run;
+        this.classBytes = classBytes;
+    }
+
+    public void run(InputStream in, OutputStream out) {
+        run(new Console(in, out));
+    }
+
+    public void run(Console console) {
+        try {
+            run.invokeExact(console);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // run declares no checked exception.
+            throw new IllegalStateException(e);
+        } finally {
+            console.flush();
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package jvm;
+
+import vm.Console;
+import vm.Opcodes;
+import vm.Program;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiles one loop of a {@link Program} into a JVM method, for {@link vm.TieredInterpreter}
+ * to run once the loop is hot. The method covers the instructions from the loop header up
+ * to its back edge and is entered at the header with the register files of the
+ * interpreter: {@code int run(int[] ints, double[] doubles, vm.Console console)}. Every
+ * register the loop touches lives in a local of its own primitive type, {@code int} for the
+ * int file and {@code double} for the double file, loaded on entry. A jump out of the range,
+ * falling through its end or a {@code HALT} stores the registers the loop wrote back into
+ * the files and returns the pc the interpreter continues at.
+ */
+public final class LoopCompiler {
+    private static final String CONSOLE = "vm/Console";
+    private static final String RUN = "([I[DLvm/Console;)I";
+    private static final int FIRST_LOCAL = 3;
+
+    private static final int ICONST_0 = 3;
+    private static final int ICONST_1 = 4;
+    private static final int DCONST_0 = 14;
+    private static final int BIPUSH = 16;
+    private static final int SIPUSH = 17;
+    private static final int LDC = 18;
+    private static final int LDC_W = 19;
+    private static final int LDC2_W = 20;
+    private static final int ILOAD = 21;
+    private static final int DLOAD = 24;
+    private static final int ALOAD = 25;
+    private static final int IALOAD = 46;
+    private static final int DALOAD = 49;
+    private static final int ISTORE = 54;
+    private static final int DSTORE = 57;
+    private static final int IASTORE = 79;
+    private static final int DASTORE = 82;
+    private static final int DUP = 89;
+    private static final int IADD = 96;
+    private static final int DADD = 99;
+    private static final int IDIV = 108;
+    private static final int INEG = 116;
+    private static final int DNEG = 119;
+    private static final int IAND = 126;
+    private static final int IOR = 128;
+    private static final int IXOR = 130;
+    private static final int I2D = 135;
+    private static final int DCMPL = 151;
+    private static final int DCMPG = 152;
+    private static final int IFEQ = 153;
+    private static final int IFNE = 154;
+    private static final int GOTO = 167;
+    private static final int IRETURN = 172;
+    private static final int INVOKEVIRTUAL = 182;
+    private static final int INVOKESPECIAL = 183;
+    private static final int NEW = 187;
+    private static final int ATHROW = 191;
+    private static final int WIDE = 196;
+
+    /** Same tables as {@link JvmCompiler}, in the EQ, NE, LT, LE, GT, GE order of the VM. */
+    private static final int[] IF_ICMP = {159, 160, 161, 164, 163, 162};
+    private static final int[] IF = {153, 154, 155, 158, 157, 156};
+    private static final int[] DCMP = {DCMPL, DCMPL, DCMPG, DCMPG, DCMPL, DCMPL};
+    private static final int[] NEGATED = {1, 0, 5, 4, 3, 2};
+
+    private final Program program;
+    private final int[] vm;
+    private final int start;
+    private final int end;
+    private final ClassWriter writer;
+    private final ClassWriter.Code code;
+    private final int[] intLocals;
+    private final int[] doubleLocals;
+    private final boolean[] intWritten;
+    private final boolean[] doubleWritten;
+    private final int[] offsets;
+    /** Branches to patch: position of the branch, pc it jumps to and 1 when it leaves the range. */
+    private final List<int[]> jumps;
+    /** Position of the code leaving to each pc out of the range. */
+    private final Map<Integer, Integer> exits;
+    private int locals;
+
+    private LoopCompiler(Program program, int start, int end) {
+        this.program = program;
+        this.vm = program.code;
+        this.start = start;
+        this.end = end;
+        this.writer = new ClassWriter("jvm/Loop", "Loop.cc");
+        this.intLocals = new int[program.intRegisters];
+        this.doubleLocals = new int[program.doubleRegisters];
+        this.intWritten = new boolean[program.intRegisters];
+        this.doubleWritten = new boolean[program.doubleRegisters];
+        this.offsets = new int[(end - start) / Opcodes.WIDTH];
+        this.jumps = new ArrayList<>();
+        this.exits = new TreeMap<>();
+        this.locals = FIRST_LOCAL;
+        allocate();
+        this.code = new ClassWriter.Code(locals);
+    }
+
+    /**
+     * Compiles the instructions of {@code program} in {@code [start, end)}, a loop whose
+     * header is at {@code start}, and defines them as a hidden class. Throws an
+     * {@link IllegalArgumentException} when the loop does not fit in one JVM method.
+     */
+    public static MethodHandle compile(Program program, int start, int end) {
+        byte[] classFile = new LoopCompiler(program, start, end).compile();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return lookup.findStatic(lookup.lookupClass(), "run",
+                    MethodType.methodType(int.class, int[].class, double[].class, Console.class));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Gives a local to every register the range reads or writes and notes the ones written. */
+    private void allocate() {
+        for (int pc = start; pc < end; pc += Opcodes.WIDTH) {
+            int a = vm[pc + 1];
+            int b = vm[pc + 2];
+            int c = vm[pc + 3];
+            switch (vm[pc]) {
+                case Opcodes.ICONST, Opcodes.READI -> intRegister(a, true);
+                case Opcodes.DCONST, Opcodes.READD -> doubleRegister(a, true);
+                case Opcodes.IMOV, Opcodes.INEG, Opcodes.NOT -> {
+                    intRegister(a, true);
+                    intRegister(b, false);
+                }
+                case Opcodes.DMOV, Opcodes.DNEG -> {
+                    doubleRegister(a, true);
+                    doubleRegister(b, false);
+                }
+                case Opcodes.I2D -> {
+                    doubleRegister(a, true);
+                    intRegister(b, false);
+                }
+                case Opcodes.IADD, Opcodes.ISUB, Opcodes.IMUL, Opcodes.IDIV, Opcodes.AND, Opcodes.OR,
+                        Opcodes.IEQ, Opcodes.INE, Opcodes.ILT, Opcodes.ILE, Opcodes.IGT, Opcodes.IGE -> {
+                    intRegister(a, true);
+                    intRegister(b, false);
+                    intRegister(c, false);
+                }
+                case Opcodes.DADD, Opcodes.DSUB, Opcodes.DMUL, Opcodes.DDIV -> {
+                    doubleRegister(a, true);
+                    doubleRegister(b, false);
+                    doubleRegister(c, false);
+                }
+                case Opcodes.DEQ, Opcodes.DNE, Opcodes.DLT, Opcodes.DLE, Opcodes.DGT, Opcodes.DGE -> {
+                    intRegister(a, true);
+                    doubleRegister(b, false);
+                    doubleRegister(c, false);
+                }
+                case Opcodes.JZ, Opcodes.WRITEI, Opcodes.WRITEB -> intRegister(a, false);
+                case Opcodes.JIEQ, Opcodes.JINE, Opcodes.JILT, Opcodes.JILE, Opcodes.JIGT, Opcodes.JIGE -> {
+                    intRegister(a, false);
+                    intRegister(b, false);
+                }
+                case Opcodes.JDNEQ, Opcodes.JDNNE, Opcodes.JDNLT, Opcodes.JDNLE, Opcodes.JDNGT, Opcodes.JDNGE -> {
+                    doubleRegister(a, false);
+                    doubleRegister(b, false);
+                }
+                case Opcodes.WRITED -> doubleRegister(a, false);
+                default -> {
+                }
+            }
+        }
+        if (locals > 65535) {
+            throw new IllegalArgumentException("Laço grande demais para um método da JVM");
+        }
+    }
+
+    private void intRegister(int register, boolean written) {
+        if (intLocals[register] == 0) {
+            intLocals[register] = locals++;
+        }
+        intWritten[register] |= written;
+    }
+
+    private void doubleRegister(int register, boolean written) {
+        if (doubleLocals[register] == 0) {
+            doubleLocals[register] = locals;
+            locals += 2;
+        }
+        doubleWritten[register] |= written;
+    }
+
+    private byte[] compile() {
+        for (int register = 0; register < intLocals.length; register++) {
+            if (intLocals[register] != 0) {
+                code.op1(ALOAD, 0, 1);
+                pushInt(register);
+                code.op(IALOAD, -1);
+                local(ISTORE, intLocals[register], -1);
+            }
+        }
+        for (int register = 0; register < doubleLocals.length; register++) {
+            if (doubleLocals[register] != 0) {
+                code.op1(ALOAD, 1, 1);
+                pushInt(register);
+                code.op(DALOAD, 0);
+                local(DSTORE, doubleLocals[register], -2);
+            }
+        }
+        for (int pc = start; pc < end; pc += Opcodes.WIDTH) {
+            offsets[(pc - start) / Opcodes.WIDTH] = code.position();
+            code.line(program.line(pc));
+            instruction(pc);
+        }
+        jump(GOTO, end, 0);
+        exits();
+        writer.addMethod(ClassWriter.ACC_PUBLIC | ClassWriter.ACC_STATIC, "run", RUN, code);
+        return writer.toByteArray();
+    }
+
+    private void instruction(int pc) {
+        int op = vm[pc];
+        int a = vm[pc + 1];
+        int b = vm[pc + 2];
+        int c = vm[pc + 3];
+        switch (op) {
+            case Opcodes.HALT -> exit(pc);
+            case Opcodes.ICONST -> {
+                pushInt(b);
+                storeInt(a);
+            }
+            case Opcodes.DCONST -> {
+                double value = program.reals[b];
+                if (Double.doubleToRawLongBits(value) == 0 || value == 1) {
+                    code.op(DCONST_0 + (int) value, 2);
+                } else {
+                    code.op2(LDC2_W, writer.real(value), 2);
+                }
+                storeDouble(a);
+            }
+            case Opcodes.IMOV -> {
+                loadInt(b);
+                storeInt(a);
+            }
+            case Opcodes.DMOV -> {
+                loadDouble(b);
+                storeDouble(a);
+            }
+            case Opcodes.I2D -> {
+                loadInt(b);
+                code.op(I2D, 1);
+                storeDouble(a);
+            }
+            case Opcodes.IADD, Opcodes.ISUB, Opcodes.IMUL -> {
+                loadInt(b);
+                loadInt(c);
+                code.op(IADD + 4 * (op - Opcodes.IADD), -1);
+                storeInt(a);
+            }
+            case Opcodes.IDIV -> {
+                loadInt(b);
+                loadInt(c);
+                divide(program.line(pc));
+                storeInt(a);
+            }
+            case Opcodes.DADD, Opcodes.DSUB, Opcodes.DMUL, Opcodes.DDIV -> {
+                loadDouble(b);
+                loadDouble(c);
+                code.op(DADD + 4 * (op - Opcodes.DADD), -2);
+                storeDouble(a);
+            }
+            case Opcodes.INEG -> {
+                loadInt(b);
+                code.op(INEG, 0);
+                storeInt(a);
+            }
+            case Opcodes.DNEG -> {
+                loadDouble(b);
+                code.op(DNEG, 0);
+                storeDouble(a);
+            }
+            case Opcodes.NOT -> {
+                loadInt(b);
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+                storeInt(a);
+            }
+            case Opcodes.AND, Opcodes.OR -> {
+                loadInt(b);
+                loadInt(c);
+                code.op(op == Opcodes.AND ? IAND : IOR, -1);
+                storeInt(a);
+            }
+            case Opcodes.IEQ, Opcodes.INE, Opcodes.ILT, Opcodes.ILE, Opcodes.IGT, Opcodes.IGE -> {
+                loadInt(b);
+                loadInt(c);
+                code.stack(code.depth() - 2);
+                bool(IF_ICMP[op - Opcodes.IEQ]);
+                storeInt(a);
+            }
+            case Opcodes.DEQ, Opcodes.DNE, Opcodes.DLT, Opcodes.DLE, Opcodes.DGT, Opcodes.DGE -> {
+                int index = op - Opcodes.DEQ;
+                loadDouble(b);
+                loadDouble(c);
+                code.op(DCMP[index], -3);
+                code.stack(code.depth() - 1);
+                bool(IF[index]);
+                storeInt(a);
+            }
+            case Opcodes.JMP -> jump(GOTO, a, 0);
+            case Opcodes.JZ -> {
+                loadInt(a);
+                jump(IFEQ, b, -1);
+            }
+            case Opcodes.JIEQ, Opcodes.JINE, Opcodes.JILT, Opcodes.JILE, Opcodes.JIGT, Opcodes.JIGE -> {
+                loadInt(a);
+                loadInt(b);
+                jump(IF_ICMP[op - Opcodes.JIEQ], c, -2);
+            }
+            case Opcodes.JDNEQ, Opcodes.JDNNE, Opcodes.JDNLT, Opcodes.JDNLE, Opcodes.JDNGT, Opcodes.JDNGE -> {
+                int index = op - Opcodes.JDNEQ;
+                loadDouble(a);
+                loadDouble(b);
+                // The negated test of a dcmpg/dcmpl result holds for NaN, which jumps.
+                code.op(DCMP[index], -3);
+                jump(IF[NEGATED[index]], c, -1);
+            }
+            case Opcodes.READI -> {
+                code.op1(ALOAD, 2, 1);
+                pushInt(program.line(pc));
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "readInt", "(I)I"), -1);
+                storeInt(a);
+            }
+            case Opcodes.READD -> {
+                code.op1(ALOAD, 2, 1);
+                pushInt(program.line(pc));
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "readReal", "(I)D"), 0);
+                storeDouble(a);
+            }
+            case Opcodes.READX -> {
+                code.op1(ALOAD, 2, 1);
+                pushInt(program.line(pc));
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "skip", "(I)V"), -2);
+            }
+            case Opcodes.WRITEI, Opcodes.WRITEB -> {
+                code.op1(ALOAD, 2, 1);
+                loadInt(a);
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", op == Opcodes.WRITEI ? "(I)V" : "(Z)V"), -2);
+            }
+            case Opcodes.WRITED -> {
+                code.op1(ALOAD, 2, 1);
+                loadDouble(a);
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(D)V"), -3);
+            }
+            case Opcodes.WRITES -> {
+                code.op1(ALOAD, 2, 1);
+                int index = writer.string(program.texts[a]);
+                if (index < 256) {
+                    code.op1(LDC, index, 1);
+                } else {
+                    code.op2(LDC_W, index, 1);
+                }
+                code.op2(INVOKEVIRTUAL, writer.method(CONSOLE, "write", "(Ljava/lang/String;)V"), -2);
+            }
+            default -> throw new IllegalStateException("Invalid opcode " + op);
+        }
+    }
+
+    /** Turns the comparison whose operands are popped into 1 when {@code opcode} jumps and 0 otherwise. */
+    private void bool(int opcode) {
+        int taken = code.branch(opcode, -1, 0);
+        code.op(ICONST_0, 1);
+        int done = code.branch(GOTO, -1, 0);
+        code.stack(code.depth() - 1);
+        code.patch(taken, code.position());
+        code.op(ICONST_1, 1);
+        code.patch(done, code.position());
+    }
+
+    /** Integer division, failing like the interpreter when the divisor is zero. */
+    private void divide(int line) {
+        code.op(DUP, 1);
+        int nonZero = code.branch(IFNE, -1, -1);
+        code.op2(NEW, writer.classRef("vm/ExecutionException"), 1);
+        code.op(DUP, 1);
+        code.op2(LDC_W, writer.string("Divisão por zero"), 1);
+        pushInt(line);
+        code.op2(INVOKESPECIAL, writer.method("vm/ExecutionException", "<init>", "(Ljava/lang/String;I)V"), -3);
+        code.op(ATHROW, -1);
+        code.patch(nonZero, code.position());
+        code.op(IDIV, -1);
+    }
+
+    /** Branches to {@code pc}: to its instruction when it is in the range, to the exit to it otherwise. */
+    private void jump(int opcode, int pc, int delta) {
+        target(code.branch(opcode, -1, delta), pc, pc < start || pc >= end);
+    }
+
+    /** Leaves to the interpreter at {@code pc}, even inside the range. */
+    private void exit(int pc) {
+        target(code.branch(GOTO, -1, 0), pc, true);
+    }
+
+    private void target(int branch, int pc, boolean leaves) {
+        jumps.add(new int[] {branch, pc, leaves ? 1 : 0});
+        if (leaves) {
+            exits.putIfAbsent(pc, -1);
+        }
+    }
+
+    /**
+     * Emits the code leaving to every exit, which pushes the pc and jumps to one shared
+     * sequence that stores the written registers back and returns it, then patches the jumps.
+     */
+    private void exits() {
+        List<Integer> stubs = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> exit : exits.entrySet()) {
+            exit.setValue(code.position());
+            code.stack(0);
+            pushInt(exit.getKey());
+            stubs.add(code.branch(GOTO, -1, 0));
+        }
+        int store = code.position();
+        code.stack(1);
+        for (int register = 0; register < intLocals.length; register++) {
+            if (intWritten[register]) {
+                code.op1(ALOAD, 0, 1);
+                pushInt(register);
+                local(ILOAD, intLocals[register], 1);
+                code.op(IASTORE, -3);
+            }
+        }
+        for (int register = 0; register < doubleLocals.length; register++) {
+            if (doubleWritten[register]) {
+                code.op1(ALOAD, 1, 1);
+                pushInt(register);
+                local(DLOAD, doubleLocals[register], 2);
+                code.op(DASTORE, -4);
+            }
+        }
+        code.op(IRETURN, -1);
+        for (int stub : stubs) {
+            code.patch(stub, store);
+        }
+        for (int[] jump : jumps) {
+            code.patch(jump[0], jump[2] == 1 ? exits.get(jump[1]) : offsets[(jump[1] - start) / Opcodes.WIDTH]);
+        }
+    }
+
+    private void loadInt(int register) {
+        local(ILOAD, intLocals[register], 1);
+    }
+
+    private void storeInt(int register) {
+        local(ISTORE, intLocals[register], -1);
+    }
+
+    private void loadDouble(int register) {
+        local(DLOAD, doubleLocals[register], 2);
+    }
+
+    private void storeDouble(int register) {
+        local(DSTORE, doubleLocals[register], -2);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            code.op(ICONST_0 + value, 1);
+        } else if (value == (byte) value) {
+            code.op1(BIPUSH, value, 1);
+        } else if (value == (short) value) {
+            code.op2(SIPUSH, value, 1);
+        } else {
+            int index = writer.integer(value);
+            if (index < 256) {
+                code.op1(LDC, index, 1);
+            } else {
+                code.op2(LDC_W, index, 1);
+            }
+        }
+    }
+
+    private void local(int opcode, int index, int delta) {
+        code.local(index, opcode == DLOAD || opcode == DSTORE ? 2 : 1);
+        if (index < 256) {
+            code.op1(opcode, index, delta);
+        } else {
+            code.op(WIDE, 0);
+            code.op2(opcode, index, delta);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package lexical;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns identifier spellings into dense ids, numbered from zero in order of first
+ * occurrence. Lookups hash the bytes straight from the source; a name is copied out only
+ * the first time it is seen.
+ *
+ * One thread interns; others may read the names of ids handed to them through a
+ * happens-before edge, as the {@link PipelinedLexer} does with every batch. The arrays
+ * grow by copying, so their references are volatile: a reader that sees a grown array
+ * also sees every name copied into it.
+ */
+public class IdentifierTable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] table;
+    private volatile int[] hashes;
+    private volatile byte[][] names;
+    private int count;
+
+    public IdentifierTable() {
+        this.table = new int[INITIAL_CAPACITY * 2];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.names = new byte[INITIAL_CAPACITY][];
+    }
+
+    public int intern(SourceInput input, long start, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + input.get(start + i);
+        }
+        int[] hashes = this.hashes;
+        byte[][] names = this.names;
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                byte[] name = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    name[i] = (byte) input.get(start + i);
+                }
+                return add(name, hash, slot);
+            }
+            if (hashes[id] == hash && matches(names[id], input, start, length)) {
+                return id;
+            }
+        }
+    }
+
+    public int intern(byte[] name) {
+        int hash = 1;
+        for (byte b : name) {
+            hash = 31 * hash + (b & 0xFF);
+        }
+        int[] hashes = this.hashes;
+        byte[][] names = this.names;
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return add(name, hash, slot);
+            }
+            if (hashes[id] == hash && Arrays.equals(names[id], name)) {
+                return id;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        count = 0;
+    }
+
+    public byte[] bytes(int id) {
+        return names[id];
+    }
+
+    public String name(int id) {
+        return new String(names[id], StandardCharsets.ISO_8859_1);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int add(byte[] name, int hash, int slot) {
+        byte[][] names = this.names;
+        int[] hashes = this.hashes;
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+            this.names = names;
+            this.hashes = hashes;
+        }
+        int id = count++;
+        names[id] = name;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] hashes = this.hashes;
+        int[] resized = new int[table.length * 2];
+        int mask = resized.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (resized[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            resized[slot] = id + 1;
+        }
+        table = resized;
+    }
+
+    private static boolean matches(byte[] name, SourceInput input, long start, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((name[i] & 0xFF) != input.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
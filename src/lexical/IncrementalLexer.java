@@ -0,0 +1,187 @@
+package lexical;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the tokens of a source across edits. {@link #update(byte[])} finds the bytes that
+ * changed and lexes again from the end of the last token that was read entirely before
+ * them, including the byte the lexer looked ahead at. It stops at the first new token that
+ * ends past the change where an old token ended: the lexer carries no state besides
+ * position and line between tokens, so the old tokens after that one are still valid and
+ * only move by the change in length and in lines.
+ *
+ * Identifiers keep their ids across updates, and every token is retained, so the buffer
+ * can serve as the token source of a parser that never discards.
+ */
+public class IncrementalLexer implements TokenSource {
+    private static final int BLOCK = 4096;
+
+    private final IdentifierTable identifiers;
+    private final TokenBuffer tokens;
+    private byte[] source;
+    private long[] ends;
+    private int spliceStart;
+    private int spliceEnd;
+    private int spliceCount;
+
+    public IncrementalLexer(byte[] source) {
+        SourceInput input = input(source);
+        this.identifiers = new IdentifierTable();
+        this.tokens = new TokenBuffer(input);
+        this.source = source;
+        this.ends = new long[1024];
+        LexicalAnalysis lexer = new LexicalAnalysis(input, identifiers);
+        TokenType type;
+        do {
+            type = lexer.scan();
+            add(lexer, type);
+        } while (!isTerminal(type));
+        this.spliceCount = tokens.end();
+    }
+
+    /**
+     * Lexes the new content of the source again. Returns false when it did not change;
+     * otherwise the tokens {@code [getSpliceStart(), getSpliceEnd())} of the previous
+     * content have been replaced by {@code getSpliceCount()} new tokens.
+     */
+    public boolean update(byte[] next) {
+        int prefix = Arrays.mismatch(source, next);
+        if (prefix < 0) {
+            return false;
+        }
+        int suffix = commonSuffix(source, next, Math.min(source.length, next.length) - prefix);
+        long shift = next.length - source.length;
+        long changeEnd = next.length - suffix;
+
+        // Last token whose text and lookahead lie before the change.
+        int restart = Arrays.binarySearch(ends, 0, tokens.end(), prefix);
+        restart = restart < 0 ? -restart - 2 : restart - 1;
+        while (restart >= 0 && ends[restart] >= prefix) {
+            restart--;
+        }
+
+        SourceInput input = input(next);
+        LexicalAnalysis lexer = new LexicalAnalysis(input, identifiers);
+        lexer.seek(restart < 0 ? 0 : ends[restart], restart < 0 ? 1 : tokens.line(restart));
+        TokenBuffer replacement = new TokenBuffer(input, 16);
+        long[] replacementEnds = new long[16];
+        int resume = tokens.end();
+        int lineShift = 0;
+        while (true) {
+            TokenType type = lexer.scan();
+            long end = lexer.getPosition();
+            if (replacement.end() == replacementEnds.length) {
+                replacementEnds = Arrays.copyOf(replacementEnds, replacementEnds.length * 2);
+            }
+            replacementEnds[replacement.end()] = end;
+            replacement.add(type, lexer.getTokenStart(), lexer.getTokenLength(), lexer.getLine(), lexer.getTokenValue());
+            if (isTerminal(type)) {
+                break;
+            }
+            if (end >= changeEnd) {
+                int old = firstEndingAt(end - shift);
+                if (old >= 0) {
+                    resume = old + 1;
+                    lineShift = lexer.getLine() - tokens.line(old);
+                    break;
+                }
+            }
+        }
+
+        int from = restart + 1;
+        int count = replacement.end();
+        int tail = tokens.end() - resume;
+        if (from + count + tail > ends.length) {
+            ends = Arrays.copyOf(ends, Math.max(ends.length * 2, from + count + tail));
+        }
+        if (resume != from + count) {
+            System.arraycopy(ends, resume, ends, from + count, tail);
+        }
+        if (shift != 0) {
+            for (int i = from + count; i < from + count + tail; i++) {
+                ends[i] += shift;
+            }
+        }
+        System.arraycopy(replacementEnds, 0, ends, from, count);
+        tokens.splice(from, resume, replacement, shift, lineShift);
+
+        source = next;
+        spliceStart = from;
+        spliceEnd = resume;
+        spliceCount = count;
+        return true;
+    }
+
+    /** Appends the final token again; every token is already in the buffer. */
+    @Override
+    public void fill(TokenBuffer tokens) {
+        int last = this.tokens.end() - 1;
+        if (last + 1 == ends.length) {
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        ends[last + 1] = ends[last];
+        tokens.add(this.tokens.type(last), this.tokens.start(last), 0, this.tokens.line(last), -1);
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    public int getSpliceStart() {
+        return spliceStart;
+    }
+
+    public int getSpliceEnd() {
+        return spliceEnd;
+    }
+
+    public int getSpliceCount() {
+        return spliceCount;
+    }
+
+    private void add(LexicalAnalysis lexer, TokenType type) {
+        int index = tokens.end();
+        if (index == ends.length) {
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        ends[index] = lexer.getPosition();
+        tokens.add(type, lexer.getTokenStart(), lexer.getTokenLength(), lexer.getLine(), lexer.getTokenValue());
+    }
+
+    /** Lowest index of an old token ending at {@code position}, or -1. */
+    private int firstEndingAt(long position) {
+        int index = Arrays.binarySearch(ends, 0, tokens.end(), position);
+        if (index < 0) {
+            return -1;
+        }
+        while (index > 0 && ends[index - 1] == position) {
+            index--;
+        }
+        return index;
+    }
+
+    private static int commonSuffix(byte[] a, byte[] b, int limit) {
+        int suffix = 0;
+        while (suffix + BLOCK <= limit && Arrays.equals(a, a.length - suffix - BLOCK, a.length - suffix,
+                b, b.length - suffix - BLOCK, b.length - suffix)) {
+            suffix += BLOCK;
+        }
+        while (suffix < limit && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        return suffix;
+    }
+
+    private static SourceInput input(byte[] source) {
+        return new SourceInput(ByteBuffer.wrap(source));
+    }
+
+    private static boolean isTerminal(TokenType type) {
+        return type == TokenType.END_OF_FILE || type == TokenType.UNEXPECTED_EOF;
+    }
+}
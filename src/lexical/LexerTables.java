@@ -0,0 +1,165 @@
+package lexical;
+
+/**
+ * Byte-class and transition tables for the lexer DFA. The tables are generated once from
+ * the rules below; {@link LexicalAnalysis#scan()} only indexes into them.
+ *
+ * A transition is packed into an int: the next state in the low bits, action flags above
+ * it and, for accepting transitions, {@code TokenType.ordinal() + 1} in the top byte
+ * (zero means the token text is looked up in the {@link SymbolTable}). Transitions marked
+ * {@code BULK} enter a state whose input is consumed by a bulk scan of the source instead
+ * of one byte per transition.
+ */
+final class LexerTables {
+    static final int C_OTHER = 0;
+    static final int C_SPACE = 1;
+    static final int C_NEWLINE = 2;
+    static final int C_PERCENT = 3;
+    static final int C_RELATIONAL = 4;
+    static final int C_EQUAL = 5;
+    static final int C_AMPERSAND = 6;
+    static final int C_PIPE = 7;
+    static final int C_PUNCTUATION = 8;
+    static final int C_LETTER = 9;
+    static final int C_DIGIT = 10;
+    static final int C_OPEN_BRACE = 11;
+    static final int C_CLOSE_BRACE = 12;
+    static final int C_COLON = 13;
+    static final int C_DOT = 14;
+    static final int C_EOF = 15;
+    static final int CLASS_COUNT = 16;
+
+    static final int S_START = 0;
+    static final int S_COMMENT = 1;
+    static final int S_RELATIONAL = 2;
+    static final int S_AND = 3;
+    static final int S_OR = 4;
+    static final int S_IDENTIFIER = 5;
+    static final int S_INTEGER = 6;
+    static final int S_TEXT = 7;
+    static final int S_DOT = 8;
+    static final int S_REAL = 9;
+    static final int S_ASSIGN = 10;
+    static final int STATE_COUNT = 11;
+
+    static final int STATE_MASK = 0xFF;
+    static final int APPEND = 1 << 8;
+    static final int UNGET = 1 << 9;
+    static final int NEWLINE = 1 << 10;
+    static final int ACCEPT = 1 << 11;
+    static final int BULK = 1 << 12;
+    static final int TYPE_SHIFT = 24;
+
+    /** Byte class of {@code c + 1}, so that index 0 is end of file. */
+    static final byte[] CLASSES = new byte[257];
+    static final int[] TRANSITIONS = new int[STATE_COUNT * CLASS_COUNT];
+
+    static {
+        CLASSES[0] = C_EOF;
+        for (int c = 0; c < 256; c++) {
+            CLASSES[c + 1] = (byte) classOf(c);
+        }
+
+        for (int cls = 0; cls < CLASS_COUNT; cls++) {
+            set(S_START, cls, accept(TokenType.INVALID_TOKEN) | APPEND);
+            set(S_COMMENT, cls, S_COMMENT);
+            set(S_RELATIONAL, cls, lookup() | UNGET);
+            set(S_AND, cls, accept(TokenType.INVALID_TOKEN));
+            set(S_OR, cls, accept(TokenType.INVALID_TOKEN));
+            set(S_IDENTIFIER, cls, lookup() | UNGET);
+            set(S_INTEGER, cls, accept(TokenType.INTEGER_CONST) | UNGET);
+            set(S_TEXT, cls, S_TEXT | APPEND);
+            set(S_DOT, cls, accept(TokenType.INVALID_TOKEN) | APPEND);
+            set(S_REAL, cls, accept(TokenType.REAL_CONST) | UNGET);
+            set(S_ASSIGN, cls, accept(TokenType.INVALID_TOKEN));
+        }
+
+        set(S_START, C_SPACE, S_START);
+        set(S_START, C_NEWLINE, S_START | NEWLINE | BULK);
+        set(S_START, C_PERCENT, S_COMMENT | BULK);
+        set(S_START, C_RELATIONAL, S_RELATIONAL | APPEND);
+        set(S_START, C_AMPERSAND, S_AND | APPEND);
+        set(S_START, C_PIPE, S_OR | APPEND);
+        set(S_START, C_EQUAL, lookup() | APPEND);
+        set(S_START, C_PUNCTUATION, lookup() | APPEND);
+        set(S_START, C_LETTER, S_IDENTIFIER | APPEND);
+        set(S_START, C_DIGIT, S_INTEGER | APPEND);
+        set(S_START, C_OPEN_BRACE, S_TEXT | BULK);
+        set(S_START, C_COLON, S_ASSIGN | APPEND);
+        set(S_START, C_EOF, accept(TokenType.END_OF_FILE));
+
+        set(S_COMMENT, C_NEWLINE, S_START | NEWLINE | BULK);
+        set(S_COMMENT, C_EOF, accept(TokenType.UNEXPECTED_EOF));
+
+        set(S_RELATIONAL, C_EQUAL, lookup() | APPEND);
+        set(S_AND, C_AMPERSAND, lookup() | APPEND);
+        set(S_OR, C_PIPE, lookup() | APPEND);
+
+        set(S_IDENTIFIER, C_LETTER, S_IDENTIFIER | APPEND);
+        set(S_IDENTIFIER, C_DIGIT, S_IDENTIFIER | APPEND);
+
+        set(S_INTEGER, C_DIGIT, S_INTEGER | APPEND);
+        set(S_INTEGER, C_DOT, S_DOT | APPEND);
+
+        set(S_TEXT, C_CLOSE_BRACE, accept(TokenType.TEXT));
+        set(S_TEXT, C_EOF, accept(TokenType.UNEXPECTED_EOF));
+
+        set(S_DOT, C_DIGIT, S_REAL | APPEND);
+
+        set(S_REAL, C_DIGIT, S_REAL | APPEND);
+
+        set(S_ASSIGN, C_EQUAL, lookup() | APPEND);
+    }
+
+    private LexerTables() {
+    }
+
+    private static int classOf(int c) {
+        switch (c) {
+            case ' ', '\t', '\r':
+                return C_SPACE;
+            case '\n':
+                return C_NEWLINE;
+            case '%':
+                return C_PERCENT;
+            case '>', '<', '!':
+                return C_RELATIONAL;
+            case '=':
+                return C_EQUAL;
+            case '&':
+                return C_AMPERSAND;
+            case '|':
+                return C_PIPE;
+            case ';', ',', '+', '-', '*', '(', ')', '/':
+                return C_PUNCTUATION;
+            case '{':
+                return C_OPEN_BRACE;
+            case '}':
+                return C_CLOSE_BRACE;
+            case ':':
+                return C_COLON;
+            case '.':
+                return C_DOT;
+            default:
+                if (Character.isDigit(c)) {
+                    return C_DIGIT;
+                }
+                if (c == '_' || Character.isLetter(c)) {
+                    return C_LETTER;
+                }
+                return C_OTHER;
+        }
+    }
+
+    private static void set(int state, int cls, int transition) {
+        TRANSITIONS[state * CLASS_COUNT + cls] = transition;
+    }
+
+    private static int accept(TokenType type) {
+        return ACCEPT | (type.ordinal() + 1) << TYPE_SHIFT;
+    }
+
+    private static int lookup() {
+        return ACCEPT;
+    }
+}
@@ -1,199 +1,145 @@
 package lexical;
 
-import java.io.FileInputStream;
-import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+
+public class LexicalAnalysis implements TokenSource, AutoCloseable {
+    private static final int BATCH_SIZE = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
 
-public class LexicalAnalysis implements AutoCloseable {
     private int line;
     private final SymbolTable st;
-    private final PushbackInputStream input;
+    private SourceInput input;
+    private final IdentifierTable identifiers;
+    private long tokenStart;
+    private int tokenLength;
+    private int tokenValue;
 
     public LexicalAnalysis(String filename) {
-        this.st = new SymbolTable();
+        this(open(filename));
+    }
+
+    public LexicalAnalysis(Path path) {
+        this(open(path));
+    }
 
+    public LexicalAnalysis(ByteBuffer buffer) {
+        this(new SourceInput(buffer));
+    }
+
+    public LexicalAnalysis(SourceInput input) {
+        this(input, new IdentifierTable());
+    }
+
+    public LexicalAnalysis(SourceInput input, IdentifierTable identifiers) {
+        this.st = SymbolTable.INSTANCE;
+        this.input = input;
+        this.identifiers = identifiers;
+        this.line = 1;
+    }
+
+    private static SourceInput open(String filename) {
         try {
-            input = new PushbackInputStream(new FileInputStream(filename), 2);
-        } catch (Exception e) {
+            return open(Path.of(filename));
+        } catch (InvalidPathException e) {
             throw new LexicalException("Unable to open file");
         }
+    }
 
-        line = 1;
+    private static SourceInput open(Path path) {
+        try {
+            return new SourceInput(path);
+        } catch (Exception e) {
+            throw new LexicalException("Unable to open file");
+        }
     }
 
     public Lexeme nextToken() {
-        Lexeme lex = new Lexeme("", TokenType.END_OF_FILE);
+        TokenType type = scan();
+        return new Lexeme(input.text(tokenStart, tokenLength), type);
+    }
 
-        int state = 1;
-        while (state != 98 && state != 99) {
+    @Override
+    public void fill(TokenBuffer tokens) {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            TokenType type = scan();
+            tokens.add(type, tokenStart, tokenLength, line, tokenValue);
+            if (type == TokenType.END_OF_FILE || type == TokenType.UNEXPECTED_EOF) {
+                break;
+            }
+        }
+    }
+
+    public TokenType scan() {
+        tokenStart = input.position();
+        tokenLength = 0;
+        tokenValue = -1;
+
+        int state = LexerTables.S_START;
+        while (true) {
             int c = getc();
+            int transition = LexerTables.TRANSITIONS[state * LexerTables.CLASS_COUNT + LexerTables.CLASSES[c + 1]];
 
-            switch (state) {
-                case 1:
-                    if (c == ' ' || c == '\t' || c == '\r') {
-                        continue;
-                    } else if (c == '\n') {
-                        this.line++;
-                    } else if (c == '%') {
-                        state = 2;
-                    } else if (c == '>' || c == '<' || c == '!') {
-                        lex.token += (char) c;
-                        state = 3;
-                    } else if (c == '&') {
-                        lex.token += (char) c;
-                        state = 4;
-                    } else if (c == '|') {
-                        lex.token += (char) c;
-                        state = 5;
-                    } else if (c == '=' || c == ';' || c == ',' || c == '+' || c == '-' || c == '*' ||
-                            c == '(' || c == ')' || c == '/') {
-                        lex.token += (char) c;
-                        state = 98;
-                    } else if (c == '_' ||
-                            Character.isLetter(c)) {
-                        lex.token += (char) c;
-                        state = 6;
-                    } else if (Character.isDigit(c)) {
-                        lex.token += (char) c;
-                        state = 7;
-                    } else if (c == '{') {
-                        state = 8;
-                    } else if (c == ':') {
-                        lex.token += (char) c;
-                        state = 11;
-                    } else if (c == -1) {
-                        lex.type = TokenType.END_OF_FILE;
-                        state = 99;
-                    } else {
-                        lex.token += (char) c;
-                        lex.type = TokenType.INVALID_TOKEN;
-                        state = 99;
-                    }
-                    break;
-                case 2:
-                    if (c == '\n') {
-                        state = 1;
-                        this.line++;
-                    } else if (c == -1) {
-                        lex.type = TokenType.UNEXPECTED_EOF;
-                        state = 99;
-                    }
-                    break;
-                case 3:
-                    if (c == '=') {
-                        lex.token += (char) c;
-                        state = 98;
-                    } else {
-                        ungetc(c);
-                        state = 98;
-                    }
-                    break;
-                case 4:
-                    if (c == '&') {
-                        lex.token += (char) c;
-                        state = 98;
-                    } else {
-                        lex.type = TokenType.INVALID_TOKEN;
-                        state = 99;
-                    }
-                    break;
-                case 5:
-                    if (c == '|') {
-                        lex.token += (char) c;
-                        state = 98;
-                    } else {
-                        lex.type = TokenType.INVALID_TOKEN;
-                        state = 99;
-                    }
-                    break;
-                case 6:
-                    if (c == '_' ||
-                            Character.isLetter(c) ||
-                            Character.isDigit(c)) {
-                        lex.token += (char) c;
-                        state = 6;
-                    } else {
-                        ungetc(c);
-                        state = 98;
-                    }
-                    break;
-                case 7:
-                    if (Character.isDigit(c)) {
-                        lex.token += (char) c;
-                    } else if (c == '.') {
-                        lex.token += (char) c;
-                        state = 9;
-                    } else {
-                        ungetc(c);
-                        lex.type = TokenType.INTEGER_CONST;
-                        state = 99;
-                    }
-                    break;
-                case 8:
-                    if (c == '}') {
-                        lex.type = TokenType.TEXT;
-                        state = 99;
-                    } else {
-                        lex.token += (char) c;
-                    }
-                    break;
-                case 9:
-                    if (Character.isDigit(c)) {
-                        lex.token += (char) c;
-                        state = 10;
-                    } else {
-                        lex.token += (char) c;
-                        lex.type = TokenType.INVALID_TOKEN;
-                        state = 99;
-                    }
-                    break;
-                case 10:
-                    if (Character.isDigit(c)) {
-                        lex.token += (char) c;
-                    } else {
-                        ungetc(c);
-                        lex.type = TokenType.REAL_CONST;
-                        state = 99;
-                    }
-                    break;
-                case 11:
-                    if (c == '=') {
-                        lex.token += (char) c;
-                        state = 98;
-                    } else {
-                        lex.type = TokenType.INVALID_TOKEN;
-                        state = 99;
-                    }
-                    break;
+            if ((transition & LexerTables.APPEND) != 0) {
+                append();
+            }
+            if ((transition & LexerTables.NEWLINE) != 0) {
+                this.line++;
+            }
+            if ((transition & LexerTables.UNGET) != 0) {
+                ungetc(c);
+            }
+            if ((transition & LexerTables.ACCEPT) != 0) {
+                int type = transition >>> LexerTables.TYPE_SHIFT;
+                if (type != 0) {
+                    return TYPES[type - 1];
+                }
+                TokenType found = st.find(input, tokenStart, tokenLength);
+                if (found == TokenType.IDENTIFIER) {
+                    tokenValue = identifiers.intern(input, tokenStart, tokenLength);
+                }
+                return found;
+            }
+            state = transition & LexerTables.STATE_MASK;
+            if ((transition & LexerTables.BULK) != 0) {
+                skip(state);
             }
         }
+    }
 
-        if (state == 98) {
-            lex.type = st.find(lex.token);
+    private void skip(int state) {
+        long pos = input.position();
+        switch (state) {
+            case LexerTables.S_START -> this.line += input.skipWhitespace();
+            case LexerTables.S_COMMENT -> input.position(input.indexOf('\n', pos));
+            case LexerTables.S_TEXT -> {
+                long end = input.indexOf('}', pos);
+                tokenStart = pos;
+                tokenLength = (int) (end - pos);
+                input.position(end);
+            }
         }
+    }
 
-        return lex;
+    private void append() {
+        if (tokenLength++ == 0) {
+            tokenStart = input.position() - 1;
+        }
     }
 
     private int getc() {
-        try {
-            return input.read();
-        } catch (Exception e) {
-            throw new LexicalException("Unable to read file");
-        }
+        return input.read();
     }
 
     private void ungetc(int c) {
         if (c != -1) {
-            try {
-                input.unread(c);
-            } catch (Exception e) {
-                throw new LexicalException("Unable to ungetc");
-            }
+            input.unread();
         }
     }
 
     @Override
-    public void close() throws Exception {
+    public void close() {
         try {
             input.close();
         } catch (Exception e) {
@@ -201,7 +147,43 @@ public class LexicalAnalysis implements AutoCloseable {
         }
     }
 
+    /** Starts over on another source, keeping the identifier table storage. */
+    public void reset(SourceInput input) {
+        this.input = input;
+        this.line = 1;
+        this.identifiers.clear();
+    }
+
+    public void seek(long position, int line) {
+        this.input.position(position);
+        this.line = line;
+    }
+
+    public long getPosition() {
+        return this.input.position();
+    }
+
     public int getLine() {
         return this.line;
     }
+
+    public long getTokenStart() {
+        return this.tokenStart;
+    }
+
+    public int getTokenLength() {
+        return this.tokenLength;
+    }
+
+    public int getTokenValue() {
+        return this.tokenValue;
+    }
+
+    public IdentifierTable getIdentifiers() {
+        return this.identifiers;
+    }
+
+    public SourceInput getSource() {
+        return this.input;
+    }
 }
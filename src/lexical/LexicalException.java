@@ -1,7 +1,8 @@
 package lexical;
 
+/** Thrown without a stack trace, so failing inputs are cheap to report. */
 public class LexicalException extends RuntimeException {
     public LexicalException(String msg) {
-        super("Erro léxico: " + msg);
+        super("Erro léxico: " + msg, null, false, false);
     }
 }
@@ -0,0 +1,221 @@
+package lexical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes one source in parallel. The input is cut into chunks at newline boundaries and
+ * every chunk is lexed on a ForkJoin worker as if a token started at its first byte, with
+ * lines counted from zero.
+ *
+ * That guess is wrong when the chunk actually starts inside a comment or a TEXT literal,
+ * so the chunks are stitched in order: tokens of a chunk are taken from the first one that
+ * follows a token ending exactly where the stream stitched so far ends, since the lexer
+ * carries no state besides position and line between tokens. Until such a token is found
+ * the stream is continued by a serial lexer. Lines of the accepted tokens are shifted by
+ * the difference between the real and the speculative line at that point, and identifier
+ * ids local to the chunk are interned into the shared table as they are accepted, so ids
+ * are numbered exactly as the serial lexer numbers them.
+ */
+public class ParallelLexer implements TokenSource {
+    public static final long MIN_CHUNK_SIZE = 1L << 20;
+
+    private final SourceInput source;
+    private final IdentifierTable identifiers;
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+    private boolean done;
+    private int line;
+
+    public ParallelLexer(SourceInput source) {
+        this(source, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLexer(SourceInput source, ForkJoinPool pool) {
+        this(source, pool, Math.max(MIN_CHUNK_SIZE, source.size() / (4L * pool.getParallelism()) + 1));
+    }
+
+    public ParallelLexer(SourceInput source, ForkJoinPool pool, long chunkSize) {
+        this.source = source;
+        this.identifiers = new IdentifierTable();
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.line = 1;
+    }
+
+    @Override
+    public void fill(TokenBuffer tokens) {
+        if (done) {
+            tokens.add(TokenType.END_OF_FILE, source.size(), 0, line, -1);
+            return;
+        }
+        done = true;
+
+        List<ChunkTask> tasks = new ArrayList<>();
+        long start = 0;
+        while (start < source.size() || tasks.isEmpty()) {
+            long end = Math.min(source.size(), start + chunkSize);
+            if (end < source.size()) {
+                end = Math.min(source.size(), source.indexOf('\n', end) + 1);
+            }
+            tasks.add(new ChunkTask(source, start, end));
+            start = end;
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        stitch(tasks, tokens);
+    }
+
+    private void stitch(List<ChunkTask> tasks, TokenBuffer tokens) {
+        LexicalAnalysis serial = new LexicalAnalysis(source.duplicate(), identifiers);
+        long end = 0;
+        int line = 1;
+        boolean finished = false;
+
+        for (ChunkTask task : tasks) {
+            Chunk chunk = task.join();
+            while (!finished) {
+                int first = chunk.firstAfter(end);
+                if (first >= 0) {
+                    int delta = line - chunk.lineBefore(first);
+                    tokens.addAll(chunk.tokens, first, chunk.count, delta, chunk.mapIdentifiers(first, identifiers));
+                    if (chunk.count > first) {
+                        end = chunk.ends[chunk.count - 1];
+                        line = chunk.tokens.line(chunk.count - 1) + delta;
+                        finished = isTerminal(chunk.tokens.type(chunk.count - 1));
+                    }
+                    break;
+                }
+                if (end >= chunk.end()) {
+                    break;
+                }
+                serial.seek(end, line);
+                finished = isTerminal(scan(serial, tokens));
+                end = serial.getPosition();
+                line = serial.getLine();
+            }
+        }
+        if (!finished) {
+            serial.seek(end, line);
+            TokenType type;
+            do {
+                type = scan(serial, tokens);
+            } while (!isTerminal(type));
+            line = serial.getLine();
+        }
+        this.line = line;
+    }
+
+    private static TokenType scan(LexicalAnalysis lexer, TokenBuffer tokens) {
+        TokenType type = lexer.scan();
+        tokens.add(type, lexer.getTokenStart(), lexer.getTokenLength(), lexer.getLine(), lexer.getTokenValue());
+        return type;
+    }
+
+    private static boolean isTerminal(TokenType type) {
+        return type == TokenType.END_OF_FILE || type == TokenType.UNEXPECTED_EOF;
+    }
+
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    private static class Chunk {
+        final long start;
+        final TokenBuffer tokens;
+        final IdentifierTable identifiers;
+        long[] ends;
+        int count;
+
+        Chunk(long start, int capacity, IdentifierTable identifiers) {
+            this.start = start;
+            this.tokens = new TokenBuffer(null, capacity);
+            this.identifiers = identifiers;
+            this.ends = new long[capacity];
+        }
+
+        void add(LexicalAnalysis lexer, TokenType type) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, Math.max(count * 2, 16));
+            }
+            tokens.add(type, lexer.getTokenStart(), lexer.getTokenLength(), lexer.getLine(), lexer.getTokenValue());
+            ends[count++] = lexer.getPosition();
+        }
+
+        /** Maps the local ids used from token {@code first} on to ids of {@code shared}. */
+        int[] mapIdentifiers(int first, IdentifierTable shared) {
+            int[] map = new int[identifiers.size()];
+            Arrays.fill(map, -1);
+            for (int i = first; i < count; i++) {
+                int id = tokens.value(i);
+                if (id >= 0 && map[id] < 0) {
+                    map[id] = shared.intern(identifiers.bytes(id));
+                }
+            }
+            return map;
+        }
+
+        long end() {
+            return count == 0 ? start : ends[count - 1];
+        }
+
+        int lineBefore(int index) {
+            return index == 0 ? 0 : tokens.line(index - 1);
+        }
+
+        /**
+         * Index of the token that the lexer reads next when it stands at {@code position}, or
+         * -1. Ends only repeat for the END_OF_FILE token, which consumes nothing.
+         */
+        int firstAfter(long position) {
+            if (position == start) {
+                return 0;
+            }
+            int index = Arrays.binarySearch(ends, 0, count, position);
+            if (index < 0) {
+                return -1;
+            }
+            while (index > 0 && ends[index - 1] == position) {
+                index--;
+            }
+            return index + 1;
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<Chunk> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient SourceInput source;
+        private final long start;
+        private final long end;
+
+        ChunkTask(SourceInput source, long start, long end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Chunk compute() {
+            SourceInput input = source.duplicate();
+            LexicalAnalysis lexer = new LexicalAnalysis(input);
+            lexer.seek(start, 0);
+            Chunk chunk = new Chunk(start, (int) Math.min(1 << 20, (end - start) / 4 + 1), lexer.getIdentifiers());
+            while (lexer.getPosition() < end) {
+                TokenType type = lexer.scan();
+                chunk.add(lexer, type);
+                if (isTerminal(type)) {
+                    break;
+                }
+            }
+            if (end >= source.size() && (chunk.count == 0 || !isTerminal(chunk.tokens.type(chunk.count - 1)))) {
+                chunk.add(lexer, lexer.scan());
+            }
+            return chunk;
+        }
+    }
+}
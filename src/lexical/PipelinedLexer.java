@@ -0,0 +1,132 @@
+package lexical;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the lexer on its own thread, ahead of the parser. Token batches are handed over
+ * through a bounded single-producer/single-consumer ring: the producer stalls when every
+ * slot is full and the consumer when every slot is empty. The slots are allocated once
+ * and reused, and batches are copied into the consumer's buffer.
+ *
+ * An exception thrown by the lexer is stored with the batch being built and rethrown by
+ * {@link #fill(TokenBuffer)} after the tokens read before it have been delivered. The
+ * producer ends at the end of the input or when the source is closed, which the parser does
+ * through {@link #finish()} when it stops early.
+ */
+public class PipelinedLexer implements TokenSource, AutoCloseable {
+    private static final int SLOTS = 16;
+    private static final int BATCH_SIZE = 4096;
+    private static final int SPINS = 128;
+    private static final long PARK_NANOS = 20_000;
+
+    private final SourceInput source;
+    private final LexicalAnalysis lexer;
+    private final TokenBuffer[] batches;
+    private final RuntimeException[] errors;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final Thread producer;
+    private volatile boolean closed;
+    private boolean finished;
+    private int line;
+
+    public PipelinedLexer(SourceInput source) {
+        this.source = source;
+        this.lexer = new LexicalAnalysis(source.duplicate());
+        this.batches = new TokenBuffer[SLOTS];
+        this.errors = new RuntimeException[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            batches[i] = new TokenBuffer(null, BATCH_SIZE);
+        }
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+        this.line = 1;
+        this.producer = new Thread(this::produce, "lexer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void produce() {
+        long next = 0;
+        boolean done = false;
+        while (!done) {
+            int spins = 0;
+            while (next - head.getAcquire() == SLOTS) {
+                if (closed) {
+                    return;
+                }
+                spins = idle(spins);
+            }
+            int slot = (int) (next % SLOTS);
+            TokenBuffer batch = batches[slot];
+            batch.clear();
+            try {
+                for (int i = 0; i < BATCH_SIZE && !done; i++) {
+                    TokenType type = lexer.scan();
+                    batch.add(type, lexer.getTokenStart(), lexer.getTokenLength(), lexer.getLine(), lexer.getTokenValue());
+                    done = type == TokenType.END_OF_FILE || type == TokenType.UNEXPECTED_EOF;
+                }
+            } catch (RuntimeException e) {
+                errors[slot] = e;
+                done = true;
+            }
+            tail.setRelease(++next);
+        }
+    }
+
+    @Override
+    public void fill(TokenBuffer tokens) {
+        if (finished) {
+            tokens.add(TokenType.END_OF_FILE, source.size(), 0, line, -1);
+            return;
+        }
+        long current = head.get();
+        int spins = 0;
+        while (tail.getAcquire() == current) {
+            spins = idle(spins);
+        }
+        int slot = (int) (current % SLOTS);
+        TokenBuffer batch = batches[slot];
+        RuntimeException error = errors[slot];
+        errors[slot] = null;
+        tokens.addAll(batch, batch.begin(), batch.end(), 0, null);
+        if (batch.end() > batch.begin()) {
+            TokenType last = batch.type(batch.end() - 1);
+            line = batch.line(batch.end() - 1);
+            finished = last == TokenType.END_OF_FILE || last == TokenType.UNEXPECTED_EOF;
+        }
+        head.setRelease(current + 1);
+        if (error != null) {
+            finished = true;
+            throw error;
+        }
+    }
+
+    private static int idle(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return spins + 1;
+    }
+
+    /**
+     * Identifiers seen by the producer. Entries for ids that have been delivered by
+     * {@link #fill(TokenBuffer)} are safe to read from the consumer thread.
+     */
+    public IdentifierTable getIdentifiers() {
+        return lexer.getIdentifiers();
+    }
+
+    @Override
+    public void finish() {
+        close();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,225 @@
+package lexical;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class SourceInput implements AutoCloseable {
+    public static final long WINDOW_SIZE = 1L << 30;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long SPACES = ONES * ' ';
+    private static final long TABS = ONES * '\t';
+    private static final long RETURNS = ONES * '\r';
+    private static final long NEWLINES = ONES * '\n';
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private ByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+    private long pos;
+
+    public SourceInput(Path path) throws IOException {
+        this(path, WINDOW_SIZE);
+    }
+
+    public SourceInput(Path path, long windowSize) throws IOException {
+        if (Files.isRegularFile(path)) {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            this.size = channel.size();
+            this.windowSize = windowSize;
+            map(0);
+        } else {
+            this.channel = null;
+            this.window = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            this.size = window.limit();
+            this.windowSize = size;
+            this.windowEnd = size;
+        }
+    }
+
+    public SourceInput(ByteBuffer buffer) {
+        this.channel = null;
+        this.window = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.size = window.limit();
+        this.windowSize = size;
+        this.windowEnd = size;
+    }
+
+    private SourceInput(SourceInput other) {
+        this.channel = other.channel;
+        this.size = other.size;
+        this.windowSize = other.windowSize;
+        if (channel == null) {
+            this.window = other.window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.windowEnd = size;
+        } else {
+            map(0);
+        }
+    }
+
+    /**
+     * Returns an independent cursor over the same bytes, for use by another thread. The
+     * duplicate shares the underlying file and must not be closed.
+     */
+    public SourceInput duplicate() {
+        return new SourceInput(this);
+    }
+
+    public int read() {
+        if (pos < windowEnd && pos >= windowStart) {
+            return window.get((int) (pos++ - windowStart)) & 0xFF;
+        }
+        if (pos >= size) {
+            return -1;
+        }
+        map(pos);
+        return window.get((int) (pos++ - windowStart)) & 0xFF;
+    }
+
+    public void unread() {
+        pos--;
+    }
+
+    public int get(long index) {
+        if (index < windowStart || index >= windowEnd) {
+            if (index < 0 || index >= size) {
+                return -1;
+            }
+            map(index);
+        }
+        return window.get((int) (index - windowStart)) & 0xFF;
+    }
+
+    /**
+     * Returns the index of the first byte equal to {@code b} at or after {@code from}, or
+     * {@link #size()} if there is none. Eight bytes are compared per step (SWAR).
+     */
+    public long indexOf(int b, long from) {
+        long pattern = ONES * (b & 0xFF);
+        while (from < size) {
+            if (from < windowStart || from >= windowEnd) {
+                map(from);
+            }
+            int i = (int) (from - windowStart);
+            int limit = (int) (windowEnd - windowStart);
+            for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+                long matches = zeroBytes(window.getLong(i) ^ pattern);
+                if (matches != 0) {
+                    return windowStart + i + (Long.numberOfTrailingZeros(matches) >>> 3);
+                }
+            }
+            for (; i < limit; i++) {
+                if ((window.get(i) & 0xFF) == (b & 0xFF)) {
+                    return windowStart + i;
+                }
+            }
+            from = windowEnd;
+        }
+        return size;
+    }
+
+    /**
+     * Advances past a run of spaces, tabs, carriage returns and newlines and returns the
+     * number of newlines in it. Short runs, the common case between tokens, are handled
+     * byte by byte before switching to word-at-a-time scanning.
+     */
+    public int skipWhitespace() {
+        int newlines = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            int c = read();
+            if (c == '\n') {
+                newlines++;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                if (c != -1) {
+                    pos--;
+                }
+                return newlines;
+            }
+        }
+        while (pos < size) {
+            if (pos < windowStart || pos >= windowEnd) {
+                map(pos);
+            }
+            int i = (int) (pos - windowStart);
+            int limit = (int) (windowEnd - windowStart);
+            for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+                long v = window.getLong(i);
+                long lineFeeds = zeroBytes(v ^ NEWLINES);
+                long blanks = lineFeeds | zeroBytes(v ^ SPACES) | zeroBytes(v ^ TABS) | zeroBytes(v ^ RETURNS);
+                if (blanks != HIGH_BITS) {
+                    int run = Long.numberOfTrailingZeros(~blanks & HIGH_BITS) >>> 3;
+                    newlines += Long.bitCount(lineFeeds & ((1L << (run * 8)) - 1));
+                    pos = windowStart + i + run;
+                    return newlines;
+                }
+                newlines += Long.bitCount(lineFeeds);
+            }
+            for (; i < limit; i++) {
+                byte c = window.get(i);
+                if (c == '\n') {
+                    newlines++;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    pos = windowStart + i;
+                    return newlines;
+                }
+            }
+            pos = windowEnd;
+        }
+        return newlines;
+    }
+
+    public String text(long start, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) get(start + i);
+        }
+        return new String(chars);
+    }
+
+    public long position() {
+        return pos;
+    }
+
+    public void position(long pos) {
+        this.pos = pos;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    private void map(long start) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            long length = Math.min(windowSize, size - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, length).order(ByteOrder.LITTLE_ENDIAN);
+            windowStart = start;
+            windowEnd = start + length;
+        } catch (IOException e) {
+            throw new LexicalException("Unable to read file");
+        }
+    }
+
+    /** Sets the high bit of every byte of {@code v} that is zero, and clears everything else. */
+    private static long zeroBytes(long v) {
+        return ~(((v & LOW_BITS) + LOW_BITS) | v | LOW_BITS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package lexical;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class SymbolTable {
+    public static final SymbolTable INSTANCE = new SymbolTable();
+
+    private static final int HASH_BITS = 7;
+
     private final Map<String, TokenType> st;
+    private final byte[][] keys;
+    private final TokenType[] values;
+    private final int seed;
 
-    public SymbolTable() {
-        st = new HashMap<>();
+    private SymbolTable() {
+        Map<String, TokenType> st = new HashMap<>();
 
         st.put(",", TokenType.COMMA);
         st.put(";", TokenType.SEMICOLON);
@@ -43,6 +52,17 @@ public class SymbolTable {
         st.put("repeat", TokenType.REPEAT);
         st.put("read", TokenType.READ);
         st.put("write", TokenType.WRITE);
+
+        this.st = Map.copyOf(st);
+        this.keys = new byte[1 << HASH_BITS][];
+        this.values = new TokenType[1 << HASH_BITS];
+        this.seed = findSeed();
+        for (Map.Entry<String, TokenType> entry : this.st.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.ISO_8859_1);
+            int slot = hash(seed, key[0], key[key.length / 2], key[key.length - 1], key.length);
+            keys[slot] = key;
+            values[slot] = entry.getValue();
+        }
     }
 
     public boolean contains(String token) {
@@ -52,4 +72,47 @@ public class SymbolTable {
     public TokenType find(String token) {
         return this.contains(token) ? st.get(token) : TokenType.IDENTIFIER;
     }
+
+    /**
+     * Looks up the token stored at {@code [start, start + length)} of the source without
+     * building a String. The slot comes from a perfect hash of the length and the first,
+     * middle and last bytes, so at most one key has to be compared.
+     */
+    public TokenType find(SourceInput input, long start, int length) {
+        int first = input.get(start);
+        int slot = hash(seed, first, input.get(start + length / 2), input.get(start + length - 1), length);
+        byte[] key = keys[slot];
+        if (key == null || key.length != length || (key[0] & 0xFF) != first) {
+            return TokenType.IDENTIFIER;
+        }
+        for (int i = 1; i < length; i++) {
+            if ((key[i] & 0xFF) != input.get(start + i)) {
+                return TokenType.IDENTIFIER;
+            }
+        }
+        return values[slot];
+    }
+
+    private int findSeed() {
+        boolean[] used = new boolean[1 << HASH_BITS];
+        for (int seed = 1; ; seed += 2) {
+            Arrays.fill(used, false);
+            boolean perfect = true;
+            for (String key : st.keySet()) {
+                int slot = hash(seed, key.charAt(0), key.charAt(key.length() / 2), key.charAt(key.length() - 1), key.length());
+                if (used[slot]) {
+                    perfect = false;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (perfect) {
+                return seed;
+            }
+        }
+    }
+
+    private static int hash(int seed, int first, int middle, int last, int length) {
+        return (((first & 0xFF) << 16 | (middle & 0xFF) << 8 | (last & 0xFF)) * seed + length) >>> (32 - HASH_BITS);
+    }
 }
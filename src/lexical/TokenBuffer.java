@@ -0,0 +1,199 @@
+package lexical;
+
+import java.util.Arrays;
+
+/**
+ * Token stream stored as parallel primitive arrays. Each token is a kind, the offset and
+ * length of its text in the source, the lexer line after it was read and a value (the
+ * interned id of an identifier, -1 for other tokens); the text is only turned into a
+ * String by {@link #text(int)}.
+ *
+ * Indices are global: {@link #discardBefore(int)} drops a prefix of the stream without
+ * renumbering the tokens that remain.
+ */
+public class TokenBuffer {
+    public static final int BYTES_PER_TOKEN = Byte.BYTES + Long.BYTES + 3 * Integer.BYTES;
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private SourceInput source;
+    private byte[] types;
+    private long[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] values;
+    private int base;
+    private int size;
+
+    public TokenBuffer(SourceInput source) {
+        this(source, INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(SourceInput source, int capacity) {
+        this.source = source;
+        this.types = new byte[capacity];
+        this.starts = new long[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.values = new int[capacity];
+    }
+
+    public void add(TokenType type, long start, int length, int line, int value) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Appends tokens {@code [from, to)} of another buffer, adding {@code lineDelta} to
+     * their lines and translating identifier ids through {@code idMap} when it is not null.
+     */
+    public void addAll(TokenBuffer other, int from, int to, int lineDelta, int[] idMap) {
+        int count = to - from;
+        while (size + count > types.length) {
+            grow();
+        }
+        int offset = from - other.base;
+        System.arraycopy(other.types, offset, types, size, count);
+        System.arraycopy(other.starts, offset, starts, size, count);
+        System.arraycopy(other.lengths, offset, lengths, size, count);
+        for (int i = 0; i < count; i++) {
+            lines[size + i] = other.lines[offset + i] + lineDelta;
+        }
+        if (idMap == null) {
+            System.arraycopy(other.values, offset, values, size, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                int value = other.values[offset + i];
+                values[size + i] = value < 0 ? value : idMap[value];
+            }
+        }
+        size += count;
+    }
+
+    /**
+     * Replaces tokens {@code [from, to)} with every token of {@code replacement} and moves
+     * the tokens after them by {@code shift} bytes and {@code lineShift} lines. The buffer
+     * then refers to the source of {@code replacement}.
+     */
+    public void splice(int from, int to, TokenBuffer replacement, long shift, int lineShift) {
+        int count = replacement.size;
+        int tail = base + size - to;
+        while (size - (to - from) + count > types.length) {
+            grow();
+        }
+        int source = to - base;
+        int target = from - base + count;
+        if (source != target) {
+            System.arraycopy(types, source, types, target, tail);
+            System.arraycopy(starts, source, starts, target, tail);
+            System.arraycopy(lengths, source, lengths, target, tail);
+            System.arraycopy(lines, source, lines, target, tail);
+            System.arraycopy(values, source, values, target, tail);
+        }
+        if (shift != 0) {
+            for (int i = target; i < target + tail; i++) {
+                starts[i] += shift;
+            }
+        }
+        if (lineShift != 0) {
+            for (int i = target; i < target + tail; i++) {
+                lines[i] += lineShift;
+            }
+        }
+        size = target + tail;
+        int offset = from - base;
+        System.arraycopy(replacement.types, 0, types, offset, count);
+        System.arraycopy(replacement.starts, 0, starts, offset, count);
+        System.arraycopy(replacement.lengths, 0, lengths, offset, count);
+        System.arraycopy(replacement.lines, 0, lines, offset, count);
+        System.arraycopy(replacement.values, 0, values, offset, count);
+        this.source = replacement.source;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index - base]];
+    }
+
+    public long start(int index) {
+        return starts[index - base];
+    }
+
+    public int length(int index) {
+        return lengths[index - base];
+    }
+
+    public int line(int index) {
+        return lines[index - base];
+    }
+
+    public int value(int index) {
+        return values[index - base];
+    }
+
+    public String text(int index) {
+        return source.text(starts[index - base], lengths[index - base]);
+    }
+
+    public int begin() {
+        return base;
+    }
+
+    public int end() {
+        return base + size;
+    }
+
+    public SourceInput source() {
+        return source;
+    }
+
+    public void clear() {
+        base = 0;
+        size = 0;
+    }
+
+    /** Empties the buffer for tokens of another source, keeping its storage. */
+    public void reset(SourceInput source) {
+        this.source = source;
+        clear();
+    }
+
+    /**
+     * Forgets every token before {@code index}. Storage is only compacted once the
+     * discarded prefix is at least half of the buffer, so the amortized cost is constant.
+     */
+    public void discardBefore(int index) {
+        int drop = index - base;
+        if (drop <= 0 || drop < types.length / 2) {
+            return;
+        }
+        int keep = size - drop;
+        System.arraycopy(types, drop, types, 0, keep);
+        System.arraycopy(starts, drop, starts, 0, keep);
+        System.arraycopy(lengths, drop, lengths, 0, keep);
+        System.arraycopy(lines, drop, lines, 0, keep);
+        System.arraycopy(values, drop, values, 0, keep);
+        base = index;
+        size = keep;
+    }
+
+    public long heapBytes() {
+        return (long) types.length * BYTES_PER_TOKEN;
+    }
+
+    private void grow() {
+        int capacity = Math.max(types.length * 2, 16);
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+}
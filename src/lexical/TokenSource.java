@@ -0,0 +1,16 @@
+package lexical;
+
+public interface TokenSource {
+    /**
+     * Appends at least one token to the buffer. Once the input is exhausted every call
+     * appends another END_OF_FILE or UNEXPECTED_EOF token.
+     */
+    void fill(TokenBuffer tokens);
+
+    /**
+     * Called once the parser has stopped reading, at the end of the input or at the first
+     * error. A source that reads ahead on another thread stops it here.
+     */
+    default void finish() {
+    }
+}
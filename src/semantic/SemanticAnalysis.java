@@ -3,51 +3,152 @@ package semantic;
 import lexical.SymbolTable;
 import lexical.TokenType;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 
 public class SemanticAnalysis {
+    private static final Type[] TYPES = Type.values();
+    private static final byte[] OPERATIONS;
+    private static final String[] OPERATION_ERRORS;
+
+    static {
+        TokenType[] operators = TokenType.values();
+        SemanticAnalysis rules = new SemanticAnalysis();
+        List<String> errors = new ArrayList<>();
+        OPERATIONS = new byte[operators.length * TYPES.length * TYPES.length];
+        int index = 0;
+        for (TokenType op : operators) {
+            for (Type left : TYPES) {
+                for (Type right : TYPES) {
+                    try {
+                        OPERATIONS[index] = (byte) switch (op) {
+                            case EQUAL, NOT_EQUAL, GREATER_THAN, GREATER_EQUAL, LOWER_THAN, LOWER_EQUAL ->
+                                    rules.checkComparisonOperation(left, right, op).ordinal();
+                            default -> rules.checkArithmeticOrLogicalOperation(left, right, op).ordinal();
+                        };
+                    } catch (SemanticException e) {
+                        if (!errors.contains(e.getMessage())) {
+                            errors.add(e.getMessage());
+                        }
+                        OPERATIONS[index] = (byte) (-1 - errors.indexOf(e.getMessage()));
+                    }
+                    index++;
+                }
+            }
+        }
+        OPERATION_ERRORS = errors.toArray(new String[0]);
+    }
+
     private final SymbolTable st;
-    private final HashMap<String, Variable> memory;
+    private final List<Variable> variables;
+    private byte[] types;
+    private int[] slots;
+    private boolean frozen;
 
     public SemanticAnalysis() {
-        this.st = new SymbolTable();
-        this.memory = new HashMap<>();
+        this.st = SymbolTable.INSTANCE;
+        this.variables = new ArrayList<>();
+        this.types = new byte[64];
+        this.slots = new int[64];
     }
 
-    public void addIdentifier(String token, Type type) {
+    private SemanticAnalysis(SemanticAnalysis declarations) {
+        this.st = declarations.st;
+        this.variables = List.copyOf(declarations.variables);
+        this.types = declarations.types.clone();
+        this.slots = declarations.slots.clone();
+        this.frozen = true;
+    }
+
+    public void addIdentifier(int id, String token, Type type) {
+        if (frozen) {
+            throw new IllegalStateException("Declarations are frozen");
+        }
+        if (isVariableDeclared(id)) {
+            throw new SemanticException("Variável já declarada.");
+        }
+        if (id >= types.length) {
+            int capacity = Math.max(id + 1, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        Variable variable = new Variable(token, type, variables.size());
+        types[id] = (byte) (type.ordinal() + 1);
+        slots[id] = variable.slot;
+        variables.add(variable);
+    }
+
+    /**
+     * Ends the declarations and returns a copy of them that never changes. No variable can be
+     * added to either afterwards; the copy shares no arrays with this analysis, so its checks
+     * may run on several threads at once while this one goes on parsing.
+     */
+    public SemanticAnalysis freeze() {
+        frozen = true;
+        return new SemanticAnalysis(this);
+    }
+
+    /** Forgets every declaration, keeping the storage for the next program. */
+    public void reset() {
+        variables.clear();
+        Arrays.fill(types, (byte) 0);
+        frozen = false;
+    }
+
+    /**
+     * Applies the checks of {@link #addIdentifier} to a token that is not an identifier, which
+     * the parser reports before the syntax error.
+     */
+    public void checkIdentifierName(String token) {
         if (isReservedKeyword(token)) {
             throw new SemanticException("Não é possível usar nomes reservados para declarar variáveis.");
         }
-        if (isVariableDeclared(token)) {
-            throw new SemanticException("Variável já declarada.");
+        for (Variable variable : variables) {
+            if (variable.name.equals(token)) {
+                throw new SemanticException("Variável já declarada.");
+            }
         }
-        memory.put(token, new Variable(token, type));
     }
 
-    public void checkVariableDeclared(String token) {
-        if (!isVariableDeclared(token)) {
+    public void checkVariableDeclared(int id) {
+        if (!isVariableDeclared(id)) {
             throw new SemanticException("Variável não foi declarada antes do uso");
         }
     }
 
-    public void checkAssignment(String token, Type exprType) {
-        Variable variable = getVariable(token);
-        if (variable.type.equals(Type.REAL) && exprType.equals(Type.INTEGER)) {
+    public void checkAssignment(int id, Type exprType) {
+        Type type = getType(id);
+        if (type.equals(Type.REAL) && exprType.equals(Type.INTEGER)) {
             return;
         }
-        if (!variable.type.equals(exprType)) {
+        if (!type.equals(exprType)) {
             throw new SemanticException("Erro de atribuição");
         }
     }
 
     public Type checkArithmeticOrLogicalOperation(Type leftType, Type rightType, TokenType op) {
-        if (Arrays.asList(TokenType.OR, TokenType.AND).contains(op)) {
-            return checkLogicalOperation(leftType, rightType);
-        } else if (Arrays.asList(TokenType.ADD, TokenType.SUB, TokenType.DIV, TokenType.MUL).contains(op)) {
-            return checkArithmeticOperation(leftType, rightType);
+        switch (op) {
+            case OR, AND:
+                return checkLogicalOperation(leftType, rightType);
+            case ADD, SUB, DIV, MUL:
+                return checkArithmeticOperation(leftType, rightType);
+            default:
+                throw new SemanticException("Operação inválida");
         }
-        throw new SemanticException("Operação inválida");
+    }
+
+    /**
+     * Type checks any binary operator with a single lookup in a table precomputed from
+     * {@link #checkComparisonOperation} and {@link #checkArithmeticOrLogicalOperation}.
+     */
+    public Type checkBinaryOperation(Type leftType, Type rightType, TokenType op) {
+        int result = OPERATIONS[(op.ordinal() * TYPES.length + leftType.ordinal()) * TYPES.length + rightType.ordinal()];
+        if (result < 0) {
+            throw new SemanticException(OPERATION_ERRORS[-1 - result]);
+        }
+        return TYPES[result];
     }
 
     public void checkUnaryArithmeticOperation(Type type) {
@@ -74,18 +175,20 @@ public class SemanticAnalysis {
     }
 
     public Type checkComparisonOperation(Type leftType, Type rightType, TokenType op) {
-        if (Arrays.asList(TokenType.EQUAL, TokenType.NOT_EQUAL).contains(op)) {
-            if (leftType.equals(rightType)) {
-                return Type.BOOLEAN;
-            }
-            throw new SemanticException("Tipos incompatíveis");
-        } else if (Arrays.asList(TokenType.GREATER_THAN, TokenType.GREATER_EQUAL, TokenType.LOWER_THAN, TokenType.LOWER_EQUAL).contains(op)) {
-            if (leftType.equals(Type.BOOLEAN) || rightType.equals(Type.BOOLEAN)) {
+        switch (op) {
+            case EQUAL, NOT_EQUAL:
+                if (leftType.equals(rightType)) {
+                    return Type.BOOLEAN;
+                }
                 throw new SemanticException("Tipos incompatíveis");
-            }
-            return Type.BOOLEAN;
+            case GREATER_THAN, GREATER_EQUAL, LOWER_THAN, LOWER_EQUAL:
+                if (leftType.equals(Type.BOOLEAN) || rightType.equals(Type.BOOLEAN)) {
+                    throw new SemanticException("Tipos incompatíveis");
+                }
+                return Type.BOOLEAN;
+            default:
+                throw new SemanticException("Operação inválida");
         }
-        throw new SemanticException("Operação inválida");
     }
 
     public void checkCondition(Type type) {
@@ -94,18 +197,30 @@ public class SemanticAnalysis {
         }
     }
 
-    public Variable getVariable(String token) {
-        if (!isVariableDeclared(token)) {
-            throw new SemanticException("Variável não foi declarada antes do uso");
-        }
-        return memory.get(token);
+    public Type getType(int id) {
+        checkVariableDeclared(id);
+        return TYPES[types[id] - 1];
+    }
+
+    public int getSlot(int id) {
+        checkVariableDeclared(id);
+        return slots[id];
+    }
+
+    public Variable getVariable(int id) {
+        return variables.get(getSlot(id));
+    }
+
+    /** Declared variables, indexed by slot. */
+    public List<Variable> getVariables() {
+        return Collections.unmodifiableList(variables);
     }
 
     private boolean isReservedKeyword(String token) {
         return st.contains(token);
     }
 
-    private boolean isVariableDeclared(String token) {
-        return memory.containsKey(token);
+    public boolean isVariableDeclared(int id) {
+        return id >= 0 && id < types.length && types[id] != 0;
     }
 }
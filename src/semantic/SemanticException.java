@@ -1,7 +1,8 @@
 package semantic;
 
+/** Thrown without a stack trace, so failing inputs are cheap to report. */
 public class SemanticException extends RuntimeException {
     public SemanticException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -3,9 +3,11 @@ package semantic;
 public class Variable {
     public final String name;
     public final Type type;
+    public final int slot;
 
-    public Variable(String name, Type type) {
+    public Variable(String name, Type type, int slot) {
         this.name = name;
         this.type = type;
+        this.slot = slot;
     }
 }
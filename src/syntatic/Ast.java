@@ -0,0 +1,157 @@
+package syntatic;
+
+import lexical.TokenBuffer;
+import semantic.Type;
+
+import java.util.Arrays;
+
+/**
+ * Syntax tree stored as parallel primitive arrays, one entry per node: kind, type, first
+ * child, next sibling, token and check token. Nodes are numbered in the order the parser
+ * completes them, so children always come before their parent.
+ *
+ * The token is the one that names the node (the identifier, operator, constant or
+ * keyword). The check token is where the parser stood when it ran the semantic check of
+ * the node, so an error found in a later pass is reported on the same line.
+ *
+ * <pre>
+ * PROGRAM      DECLARATION* STATEMENTS
+ * STATEMENTS   (ASSIGN | IF | REPEAT | READ | WRITE)+
+ * ASSIGN       expression
+ * IF           condition STATEMENTS [STATEMENTS]
+ * REPEAT       STATEMENTS condition
+ * WRITE        expression | TEXT
+ * BINARY       expression expression
+ * NEGATE, NOT  expression
+ * </pre>
+ */
+public class Ast {
+    public static final int NONE = -1;
+    public static final int BYTES_PER_NODE = 2 * Byte.BYTES + 4 * Integer.BYTES;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+    private static final Type[] TYPES = Type.values();
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final TokenBuffer tokens;
+    private byte[] kinds;
+    private byte[] types;
+    private int[] children;
+    private int[] nexts;
+    private int[] tokenIndices;
+    private int[] checks;
+    private int size;
+    private int root;
+
+    public Ast(TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.types = new byte[INITIAL_CAPACITY];
+        this.children = new int[INITIAL_CAPACITY];
+        this.nexts = new int[INITIAL_CAPACITY];
+        this.tokenIndices = new int[INITIAL_CAPACITY];
+        this.checks = new int[INITIAL_CAPACITY];
+        this.root = NONE;
+    }
+
+    public int add(NodeKind kind, int token, Type type, int check, int child) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = (byte) kind.ordinal();
+        types[size] = (byte) (type == null ? 0 : type.ordinal() + 1);
+        children[size] = child;
+        nexts[size] = NONE;
+        tokenIndices[size] = token;
+        checks[size] = check;
+        return size++;
+    }
+
+    public void setType(int node, Type type) {
+        types[node] = (byte) (type == null ? 0 : type.ordinal() + 1);
+    }
+
+    public void setNext(int node, int next) {
+        nexts[node] = next;
+    }
+
+    public void clear() {
+        size = 0;
+        root = NONE;
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    /** Declared type of a DECLARATION or ASSIGN target, result type of an expression, or null. */
+    public Type type(int node) {
+        return types[node] == 0 ? null : TYPES[types[node] - 1];
+    }
+
+    public int child(int node) {
+        return children[node];
+    }
+
+    public int next(int node) {
+        return nexts[node];
+    }
+
+    public int token(int node) {
+        return tokenIndices[node];
+    }
+
+    public int check(int node) {
+        return checks[node];
+    }
+
+    /** Line reported for an error in the check of {@code node}. */
+    public int line(int node) {
+        return tokens.line(checks[node]);
+    }
+
+    public String text(int node) {
+        return tokens.text(tokenIndices[node]);
+    }
+
+    /** Interned identifier id of the token of {@code node}. */
+    public int identifier(int node) {
+        return tokens.value(tokenIndices[node]);
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    public long heapBytes() {
+        return (long) kinds.length * BYTES_PER_NODE;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        types = Arrays.copyOf(types, capacity);
+        children = Arrays.copyOf(children, capacity);
+        nexts = Arrays.copyOf(nexts, capacity);
+        tokenIndices = Arrays.copyOf(tokenIndices, capacity);
+        checks = Arrays.copyOf(checks, capacity);
+    }
+
+    public interface Visitor {
+        void enter(int node);
+
+        void exit(int node);
+    }
+}
@@ -0,0 +1,95 @@
+package syntatic;
+
+import java.util.Arrays;
+
+/**
+ * Depth-first walk over an {@link Ast} that reports every node twice, when it is entered
+ * and when it is left, in source order. The path from the root is kept in an int array
+ * that is reused across walks, so walking allocates nothing once it has grown to the depth
+ * of the tree.
+ */
+public class AstCursor {
+    private final Ast ast;
+    private int[] path;
+    private int depth;
+    private int node;
+    private boolean entering;
+    private boolean started;
+
+    public AstCursor(Ast ast) {
+        this.ast = ast;
+        this.path = new int[32];
+    }
+
+    public void reset(int root) {
+        this.depth = 0;
+        this.node = root;
+        this.entering = true;
+        this.started = false;
+    }
+
+    /** Moves to the next event, returning false once the root has been left. */
+    public boolean next() {
+        if (!started) {
+            started = true;
+            return node != Ast.NONE;
+        }
+        if (entering) {
+            int child = ast.child(node);
+            if (child != Ast.NONE) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                }
+                path[depth++] = node;
+                node = child;
+            } else {
+                entering = false;
+            }
+            return true;
+        }
+        if (depth == 0) {
+            return false;
+        }
+        int next = ast.next(node);
+        if (next != Ast.NONE) {
+            node = next;
+            entering = true;
+        } else {
+            node = path[--depth];
+        }
+        return true;
+    }
+
+    /** Leaves the node just entered without visiting its children or reporting its exit. */
+    public void skipChildren() {
+        entering = false;
+    }
+
+    public int node() {
+        return node;
+    }
+
+    /** Node whose children are being walked, or {@link Ast#NONE} at the root. */
+    public int parent() {
+        return depth == 0 ? Ast.NONE : path[depth - 1];
+    }
+
+    public boolean isEntering() {
+        return entering;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public void walk(int root, Ast.Visitor visitor) {
+        reset(root);
+        while (next()) {
+            if (entering) {
+                visitor.enter(node);
+            } else {
+                visitor.exit(node);
+            }
+        }
+    }
+}
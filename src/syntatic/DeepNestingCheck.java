@@ -0,0 +1,182 @@
+package syntatic;
+
+import lexical.LexicalAnalysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Checks that {@link SyntacticAnalysis#setExplicitStack the explicit-stack parser} gives the
+ * results of the recursive one on deeply nested programs: {@code java syntatic.DeepNestingCheck
+ * [depth...]}, by default at depths 10, 1000 and 100000. Nested {@code if}, {@code repeat},
+ * parentheses, {@code -(} chains and a mix of them are generated valid and with an error
+ * deep inside: an undeclared variable, a type error, a misplaced closing token and the end of
+ * the file. Both parsers must print the same, fail with the same exception on the same
+ * line and token, and build the same tree.
+ *
+ * The recursive parser runs on a thread with a 1 GiB stack and the explicit one on a thread
+ * with 256 KiB, so the check also shows the explicit parser does not depend on the stack. A
+ * depth the recursive parser overflows at is reported as skipped.
+ */
+public class DeepNestingCheck {
+    private static final long RECURSIVE_STACK = 1L << 30;
+    private static final long EXPLICIT_STACK = 256 << 10;
+
+    private enum Shape {
+        IF, REPEAT, PARENTHESES, NEGATIONS, MIXED
+    }
+
+    private enum Fault {
+        NONE, UNDECLARED, TYPE, CLOSING, END_OF_FILE
+    }
+
+    /** What a parse printed, how it ended and the tree it built. */
+    private static class Outcome {
+        final String output;
+        final String error;
+        final int line;
+        final String token;
+        final int[] tree;
+        final boolean overflow;
+
+        Outcome(String output, String error, int line, String token, int[] tree, boolean overflow) {
+            this.output = output;
+            this.error = error;
+            this.line = line;
+            this.token = token;
+            this.tree = tree;
+            this.overflow = overflow;
+        }
+
+        boolean same(Outcome other) {
+            return output.equals(other.output) && (error == null ? other.error == null : error.equals(other.error))
+                    && line == other.line && token.equals(other.token) && Arrays.equals(tree, other.tree);
+        }
+
+        @Override
+        public String toString() {
+            return (error == null ? "ok" : error) + " at line " + line + " [" + token + "]";
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] depths = args.length == 0 ? new int[] {10, 1000, 100_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        int failures = 0;
+        for (int depth : depths) {
+            for (Shape shape : Shape.values()) {
+                for (Fault fault : Fault.values()) {
+                    byte[] source = generate(shape, fault, depth).getBytes(StandardCharsets.UTF_8);
+                    String name = String.format("%-11s %-11s %7d", shape, fault, depth);
+                    Outcome explicit = parse(source, true, EXPLICIT_STACK);
+                    Outcome recursive = parse(source, false, RECURSIVE_STACK);
+                    if (explicit.overflow) {
+                        System.out.println("OVERFLOW " + name + ": explicit stack parser");
+                        failures++;
+                    } else if ((explicit.error == null) != (fault == Fault.NONE)) {
+                        System.out.println("WRONG    " + name + ": " + explicit);
+                        failures++;
+                    } else if (recursive.overflow) {
+                        System.out.println("skipped  " + name + ": recursive parser overflows, explicit " + explicit);
+                    } else if (!explicit.same(recursive)) {
+                        System.out.println("DIFFERS  " + name + ": explicit " + explicit + ", recursive " + recursive);
+                        failures++;
+                    } else {
+                        System.out.println("ok       " + name + ": " + explicit);
+                    }
+                }
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static Outcome parse(byte[] source, boolean explicitStack, long stackSize) throws InterruptedException {
+        Outcome[] outcome = new Outcome[1];
+        Thread thread = new Thread(null, () -> outcome[0] = parse(source, explicitStack),
+                explicitStack ? "explicit" : "recursive", stackSize);
+        thread.start();
+        thread.join();
+        return outcome[0];
+    }
+
+    private static Outcome parse(byte[] source, boolean explicitStack) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        SyntacticAnalysis parser = new SyntacticAnalysis(new LexicalAnalysis(ByteBuffer.wrap(source)));
+        parser.setOutput(new PrintStream(output, true, StandardCharsets.UTF_8));
+        parser.setExplicitStack(explicitStack);
+        parser.setBuildAst(true);
+        String error = null;
+        try {
+            parser.start();
+        } catch (StackOverflowError e) {
+            return new Outcome("", null, 0, "", null, true);
+        } catch (RuntimeException e) {
+            error = e.getClass().getName() + ": " + e.getMessage();
+        }
+        return new Outcome(output.toString(StandardCharsets.UTF_8), error, parser.getLine(),
+                parser.getTokenText(), error == null ? tree(parser.getAst()) : null, false);
+    }
+
+    /** Every field of every node, in the order the nodes were added. */
+    private static int[] tree(Ast ast) {
+        int[] fields = new int[ast.size() * 6 + 1];
+        for (int node = 0; node < ast.size(); node++) {
+            fields[node * 6] = ast.kind(node).ordinal();
+            fields[node * 6 + 1] = ast.type(node) == null ? -1 : ast.type(node).ordinal();
+            fields[node * 6 + 2] = ast.child(node);
+            fields[node * 6 + 3] = ast.next(node);
+            fields[node * 6 + 4] = ast.token(node);
+            fields[node * 6 + 5] = ast.check(node);
+        }
+        fields[fields.length - 1] = ast.root();
+        return fields;
+    }
+
+    /**
+     * A program nesting {@code shape} {@code depth} times, one opening or closing token per
+     * line, with {@code fault} at the innermost level or, for {@link Fault#CLOSING}, halfway out.
+     */
+    private static String generate(Shape shape, Fault fault, int depth) {
+        StringBuilder program = new StringBuilder("app deep\nvar\n    integer x;\n    real y\ninit\n");
+        boolean expression = shape == Shape.PARENTHESES || shape == Shape.NEGATIONS;
+        if (expression) {
+            program.append("x :=\n");
+        }
+        for (int level = 0; level < depth; level++) {
+            program.append(switch (shape) {
+                case IF -> "if x < 1 then\n";
+                case REPEAT -> "repeat\n";
+                case PARENTHESES -> "(\n";
+                case NEGATIONS -> "-(\n";
+                case MIXED -> level % 2 == 0 ? "if (x < (1)) then\n" : "repeat\n";
+            });
+        }
+        program.append(switch (fault) {
+            case UNDECLARED -> expression ? "z\n" : "z := 1\n";
+            case TYPE -> expression ? "1.5\n" : "x := 1.5\n";
+            default -> expression ? "x + 1\n" : "x := x + 1\n";
+        });
+        if (fault == Fault.END_OF_FILE) {
+            return program.toString();
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            boolean repeat = shape == Shape.REPEAT || shape == Shape.MIXED && level % 2 == 1;
+            if (fault == Fault.CLOSING && level == depth / 2) {
+                // The closing token of the other kind of block.
+                program.append(expression ? ";\n" : repeat ? "end\n" : "until x > 0\n");
+            } else if (expression) {
+                program.append(")\n");
+            } else if (repeat) {
+                program.append("until (x > 0)\n");
+            } else if (level % 3 == 0) {
+                program.append("else\ny := y * 2.0\nend\n");
+            } else {
+                program.append("end\n");
+            }
+        }
+        return program.append("return\n").toString();
+    }
+}
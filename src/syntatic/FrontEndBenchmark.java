@@ -0,0 +1,325 @@
+package syntatic;
+
+import com.sun.management.ThreadMXBean;
+import lexical.LexicalAnalysis;
+import lexical.LexicalException;
+import lexical.SourceInput;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the front end on one program, generated by a {@link ProgramGenerator} or read
+ * from a file: {@code java syntatic.FrontEndBenchmark [nextToken] [scan] [parse] [check]
+ * [--file=<file>] [--warmup=3] [--iterations=5] [--time=1000] [--explicit-stack]
+ * [--seed=1] [generator options]}.
+ *
+ * <ul>
+ * <li>{@code nextToken} lexes the program with {@link LexicalAnalysis#nextToken()};</li>
+ * <li>{@code scan} lexes it with {@link LexicalAnalysis#scan()}, which the parser uses;</li>
+ * <li>{@code parse} runs {@link SyntacticAnalysis#start()} with its semantic checks;</li>
+ * <li>{@code check} runs only the semantic checks, over a tree parsed once, on one thread.</li>
+ * </ul>
+ *
+ * Like a JMH throughput benchmark with {@code -prof gc}, every benchmark runs warmup
+ * iterations and then measured ones of {@code time} milliseconds each, and reports tokens
+ * and source bytes per second, the bytes allocated per operation and per second by the
+ * benchmark thread, and the collections that ran. Scores are means over the measured
+ * iterations with their standard deviation. Programs larger than 64 MiB are generated into
+ * a temporary file, which is mapped as {@code --file} is.
+ */
+public class FrontEndBenchmark {
+    private static final List<String> BENCHMARKS = List.of("nextToken", "scan", "parse", "check");
+    private static final long IN_MEMORY = 64 << 20;
+
+    private static long sink;
+
+    private final byte[] bytes;
+    private final Path file;
+    private final long size;
+    private final boolean explicitStack;
+    private final ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> collectors;
+    private long tokens;
+    private int warmup = 3;
+    private int iterations = 5;
+    private long time = 1000;
+
+    FrontEndBenchmark(byte[] bytes, Path file, boolean explicitStack) throws IOException {
+        this.bytes = bytes;
+        this.file = file;
+        this.size = bytes != null ? bytes.length : Files.size(file);
+        this.explicitStack = explicitStack;
+        this.threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> selected = new ArrayList<>();
+        Path file = null;
+        long seed = 1;
+        int warmup = 3;
+        int iterations = 5;
+        long time = 1000;
+        boolean explicitStack = false;
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            if (BENCHMARKS.contains(arg)) {
+                selected.add(arg);
+            } else if (arg.startsWith("--file=")) {
+                file = Path.of(arg.substring("--file=".length()));
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else if (arg.startsWith("--time=")) {
+                time = Long.parseLong(arg.substring("--time=".length()));
+            } else if (arg.equals("--explicit-stack")) {
+                explicitStack = true;
+            } else {
+                options.add(arg);
+            }
+        }
+        ProgramGenerator generator = new ProgramGenerator(seed);
+        for (String option : options) {
+            if (!generator.configure(option)) {
+                System.out.println("Usage: syntatic.FrontEndBenchmark [nextToken] [scan] [parse] [check] "
+                        + "[--file=<file>] [--warmup=3] [--iterations=5] [--time=1000] [--explicit-stack] "
+                        + "[--seed=1] [--size=64k] [--nesting=3] [--identifiers=32] [--expression-depth=3] "
+                        + "[--comments=0.1] [--texts=0.1]");
+                System.exit(1);
+            }
+        }
+        if (selected.isEmpty()) {
+            selected.addAll(BENCHMARKS);
+        }
+
+        byte[] bytes = null;
+        boolean generate = file == null;
+        long start = System.nanoTime();
+        if (file == null && generator.getSize() <= IN_MEMORY) {
+            bytes = generator.generate();
+        } else if (file == null) {
+            file = Files.createTempFile("generated", ".cc");
+            file.toFile().deleteOnExit();
+            try (OutputStream out = Files.newOutputStream(file)) {
+                generator.write(out);
+            }
+        }
+        long generated = System.nanoTime() - start;
+
+        FrontEndBenchmark benchmark = new FrontEndBenchmark(bytes, file, explicitStack);
+        benchmark.warmup = warmup;
+        benchmark.iterations = iterations;
+        benchmark.time = time;
+        benchmark.tokens = benchmark.scan();
+        System.out.printf("program: %d bytes, %d tokens%s%n", benchmark.size, benchmark.tokens,
+                generate ? String.format(", generated in %.2f ms", generated / 1e6) : "");
+        for (String name : selected) {
+            switch (name) {
+                case "nextToken" -> benchmark.run(name, benchmark::nextToken);
+                case "scan" -> benchmark.run(name, benchmark::scan);
+                case "parse" -> benchmark.run(name, benchmark::parse);
+                case "check" -> benchmark.run(name, benchmark.checks());
+            }
+        }
+    }
+
+    long nextToken() {
+        LexicalAnalysis lexer = new LexicalAnalysis(source());
+        long count = 0;
+        TokenType type;
+        while ((type = lexer.nextToken().type) != TokenType.END_OF_FILE && type != TokenType.UNEXPECTED_EOF) {
+            count++;
+        }
+        close(lexer);
+        return count;
+    }
+
+    long scan() {
+        LexicalAnalysis lexer = new LexicalAnalysis(source());
+        long count = 0;
+        TokenType type;
+        while ((type = lexer.scan()) != TokenType.END_OF_FILE && type != TokenType.UNEXPECTED_EOF) {
+            count++;
+        }
+        close(lexer);
+        return count;
+    }
+
+    long parse() {
+        LexicalAnalysis lexer = new LexicalAnalysis(source());
+        SyntacticAnalysis parser = new SyntacticAnalysis(lexer);
+        parser.setOutput(null);
+        parser.setExplicitStack(explicitStack);
+        parser.start();
+        close(lexer);
+        return parser.getLine();
+    }
+
+    /** Parses the program into a tree once, and returns a benchmark of its checks. */
+    LongSupplier checks() {
+        SyntacticAnalysis parser = new SyntacticAnalysis(new LexicalAnalysis(source()));
+        parser.setOutput(null);
+        parser.setExplicitStack(explicitStack);
+        parser.setBuildAst(true);
+        parser.start();
+        Ast ast = parser.getAst();
+        SemanticAnalysis declarations = parser.getSemanticAnalysis().freeze();
+        int list = ast.child(ast.root());
+        while (ast.kind(list) != NodeKind.STATEMENTS) {
+            list = ast.next(list);
+        }
+        int[] statements = new int[64];
+        int count = 0;
+        for (int statement = ast.child(list); statement != Ast.NONE; statement = ast.next(statement)) {
+            if (count == statements.length) {
+                statements = Arrays.copyOf(statements, count * 2);
+            }
+            statements[count++] = statement;
+        }
+        int[] all = statements;
+        int total = count;
+        return () -> {
+            ParallelChecker.Failure failure = new ParallelChecker(ast, declarations, all, total).check();
+            if (failure != null) {
+                throw failure.exception;
+            }
+            return total;
+        };
+    }
+
+    private void run(String name, LongSupplier benchmark) {
+        for (int i = 0; i < warmup; i++) {
+            System.out.printf("%s warmup %d: %s%n", name, i + 1, measure(benchmark));
+        }
+        Sample[] samples = new Sample[iterations];
+        for (int i = 0; i < iterations; i++) {
+            samples[i] = measure(benchmark);
+            System.out.printf("%s iteration %d: %s%n", name, i + 1, samples[i]);
+        }
+        double[] tokenRates = new double[iterations];
+        double[] byteRates = new double[iterations];
+        double[] allocationRates = new double[iterations];
+        double allocated = 0;
+        long ops = 0;
+        long gcs = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < iterations; i++) {
+            tokenRates[i] = samples[i].rate(tokens) / 1e6;
+            byteRates[i] = samples[i].rate(size) / (1 << 20);
+            allocationRates[i] = samples[i].allocated * 1e9 / samples[i].nanos / (1 << 20);
+            allocated += samples[i].allocated;
+            ops += samples[i].ops;
+            gcs += samples[i].gcs;
+            gcMillis += samples[i].gcMillis;
+        }
+        System.out.printf("%-9s %10.2f +- %.2f Mtokens/s %10.2f +- %.2f MB/s %12.1f B/op %10.2f +- %.2f MB/s allocated"
+                        + " %4d GCs %6d ms%n", name, mean(tokenRates), deviation(tokenRates), mean(byteRates),
+                deviation(byteRates), allocated / ops, mean(allocationRates), deviation(allocationRates), gcs, gcMillis);
+    }
+
+    private Sample measure(LongSupplier benchmark) {
+        long gcs = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcs -= collector.getCollectionCount();
+            gcMillis -= collector.getCollectionTime();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        long deadline = start + time * 1_000_000;
+        long ops = 0;
+        long end;
+        do {
+            sink += benchmark.getAsLong();
+            ops++;
+        } while ((end = System.nanoTime()) < deadline);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcs += collector.getCollectionCount();
+            gcMillis += collector.getCollectionTime();
+        }
+        return new Sample(ops, end - start, allocated, gcs, gcMillis);
+    }
+
+    private SourceInput source() {
+        if (bytes != null) {
+            return new SourceInput(ByteBuffer.wrap(bytes));
+        }
+        try {
+            return new SourceInput(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void close(LexicalAnalysis lexer) {
+        try {
+            lexer.close();
+        } catch (LexicalException e) {
+            // Nothing was written; the benchmark goes on.
+        }
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double deviation(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+
+    private class Sample {
+        final long ops;
+        final long nanos;
+        final long allocated;
+        final long gcs;
+        final long gcMillis;
+
+        Sample(long ops, long nanos, long allocated, long gcs, long gcMillis) {
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.gcs = gcs;
+            this.gcMillis = gcMillis;
+        }
+
+        /** Per second, of {@code amount} per operation. */
+        double rate(double amount) {
+            return amount * ops * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ops, %.2f Mtokens/s, %.2f MB/s, %.1f B/op, %d GCs",
+                    ops, rate(tokens) / 1e6, rate(size) / (1 << 20), (double) allocated / ops, gcs);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package syntatic;
+
+import lexical.IncrementalLexer;
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticException;
+
+import java.util.Arrays;
+
+/**
+ * Compiles the tokens of an {@link IncrementalLexer} one top-level statement at a time and
+ * remembers the tokens every statement spans, up to the last one it looked at. After an
+ * edit the statements that end before the changed tokens are kept, parsing and checking
+ * start again at the first one that reaches them and stop as soon as the parser is back at
+ * the start of an old statement that lies entirely after them; the remaining statements
+ * are kept too, moved by the change in the number of tokens.
+ *
+ * Statements only read the declarations, so their outcome only depends on their own
+ * tokens; an edit of the header, up to {@code init}, compiles everything again. Errors are
+ * the ones a full compile reports, on the same token.
+ */
+public class IncrementalParser {
+    private final IncrementalLexer lexer;
+    private final TokenBuffer tokens;
+    private final SyntacticAnalysis parser;
+    private int body;
+    private int[] starts;
+    private int[] ends;
+    private int count;
+    private boolean failed;
+    private RuntimeException error;
+    private int errorPosition;
+    private int parsed;
+
+    public IncrementalParser(IncrementalLexer lexer) {
+        this.lexer = lexer;
+        this.tokens = lexer.getTokens();
+        this.parser = new SyntacticAnalysis(tokens, lexer, true);
+        this.parser.setOutput(null);
+        this.parser.setExplicitStack(true);
+        this.starts = new int[64];
+        this.ends = new int[64];
+        compileAll();
+    }
+
+    /** Compiles again after {@link IncrementalLexer#update} replaced some tokens. */
+    public void update() {
+        int from = lexer.getSpliceStart();
+        int to = lexer.getSpliceEnd();
+        int shift = lexer.getSpliceCount() - (to - from);
+        parsed = 0;
+        if (body < 0) {
+            if (errorPosition >= from) {
+                compileAll();
+            }
+            return;
+        }
+        if (body - 1 >= from) {
+            compileAll();
+            return;
+        }
+
+        int first = Arrays.binarySearch(ends, 0, count, from);
+        first = first < 0 ? -first - 1 : first;
+        if (first == count) {
+            // Every statement and the return after them lie before the change.
+            return;
+        }
+
+        // Parse into fresh arrays, then put them in place of the old statements they replace.
+        int[] oldStarts = starts;
+        int[] oldEnds = ends;
+        int oldCount = count;
+        boolean oldFailed = failed;
+        RuntimeException oldError = error;
+        starts = new int[16];
+        ends = new int[16];
+        count = 0;
+        failed = false;
+        int reuse = oldCount;
+        int next = oldStarts[first];
+        while (true) {
+            int old = next - shift;
+            if (old >= to) {
+                int found = Arrays.binarySearch(oldStarts, first + 1, oldCount, old);
+                if (found > 0) {
+                    reuse = found;
+                    failed = oldFailed;
+                    error = oldError;
+                    break;
+                }
+            }
+            if (!parse(next) || tokens.type(ends[count - 1]) != TokenType.SEMICOLON) {
+                break;
+            }
+            next = ends[count - 1] + 1;
+        }
+
+        int parsedCount = count;
+        int tail = oldCount - reuse;
+        int[] newStarts = oldStarts;
+        int[] newEnds = oldEnds;
+        if (first + parsedCount + tail > oldStarts.length) {
+            newStarts = Arrays.copyOf(oldStarts, Math.max(oldStarts.length * 2, first + parsedCount + tail));
+            newEnds = Arrays.copyOf(oldEnds, newStarts.length);
+        }
+        if (reuse != first + parsedCount) {
+            System.arraycopy(oldStarts, reuse, newStarts, first + parsedCount, tail);
+            System.arraycopy(oldEnds, reuse, newEnds, first + parsedCount, tail);
+        }
+        if (shift != 0) {
+            for (int i = first + parsedCount; i < first + parsedCount + tail; i++) {
+                newStarts[i] += shift;
+                newEnds[i] += shift;
+            }
+        }
+        System.arraycopy(starts, 0, newStarts, first, parsedCount);
+        System.arraycopy(ends, 0, newEnds, first, parsedCount);
+        starts = newStarts;
+        ends = newEnds;
+        count = first + parsedCount + tail;
+        conclude();
+    }
+
+    /** The first error of the program, or null when it compiles. */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /** Index of the token the error was raised on. */
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
+    public int getErrorLine() {
+        return tokens.line(errorPosition);
+    }
+
+    /** Number of top-level statements compiled, up to the first one that failed. */
+    public int getStatementCount() {
+        return count;
+    }
+
+    /** Number of statements the last compilation parsed and checked. */
+    public int getParsedCount() {
+        return parsed;
+    }
+
+    private void compileAll() {
+        parser.getSemanticAnalysis().reset();
+        count = 0;
+        failed = false;
+        parsed = 0;
+        error = null;
+        try {
+            body = parser.header();
+        } catch (SyntacticException | SemanticException e) {
+            body = -1;
+            error = e;
+            errorPosition = parser.position();
+            return;
+        }
+        int next = body;
+        while (parse(next) && tokens.type(ends[count - 1]) == TokenType.SEMICOLON) {
+            next = ends[count - 1] + 1;
+        }
+        conclude();
+    }
+
+    /**
+     * Compiles the statement at token {@code start} and records the last token it looked
+     * at: the token after it, or the one its error was raised on.
+     */
+    private boolean parse(int start) {
+        parsed++;
+        try {
+            add(start, parser.statement(start));
+            return true;
+        } catch (SyntacticException | SemanticException e) {
+            add(start, parser.position());
+            failed = true;
+            error = e;
+            return false;
+        }
+    }
+
+    private void conclude() {
+        if (failed) {
+            errorPosition = ends[count - 1];
+            return;
+        }
+        error = null;
+        try {
+            parser.end(ends[count - 1]);
+        } catch (SyntacticException e) {
+            error = e;
+            errorPosition = parser.position();
+        }
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+}
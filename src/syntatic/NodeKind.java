@@ -0,0 +1,19 @@
+package syntatic;
+
+public enum NodeKind {
+    PROGRAM,
+    DECLARATION,
+    STATEMENTS,
+    ASSIGN,
+    IF,
+    REPEAT,
+    READ,
+    WRITE,
+    TEXT,
+    BINARY,
+    NEGATE,
+    NOT,
+    IDENTIFIER,
+    INTEGER_CONST,
+    REAL_CONST
+}
@@ -0,0 +1,138 @@
+package syntatic;
+
+import lexical.TokenBuffer;
+import semantic.SemanticAnalysis;
+import semantic.SemanticException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Type checks the top-level statements of an {@link Ast} parsed without checks, in
+ * parallel against frozen declarations. Within a statement the checks run in the order the
+ * parser runs them and fill in the node types; across statements the failure with the
+ * lowest index wins, and ranges after a known failure are skipped.
+ */
+class ParallelChecker {
+    private static final int THRESHOLD = 256;
+
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final SemanticAnalysis semanticAnalysis;
+    private final int[] statements;
+    private final int count;
+    private final AtomicInteger firstFailure;
+
+    ParallelChecker(Ast ast, SemanticAnalysis semanticAnalysis, int[] statements, int count) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.semanticAnalysis = semanticAnalysis;
+        this.statements = statements;
+        this.count = count;
+        this.firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+    }
+
+    Failure check(ForkJoinPool pool) {
+        return pool.invoke(new CheckTask(0, count));
+    }
+
+    /** Checks every statement on the calling thread. */
+    Failure check() {
+        return checkRange(0, count);
+    }
+
+    private Failure checkRange(int from, int to) {
+        AstCursor cursor = new AstCursor(ast);
+        for (int i = from; i < to && i < firstFailure.get(); i++) {
+            cursor.reset(statements[i]);
+            while (cursor.next()) {
+                if (cursor.isEntering()) {
+                    continue;
+                }
+                int node = cursor.node();
+                int parent = cursor.parent();
+                boolean condition = parent != Ast.NONE && ast.kind(parent) == NodeKind.IF && ast.child(parent) == node;
+                try {
+                    exit(node);
+                    if (condition) {
+                        semanticAnalysis.checkCondition(ast.type(node));
+                    }
+                } catch (SemanticException e) {
+                    firstFailure.accumulateAndGet(i, Math::min);
+                    return new Failure(i, ast.check(condition ? parent : node), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void exit(int node) {
+        int child = ast.child(node);
+        switch (ast.kind(node)) {
+            case IDENTIFIER -> ast.setType(node, semanticAnalysis.getType(ast.identifier(node)));
+            case BINARY -> ast.setType(node, semanticAnalysis.checkBinaryOperation(ast.type(child),
+                    ast.type(ast.next(child)), tokens.type(ast.token(node))));
+            case NEGATE -> {
+                semanticAnalysis.checkUnaryArithmeticOperation(ast.type(child));
+                ast.setType(node, ast.type(child));
+            }
+            case NOT -> {
+                semanticAnalysis.checkCondition(ast.type(child));
+                ast.setType(node, ast.type(child));
+            }
+            case ASSIGN -> {
+                int identifier = ast.identifier(node);
+                semanticAnalysis.checkVariableDeclared(identifier);
+                semanticAnalysis.checkAssignment(identifier, ast.type(child));
+                ast.setType(node, semanticAnalysis.getType(identifier));
+            }
+            case REPEAT -> semanticAnalysis.checkCondition(ast.type(ast.next(child)));
+            default -> {
+            }
+        }
+    }
+
+    static class Failure {
+        final int statement;
+        final int check;
+        final RuntimeException exception;
+
+        Failure(int statement, int check, RuntimeException exception) {
+            this.statement = statement;
+            this.check = check;
+            this.exception = exception;
+        }
+    }
+
+    private class CheckTask extends RecursiveTask<Failure> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        CheckTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Failure compute() {
+            if (to - from <= THRESHOLD) {
+                return checkRange(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CheckTask right = new CheckTask(middle, to);
+            right.fork();
+            Failure failure = new CheckTask(from, middle).compute();
+            if (failure != null) {
+                // The right half can only hold later failures.
+                if (!right.tryUnfork()) {
+                    right.join();
+                }
+                return failure;
+            }
+            return right.join();
+        }
+    }
+}
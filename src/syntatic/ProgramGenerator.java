@@ -0,0 +1,360 @@
+package syntatic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes random programs that pass the front end, for benchmarks: the same seed and settings
+ * always give the same bytes. Top-level statements are added until the program reaches
+ * {@link #setSize its size}, so it scales from a few kilobytes to gigabytes while being
+ * streamed out. Statements are assignments, {@code read}, {@code write} of expressions or
+ * texts and {@code if} and {@code repeat} blocks nested up to a depth; every expression is
+ * well typed. The programs are not meant to be run: they read input and loop at random.
+ *
+ * {@code java syntatic.ProgramGenerator <file> [--size=64k] [--seed=1] [--nesting=3]
+ * [--identifiers=32] [--expression-depth=3] [--comments=0.1] [--texts=0.1]}
+ */
+public class ProgramGenerator {
+    private static final String[] NAMES = {
+            "a", "b", "i", "j", "n", "x", "y", "sum", "total", "count", "value", "index", "tmp", "rate",
+            "acc", "step", "limit", "width", "height", "result"
+    };
+    private static final String[] WORDS = {
+            "the", "value", "of", "is", "read", "from", "input", "and", "then", "printed", "loop", "until",
+            "done", "total", "average", "result", "Digite", "um", "valor", "para", "calcular", "soma", "média"
+    };
+    private static final String[] ARITHMETIC = {" + ", " - ", " * ", " / "};
+    private static final String[] ORDER = {" < ", " <= ", " > ", " >= "};
+    private static final String[] EQUALITY = {" = ", " != "};
+    private static final String[] LOGICAL = {" && ", " || "};
+
+    private final long seed;
+    private final Random random;
+    private long size = 64 << 10;
+    private int nesting = 3;
+    private int identifiers = 32;
+    private int expressionDepth = 3;
+    private double commentDensity = 0.1;
+    private double textDensity = 0.1;
+    private String[] integers;
+    private String[] reals;
+    private OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int count;
+    private long written;
+
+    public ProgramGenerator(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: syntatic.ProgramGenerator <file> [--size=64k] [--seed=1] [--nesting=3] "
+                    + "[--identifiers=32] [--expression-depth=3] [--comments=0.1] [--texts=0.1]");
+            System.exit(1);
+        }
+        long seed = 1;
+        for (String arg : args) {
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+        }
+        ProgramGenerator generator = new ProgramGenerator(seed);
+        for (String arg : args) {
+            if (arg.startsWith("--") && !arg.startsWith("--seed=") && !generator.configure(arg)) {
+                System.out.println("Unknown option: " + arg);
+                System.exit(1);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(Path.of(args[0]))) {
+            generator.write(out);
+        }
+    }
+
+    /**
+     * Applies a {@code --size}, {@code --nesting}, {@code --identifiers},
+     * {@code --expression-depth}, {@code --comments} or {@code --texts} option, and returns
+     * false for any other argument.
+     */
+    public boolean configure(String option) {
+        int equals = option.indexOf('=');
+        if (equals < 0) {
+            return false;
+        }
+        String value = option.substring(equals + 1);
+        switch (option.substring(0, equals)) {
+            case "--size" -> setSize(parseSize(value));
+            case "--nesting" -> setNesting(Integer.parseInt(value));
+            case "--identifiers" -> setIdentifiers(Integer.parseInt(value));
+            case "--expression-depth" -> setExpressionDepth(Integer.parseInt(value));
+            case "--comments" -> setCommentDensity(Double.parseDouble(value));
+            case "--texts" -> setTextDensity(Double.parseDouble(value));
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Parses a byte count with an optional {@code k}, {@code m} or {@code g} suffix. */
+    public static long parseSize(String value) {
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? value : value.substring(0, value.length() - 1)) << shift;
+    }
+
+    /** Size the program reaches before it is closed; it ends with one statement more. */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /** Deepest nesting of {@code if} and {@code repeat} blocks. */
+    public void setNesting(int nesting) {
+        this.nesting = nesting;
+    }
+
+    /** Number of variables declared and used, half integers and half reals; at least 2. */
+    public void setIdentifiers(int identifiers) {
+        if (identifiers < 2) {
+            throw new IllegalArgumentException("At least 2 identifiers are needed");
+        }
+        this.identifiers = identifiers;
+    }
+
+    /** Deepest nesting of parentheses in an expression. */
+    public void setExpressionDepth(int expressionDepth) {
+        this.expressionDepth = expressionDepth;
+    }
+
+    /** Chance that a statement has a comment line before it. */
+    public void setCommentDensity(double commentDensity) {
+        this.commentDensity = commentDensity;
+    }
+
+    /** Chance that a statement writes a text. */
+    public void setTextDensity(double textDensity) {
+        this.textDensity = textDensity;
+    }
+
+    public byte[] generate() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(size + 4096, Integer.MAX_VALUE - 8));
+        try {
+            write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public void write(OutputStream out) throws IOException {
+        this.out = out;
+        random.setSeed(seed);
+        count = 0;
+        written = 0;
+        integers = new String[identifiers / 2];
+        reals = new String[identifiers - integers.length];
+        for (int i = 0; i < identifiers; i++) {
+            String name = NAMES[random.nextInt(NAMES.length)] + i;
+            if (i % 2 == 0) {
+                reals[i / 2] = name;
+            } else {
+                integers[i / 2] = name;
+            }
+        }
+
+        print("app generated\nvar\n");
+        declare("integer", integers);
+        print(";\n");
+        declare("real", reals);
+        print("\ninit\n");
+        statement(1, nesting);
+        while (written + count < size) {
+            print(";\n");
+            statement(1, nesting);
+        }
+        print("\nreturn\n");
+        flush();
+        out.flush();
+        this.out = null;
+    }
+
+    private void declare(String type, String[] names) throws IOException {
+        print("    ");
+        print(type);
+        for (int i = 0; i < names.length; i++) {
+            print(i == 0 ? " " : i % 8 == 0 ? ",\n        " : ", ");
+            print(names[i]);
+        }
+    }
+
+    private void statement(int level, int depth) throws IOException {
+        if (random.nextDouble() < commentDensity) {
+            indent(level);
+            print("%");
+            words(1 + random.nextInt(8));
+            print("\n");
+        }
+        indent(level);
+        if (random.nextDouble() < textDensity) {
+            print("write({");
+            words(1 + random.nextInt(12));
+            print("})");
+            return;
+        }
+        int kind = random.nextInt(20);
+        if (depth > 0 && kind < 3) {
+            print("if ");
+            condition(expressionDepth);
+            print(" then\n");
+            block(level + 1, depth - 1);
+            if (random.nextBoolean()) {
+                print("\n");
+                indent(level);
+                print("else\n");
+                block(level + 1, depth - 1);
+            }
+            print("\n");
+            indent(level);
+            print("end");
+        } else if (depth > 0 && kind < 5) {
+            print("repeat\n");
+            block(level + 1, depth - 1);
+            print("\n");
+            indent(level);
+            print("until ");
+            condition(expressionDepth);
+        } else if (kind < 7) {
+            print("read(");
+            print(variable(random.nextBoolean()));
+            print(")");
+        } else if (kind < 10) {
+            print("write(");
+            expression(true, expressionDepth);
+            print(")");
+        } else {
+            // An integer variable only takes integer expressions; a real one takes both.
+            boolean real = random.nextBoolean();
+            print(variable(real));
+            print(" := ");
+            expression(real, expressionDepth);
+        }
+    }
+
+    private void block(int level, int depth) throws IOException {
+        statement(level, depth);
+        for (int i = random.nextInt(3); i > 0; i--) {
+            print(";\n");
+            statement(level, depth);
+        }
+    }
+
+    /** A boolean expression: comparisons joined by {@code &&}, {@code ||} and {@code !}. */
+    private void condition(int depth) throws IOException {
+        int kind = random.nextInt(8);
+        if (depth > 0 && kind == 0) {
+            print("!(");
+            condition(depth - 1);
+            print(")");
+        } else if (depth > 0 && kind < 3) {
+            print("(");
+            condition(depth - 1);
+            print(")");
+            print(LOGICAL[random.nextInt(LOGICAL.length)]);
+            print("(");
+            condition(depth - 1);
+            print(")");
+        } else if (kind < 6) {
+            expression(true, depth);
+            print(ORDER[random.nextInt(ORDER.length)]);
+            expression(true, depth);
+        } else {
+            // Equality needs both sides of the same type, so both are integers.
+            expression(false, depth);
+            print(EQUALITY[random.nextInt(EQUALITY.length)]);
+            expression(false, depth);
+        }
+    }
+
+    /** An arithmetic expression, integer unless {@code real}. */
+    private void expression(boolean real, int depth) throws IOException {
+        term(real, depth);
+        for (int i = depth > 0 ? random.nextInt(3) : 0; i > 0; i--) {
+            print(ARITHMETIC[random.nextInt(ARITHMETIC.length)]);
+            term(real, depth);
+        }
+    }
+
+    private void term(boolean real, int depth) throws IOException {
+        int kind = random.nextInt(8);
+        if (depth > 0 && kind < 2) {
+            print(kind == 0 ? "(" : "-(");
+            expression(real, depth - 1);
+            print(")");
+        } else if (kind == 2) {
+            print("-");
+            operand(real);
+        } else {
+            operand(real);
+        }
+    }
+
+    private void operand(boolean real) throws IOException {
+        int kind = random.nextInt(4);
+        if (kind == 0) {
+            print(Integer.toString(random.nextInt(1000)));
+        } else if (kind == 1 && real) {
+            print(random.nextInt(1000) + "." + random.nextInt(100));
+        } else {
+            print(variable(real && random.nextBoolean()));
+        }
+    }
+
+    private String variable(boolean real) {
+        String[] names = real ? reals : integers;
+        return names[random.nextInt(names.length)];
+    }
+
+    private void words(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            print(" ");
+            print(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+
+    private void indent(int level) throws IOException {
+        for (int i = 0; i < level; i++) {
+            print("    ");
+        }
+    }
+
+    private void print(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (count + 3 > buffer.length) {
+                flush();
+            }
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else {
+                buffer[count++] = (byte) (0xC0 | c >> 6);
+                buffer[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, count);
+        written += count;
+        count = 0;
+    }
+}
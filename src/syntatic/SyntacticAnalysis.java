@@ -1,52 +1,249 @@
 package syntatic;
 
-import lexical.Lexeme;
 import lexical.LexicalAnalysis;
+import lexical.TokenBuffer;
+import lexical.TokenSource;
 import lexical.TokenType;
 import semantic.SemanticAnalysis;
 import semantic.Type;
 
+import java.io.PrintStream;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 public class SyntacticAnalysis {
-    private final LexicalAnalysis lex;
+    private static final int COMPARISON = 1;
+    private static final int ADDITIVE = 2;
+    private static final int MULTIPLICATIVE = 3;
+    private static final byte[] PRECEDENCE = new byte[TokenType.values().length];
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Type[] TYPES = Type.values();
+
+    // Frames of the explicit-stack mode: what is left to do when the construct on top returns.
+    private static final int STMT_LIST = 0;
+    private static final int IF_THEN = 1;
+    private static final int IF_ELSE = 2;
+    private static final int REPEAT = 3;
+    private static final int NEGATE = 4;
+    private static final int NOT = 5;
+    private static final int PARENTHESES = 6;
+    private static final int BINARY = 7;
+    private static final int FRAME_SIZE = 6;
+
+    static {
+        for (TokenType op : new TokenType[]{TokenType.EQUAL, TokenType.GREATER_THAN, TokenType.GREATER_EQUAL,
+                TokenType.LOWER_THAN, TokenType.LOWER_EQUAL, TokenType.NOT_EQUAL}) {
+            PRECEDENCE[op.ordinal()] = COMPARISON;
+        }
+        for (TokenType op : new TokenType[]{TokenType.ADD, TokenType.SUB, TokenType.OR}) {
+            PRECEDENCE[op.ordinal()] = ADDITIVE;
+        }
+        for (TokenType op : new TokenType[]{TokenType.MUL, TokenType.DIV, TokenType.AND}) {
+            PRECEDENCE[op.ordinal()] = MULTIPLICATIVE;
+        }
+    }
+
+    private final TokenBuffer tokens;
+    private final TokenSource source;
     private final SemanticAnalysis semanticAnalysis;
-    private Lexeme current;
+    private final boolean retainTokens;
+    private PrintStream out;
+    private Ast ast;
+    private int node;
+    private int firstDeclaration;
+    private int lastDeclaration;
+    private int pos;
+    private TokenType current;
+    private boolean explicitStack;
+    private ForkJoinPool checkPool;
+    private boolean deferChecks;
+    private int[] frames;
+    private int depth;
 
     public SyntacticAnalysis(LexicalAnalysis lex) {
-        this.lex = lex;
-        this.current = lex.nextToken();
+        this(new TokenBuffer(lex.getSource()), lex, false);
+    }
+
+    public SyntacticAnalysis(TokenBuffer tokens, TokenSource source, boolean retainTokens) {
+        this.tokens = tokens;
+        this.source = source;
+        this.retainTokens = retainTokens;
         this.semanticAnalysis = new SemanticAnalysis();
+        this.out = System.out;
+        this.pos = tokens.begin() - 1;
+        advance();
+    }
+
+    /** Stream that error messages are printed to, {@code System.out} by default, or null. */
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Parses nested statement lists and parenthesized expressions with a stack on the heap
+     * instead of recursive calls, so nesting depth is bounded by memory rather than by the
+     * thread stack. Tokens are consumed and semantic checks run in the same order as in the
+     * recursive parser, so results and error lines are identical.
+     */
+    public void setExplicitStack(boolean explicitStack) {
+        this.explicitStack = explicitStack;
+    }
+
+    /**
+     * Builds an {@link Ast} of the program while parsing. The tree refers to tokens by
+     * index, so every token is retained in the buffer.
+     */
+    public void setBuildAst(boolean buildAst) {
+        this.ast = buildAst ? new Ast(tokens) : null;
+    }
+
+    /**
+     * Type checks the statement list on {@code pool}. Declarations are checked while parsing
+     * as usual, then the statements are parsed without checks into an {@link Ast} and every
+     * top-level statement is checked against the frozen declarations by a
+     * {@link ParallelChecker}. Errors are reported as the serial parser reports them: the
+     * first semantic error in a statement before the first syntax error wins, and a statement
+     * that fails to parse is parsed again with checks to find out which error comes first.
+     */
+    public void setParallelChecks(ForkJoinPool pool) {
+        this.checkPool = pool;
+        if (pool != null && ast == null) {
+            ast = new Ast(tokens);
+        }
+    }
+
+    public Ast getAst() {
+        return ast;
+    }
+
+    public SemanticAnalysis getSemanticAnalysis() {
+        return semanticAnalysis;
     }
 
     public void start() {
         try {
             program();
         } catch (RuntimeException e) {
-            System.out.printf("Erro na linha %02d\n", lex.getLine());
+            if (out != null) {
+                out.printf("Erro na linha %02d\n", tokens.line(pos));
+            }
             throw e;
+        } finally {
+            source.finish();
+        }
+    }
+
+    /**
+     * Parses another program from the source, which must have been reset to its start,
+     * reusing the token buffer, the semantic analysis and the parser state.
+     */
+    public void reset() {
+        tokens.clear();
+        semanticAnalysis.reset();
+        if (ast != null) {
+            ast.clear();
+        }
+        deferChecks = false;
+        depth = 0;
+        pos = tokens.begin() - 1;
+        advance();
+    }
+
+    /** Line of the current token, which is the line an error is reported on. */
+    public int getLine() {
+        return tokens.line(pos);
+    }
+
+    public TokenType getToken() {
+        return current;
+    }
+
+    public String getTokenText() {
+        return tokens.text(pos);
+    }
+
+    /**
+     * Parses and checks the program from its first token up to {@code init}, and returns
+     * the index of the first statement token. Used with {@link #statement(int)} and
+     * {@link #end(int)} by the {@link IncrementalParser}, on a buffer holding every token.
+     */
+    int header() {
+        seek(tokens.begin());
+        consume(TokenType.APP);
+        consume(TokenType.IDENTIFIER);
+        declarations();
+        consume(TokenType.INIT);
+        return pos;
+    }
+
+    /**
+     * Parses and checks the top-level statement at token {@code start}, and returns the
+     * index of the token after it.
+     */
+    int statement(int start) {
+        seek(start);
+        if (explicitStack) {
+            iterativeStmtList(true);
+        } else {
+            stmt();
         }
+        return pos;
+    }
+
+    /** Checks that the statement list ends with {@code return} at token {@code index}. */
+    void end(int index) {
+        seek(index);
+        consume(TokenType.RETURN);
+    }
+
+    /** Index of the current token, which is the token an error was raised on. */
+    int position() {
+        return pos;
+    }
+
+    private void seek(int index) {
+        depth = 0;
+        pos = index;
+        current = tokens.type(pos);
     }
 
     private void program() {
         consume(TokenType.APP);
+        int name = pos;
         consume(TokenType.IDENTIFIER);
         body();
+        if (ast != null) {
+            ast.setRoot(add(NodeKind.PROGRAM, name, null, Ast.NONE,
+                    firstDeclaration == Ast.NONE ? node : firstDeclaration));
+        }
     }
 
     private void body() {
-        if (current.type == TokenType.VAR) {
+        declarations();
+        consume(TokenType.INIT);
+        if (checkPool != null) {
+            parallelStmtList();
+        } else if (explicitStack) {
+            iterativeStmtList(false);
+        } else {
+            stmtList();
+        }
+        link(lastDeclaration, node);
+        consume(TokenType.RETURN);
+    }
+
+    private void declarations() {
+        firstDeclaration = Ast.NONE;
+        lastDeclaration = Ast.NONE;
+        if (current == TokenType.VAR) {
             consume(TokenType.VAR);
             declList();
         }
-        consume(TokenType.INIT);
-        stmtList();
-        consume(TokenType.RETURN);
     }
 
     private void declList() {
         decl();
-        while (current.type == TokenType.SEMICOLON) {
+        while (current == TokenType.SEMICOLON) {
             consume(TokenType.SEMICOLON);
             decl();
         }
@@ -58,21 +255,35 @@ public class SyntacticAnalysis {
     }
 
     private void identList(Type type) {
-        semanticAnalysis.addIdentifier(current.token, type);
+        declare(type);
         consume(TokenType.IDENTIFIER);
-        while (current.type == TokenType.COMMA) {
+        while (current == TokenType.COMMA) {
             consume(TokenType.COMMA);
-            semanticAnalysis.addIdentifier(current.token, type);
+            declare(type);
             consume(TokenType.IDENTIFIER);
         }
     }
 
+    private void declare(Type type) {
+        if (current == TokenType.IDENTIFIER) {
+            semanticAnalysis.addIdentifier(tokens.value(pos), tokens.text(pos), type);
+            int declaration = add(NodeKind.DECLARATION, pos, type, Ast.NONE, Ast.NONE);
+            if (firstDeclaration == Ast.NONE) {
+                firstDeclaration = declaration;
+            }
+            link(lastDeclaration, declaration);
+            lastDeclaration = declaration;
+        } else {
+            semanticAnalysis.checkIdentifierName(tokens.text(pos));
+        }
+    }
+
     private Type type() {
         Type type = null;
-        if (current.type == TokenType.INTEGER) {
+        if (current == TokenType.INTEGER) {
             consume(TokenType.INTEGER);
             type = Type.INTEGER;
-        } else if (current.type == TokenType.REAL) {
+        } else if (current == TokenType.REAL) {
             consume(TokenType.REAL);
             type = Type.REAL;
         } else {
@@ -83,14 +294,72 @@ public class SyntacticAnalysis {
 
     private void stmtList() {
         stmt();
-        while (current.type == TokenType.SEMICOLON) {
+        int first = node;
+        int last = node;
+        while (current == TokenType.SEMICOLON) {
             consume(TokenType.SEMICOLON);
             stmt();
+            link(last, node);
+            last = node;
         }
+        node = add(NodeKind.STATEMENTS, Ast.NONE, null, Ast.NONE, first);
+    }
+
+    private void parallelStmtList() {
+        SemanticAnalysis declarations = semanticAnalysis.freeze();
+        int[] starts = new int[64];
+        int[] statements = new int[64];
+        int count = 0;
+        boolean parsed = false;
+        deferChecks = true;
+        try {
+            while (true) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    statements = Arrays.copyOf(statements, count * 2);
+                }
+                starts[count] = pos;
+                if (explicitStack) {
+                    iterativeStmtList(true);
+                } else {
+                    stmt();
+                }
+                if (count > 0) {
+                    link(statements[count - 1], node);
+                }
+                statements[count++] = node;
+                if (current != TokenType.SEMICOLON) {
+                    break;
+                }
+                consume(TokenType.SEMICOLON);
+            }
+            parsed = true;
+        } catch (SyntacticException e) {
+            // Statement count failed to parse; the statements before it are complete.
+        } finally {
+            deferChecks = false;
+        }
+
+        ParallelChecker.Failure failure = new ParallelChecker(ast, declarations, statements, count).check(checkPool);
+        if (failure != null) {
+            pos = failure.check;
+            current = tokens.type(pos);
+            throw failure.exception;
+        }
+        if (!parsed) {
+            pos = starts[count];
+            current = tokens.type(pos);
+            if (explicitStack) {
+                iterativeStmtList(false);
+            } else {
+                stmtList();
+            }
+        }
+        node = add(NodeKind.STATEMENTS, Ast.NONE, null, Ast.NONE, statements[0]);
     }
 
     private void stmt() {
-        switch (current.type) {
+        switch (current) {
             case IDENTIFIER -> assignStmt();
             case IF -> ifStmt();
             case REPEAT -> repeatStmt();
@@ -101,55 +370,74 @@ public class SyntacticAnalysis {
     }
 
     private void assignStmt() {
-        String identifier = current.token;
+        int token = pos;
+        int identifier = tokens.value(pos);
         consume(TokenType.IDENTIFIER);
         consume(TokenType.ASSIGN);
         Type type = simpleExpr();
-        semanticAnalysis.checkVariableDeclared(identifier);
-        semanticAnalysis.checkAssignment(identifier, type);
+        node = add(NodeKind.ASSIGN, token, checkAssignment(identifier, type), pos, node);
     }
 
     private void ifStmt() {
+        int token = pos;
         consume(TokenType.IF);
         Type conditionType = condition();
-        semanticAnalysis.checkCondition(conditionType);
+        int condition = node;
+        int check = pos;
+        checkCondition(conditionType);
         consume(TokenType.THEN);
         stmtList();
-        if (current.type == TokenType.ELSE) {
+        link(condition, node);
+        if (current == TokenType.ELSE) {
+            int then = node;
             consume(TokenType.ELSE);
             stmtList();
+            link(then, node);
         }
+        endIf(token, check, condition);
+    }
+
+    private void endIf(int token, int check, int condition) {
         consume(TokenType.END);
+        node = add(NodeKind.IF, token, null, check, condition);
     }
 
     private void repeatStmt() {
+        int token = pos;
         consume(TokenType.REPEAT);
         stmtList();
-        stmtSuffix();
+        stmtSuffix(token, node);
     }
 
-    private void stmtSuffix() {
+    private void stmtSuffix(int token, int body) {
         consume(TokenType.UNTIL);
         Type conditionType = condition();
-        semanticAnalysis.checkCondition(conditionType);
+        link(body, node);
+        int check = pos;
+        checkCondition(conditionType);
+        node = add(NodeKind.REPEAT, token, null, check, body);
     }
 
     private void readStmt() {
         consume(TokenType.READ);
         consume(TokenType.OPEN_PAR);
+        int token = pos;
         consume(TokenType.IDENTIFIER);
         consume(TokenType.CLOSE_PAR);
+        node = add(NodeKind.READ, token, null, Ast.NONE, Ast.NONE);
     }
 
     private void writeStmt() {
+        int token = pos;
         consume(TokenType.WRITE);
         consume(TokenType.OPEN_PAR);
         writable();
         consume(TokenType.CLOSE_PAR);
+        node = add(NodeKind.WRITE, token, null, Ast.NONE, node);
     }
 
     private void writable() {
-        switch (current.type) {
+        switch (current) {
             case IDENTIFIER:
             case IF:
             case INTEGER_CONST:
@@ -172,55 +460,51 @@ public class SyntacticAnalysis {
     }
 
     private Type expression() {
-        Type leftType = simpleExpr();
-        while (Arrays.asList(
-                TokenType.EQUAL,
-                TokenType.GREATER_THAN,
-                TokenType.GREATER_EQUAL,
-                TokenType.LOWER_THAN,
-                TokenType.LOWER_EQUAL,
-                TokenType.NOT_EQUAL
-        ).contains(current.type)) {
-            TokenType op = current.type;
-            advance();
-            Type rightType = simpleExpr();
-            leftType = semanticAnalysis.checkComparisonOperation(leftType, rightType, op);
-        }
-        return leftType;
+        return binaryExpr(COMPARISON);
     }
 
     private Type simpleExpr() {
-        Type leftType = term();
-        while (Arrays.asList(TokenType.ADD, TokenType.SUB, TokenType.OR).contains(current.type)) {
-            TokenType op = current.type;
-            advance();
-            Type rightType = term();
-            leftType = semanticAnalysis.checkArithmeticOrLogicalOperation(leftType, rightType, op);
-        }
-        return leftType;
+        return binaryExpr(ADDITIVE);
     }
 
-    private Type term() {
+    /**
+     * Precedence climbing over the three binary levels of the grammar (expression,
+     * simpleExpr and term). Every level is left associative, so an operand is parsed
+     * with the next higher minimum precedence.
+     */
+    private Type binaryExpr(int minPrecedence) {
+        if (explicitStack) {
+            return iterativeBinaryExpr(minPrecedence);
+        }
         Type leftType = factorA();
-        while (Arrays.asList(TokenType.MUL, TokenType.DIV, TokenType.AND).contains(current.type)) {
-            TokenType op = current.type;
+        int left = node;
+        int precedence;
+        while ((precedence = PRECEDENCE[current.ordinal()]) >= minPrecedence) {
+            int token = pos;
+            TokenType op = current;
             advance();
-            Type rightType = factorA();
-            leftType = semanticAnalysis.checkArithmeticOrLogicalOperation(leftType, rightType, op);
+            Type rightType = binaryExpr(precedence + 1);
+            link(left, node);
+            leftType = checkBinaryOperation(leftType, rightType, op);
+            left = add(NodeKind.BINARY, token, leftType, pos, left);
         }
+        node = left;
         return leftType;
     }
 
     private Type factorA() {
         Type type;
-        if (current.type == TokenType.SUB) {
+        int token = pos;
+        if (current == TokenType.SUB) {
             consume(TokenType.SUB);
             type = factor();
-            semanticAnalysis.checkUnaryArithmeticOperation(type);
-        } else if (current.type == TokenType.NOT) {
+            checkUnaryArithmeticOperation(type);
+            node = add(NodeKind.NEGATE, token, type, pos, node);
+        } else if (current == TokenType.NOT) {
             consume(TokenType.NOT);
             type = factor();
-            semanticAnalysis.checkCondition(type);
+            checkCondition(type);
+            node = add(NodeKind.NOT, token, type, pos, node);
         } else {
             type = factor();
         }
@@ -229,17 +513,21 @@ public class SyntacticAnalysis {
 
     private Type factor() {
         Type type = null;
-        if (current.type == TokenType.IDENTIFIER) {
-            String identifier = current.token;
+        int token = pos;
+        if (current == TokenType.IDENTIFIER) {
+            int identifier = tokens.value(pos);
             consume(TokenType.IDENTIFIER);
-            type = semanticAnalysis.getVariable(identifier).type;
-        } else if (current.type == TokenType.INTEGER_CONST) {
+            type = variableType(identifier);
+            node = add(NodeKind.IDENTIFIER, token, type, pos, Ast.NONE);
+        } else if (current == TokenType.INTEGER_CONST) {
             consume(TokenType.INTEGER_CONST);
             type = Type.INTEGER;
-        } else if (current.type == TokenType.REAL_CONST) {
+            node = add(NodeKind.INTEGER_CONST, token, type, Ast.NONE, Ast.NONE);
+        } else if (current == TokenType.REAL_CONST) {
             consume(TokenType.REAL_CONST);
             type = Type.REAL;
-        } else if (current.type == TokenType.OPEN_PAR) {
+            node = add(NodeKind.REAL_CONST, token, type, Ast.NONE, Ast.NONE);
+        } else if (current == TokenType.OPEN_PAR) {
             consume(TokenType.OPEN_PAR);
             type = expression();
             consume(TokenType.CLOSE_PAR);
@@ -250,27 +538,262 @@ public class SyntacticAnalysis {
     }
 
     private void literal() {
+        int token = pos;
         consume(TokenType.TEXT);
+        node = add(NodeKind.TEXT, token, null, Ast.NONE, Ast.NONE);
+    }
+
+    /**
+     * stmtList with if and repeat bodies unrolled onto the frame stack. A frame is pushed
+     * where the recursive parser would call stmtList and popped where that call returns. A
+     * STMT_LIST frame holds the first and last statement node of the list, an IF frame the
+     * if token, check token, condition node and then node, a REPEAT frame the repeat token.
+     * With {@code single} only one statement is parsed and left in {@code node}.
+     */
+    private void iterativeStmtList(boolean single) {
+        int base = depth;
+        push(STMT_LIST, Ast.NONE, Ast.NONE, 0, 0, 0);
+        while (true) {
+            switch (current) {
+                case IDENTIFIER -> assignStmt();
+                case IF -> {
+                    int token = pos;
+                    consume(TokenType.IF);
+                    Type conditionType = condition();
+                    int condition = node;
+                    int check = pos;
+                    checkCondition(conditionType);
+                    consume(TokenType.THEN);
+                    push(IF_THEN, token, check, condition, Ast.NONE, 0);
+                    push(STMT_LIST, Ast.NONE, Ast.NONE, 0, 0, 0);
+                    continue;
+                }
+                case REPEAT -> {
+                    int token = pos;
+                    consume(TokenType.REPEAT);
+                    push(REPEAT, token, 0, 0, 0, 0);
+                    push(STMT_LIST, Ast.NONE, Ast.NONE, 0, 0, 0);
+                    continue;
+                }
+                case READ -> readStmt();
+                case WRITE -> writeStmt();
+                default -> showError();
+            }
+
+            // A statement is complete: continue its list or unwind the lists that end here.
+            while (true) {
+                int list = depth - FRAME_SIZE;
+                if (single && list == base) {
+                    depth = base;
+                    return;
+                }
+                if (frames[list + 1] == Ast.NONE) {
+                    frames[list + 1] = node;
+                } else {
+                    link(frames[list + 2], node);
+                }
+                frames[list + 2] = node;
+                if (current == TokenType.SEMICOLON) {
+                    consume(TokenType.SEMICOLON);
+                    break;
+                }
+                depth = list;
+                node = add(NodeKind.STATEMENTS, Ast.NONE, null, Ast.NONE, frames[list + 1]);
+                if (depth == base) {
+                    return;
+                }
+                int frame = depth - FRAME_SIZE;
+                int kind = frames[frame];
+                int token = frames[frame + 1];
+                int check = frames[frame + 2];
+                int condition = frames[frame + 3];
+                if (kind == IF_THEN) {
+                    link(condition, node);
+                    if (current == TokenType.ELSE) {
+                        consume(TokenType.ELSE);
+                        frames[frame] = IF_ELSE;
+                        frames[frame + 4] = node;
+                        push(STMT_LIST, Ast.NONE, Ast.NONE, 0, 0, 0);
+                        break;
+                    }
+                } else if (kind == IF_ELSE) {
+                    link(frames[frame + 4], node);
+                }
+                depth = frame;
+                if (kind == REPEAT) {
+                    stmtSuffix(token, node);
+                } else {
+                    endIf(token, check, condition);
+                }
+            }
+        }
+    }
+
+    /**
+     * binaryExpr with operands, unary operators and parentheses kept on the frame stack. A
+     * BINARY frame holds the minimum precedence, the left operand type, the pending operator
+     * (-1 before the first operand returns), the left operand node and the operator token;
+     * a NEGATE or NOT frame holds the operator token.
+     */
+    private Type iterativeBinaryExpr(int minPrecedence) {
+        int base = depth;
+        push(BINARY, minPrecedence, -1, -1, Ast.NONE, 0);
+        while (true) {
+            // Descend to the next primary, pushing the operators in front of it.
+            if (current == TokenType.SUB) {
+                push(NEGATE, pos, 0, 0, 0, 0);
+                consume(TokenType.SUB);
+            } else if (current == TokenType.NOT) {
+                push(NOT, pos, 0, 0, 0, 0);
+                consume(TokenType.NOT);
+            }
+            Type type = null;
+            int token = pos;
+            if (current == TokenType.IDENTIFIER) {
+                int identifier = tokens.value(pos);
+                consume(TokenType.IDENTIFIER);
+                type = variableType(identifier);
+                node = add(NodeKind.IDENTIFIER, token, type, pos, Ast.NONE);
+            } else if (current == TokenType.INTEGER_CONST) {
+                consume(TokenType.INTEGER_CONST);
+                type = Type.INTEGER;
+                node = add(NodeKind.INTEGER_CONST, token, type, Ast.NONE, Ast.NONE);
+            } else if (current == TokenType.REAL_CONST) {
+                consume(TokenType.REAL_CONST);
+                type = Type.REAL;
+                node = add(NodeKind.REAL_CONST, token, type, Ast.NONE, Ast.NONE);
+            } else if (current == TokenType.OPEN_PAR) {
+                consume(TokenType.OPEN_PAR);
+                push(PARENTHESES, 0, 0, 0, 0, 0);
+                push(BINARY, COMPARISON, -1, -1, Ast.NONE, 0);
+                continue;
+            } else {
+                showError();
+            }
+
+            // Return the type up the stack until an operator needs a right operand.
+            while (true) {
+                int frame = depth - FRAME_SIZE;
+                int kind = frames[frame];
+                if (kind == NEGATE) {
+                    checkUnaryArithmeticOperation(type);
+                    node = add(NodeKind.NEGATE, frames[frame + 1], type, pos, node);
+                } else if (kind == NOT) {
+                    checkCondition(type);
+                    node = add(NodeKind.NOT, frames[frame + 1], type, pos, node);
+                } else if (kind == PARENTHESES) {
+                    consume(TokenType.CLOSE_PAR);
+                } else {
+                    if (frames[frame + 3] >= 0) {
+                        int left = frames[frame + 4];
+                        link(left, node);
+                        Type leftType = frames[frame + 2] < 0 ? null : TYPES[frames[frame + 2]];
+                        type = checkBinaryOperation(leftType, type,
+                                TOKEN_TYPES[frames[frame + 3]]);
+                        node = add(NodeKind.BINARY, frames[frame + 5], type, pos, left);
+                    }
+                    int precedence = PRECEDENCE[current.ordinal()];
+                    if (precedence >= frames[frame + 1]) {
+                        frames[frame + 2] = type == null ? -1 : type.ordinal();
+                        frames[frame + 3] = current.ordinal();
+                        frames[frame + 4] = node;
+                        frames[frame + 5] = pos;
+                        advance();
+                        push(BINARY, precedence + 1, -1, -1, Ast.NONE, 0);
+                        break;
+                    }
+                }
+                depth = frame;
+                if (depth == base) {
+                    return type;
+                }
+            }
+        }
+    }
+
+    private Type variableType(int identifier) {
+        return deferChecks ? null : semanticAnalysis.getType(identifier);
+    }
+
+    private Type checkAssignment(int identifier, Type type) {
+        if (deferChecks) {
+            return null;
+        }
+        semanticAnalysis.checkVariableDeclared(identifier);
+        semanticAnalysis.checkAssignment(identifier, type);
+        return semanticAnalysis.getType(identifier);
+    }
+
+    private Type checkBinaryOperation(Type leftType, Type rightType, TokenType op) {
+        return deferChecks ? null : semanticAnalysis.checkBinaryOperation(leftType, rightType, op);
+    }
+
+    private void checkUnaryArithmeticOperation(Type type) {
+        if (!deferChecks) {
+            semanticAnalysis.checkUnaryArithmeticOperation(type);
+        }
+    }
+
+    private void checkCondition(Type type) {
+        if (!deferChecks) {
+            semanticAnalysis.checkCondition(type);
+        }
+    }
+
+    private void push(int kind, int a, int b, int c, int d, int e) {
+        if (frames == null || depth + FRAME_SIZE > frames.length) {
+            frames = frames == null ? new int[16 * FRAME_SIZE] : Arrays.copyOf(frames, frames.length * 2);
+        }
+        frames[depth] = kind;
+        frames[depth + 1] = a;
+        frames[depth + 2] = b;
+        frames[depth + 3] = c;
+        frames[depth + 4] = d;
+        frames[depth + 5] = e;
+        depth += FRAME_SIZE;
+    }
+
+    private int add(NodeKind kind, int token, Type type, int check, int child) {
+        return ast == null ? Ast.NONE : ast.add(kind, token, type, check, child);
+    }
+
+    private void link(int node, int next) {
+        if (ast != null && node != Ast.NONE) {
+            ast.setNext(node, next);
+        }
     }
 
     private void advance() {
-        current = lex.nextToken();
+        pos++;
+        if (pos == tokens.end()) {
+            if (!retainTokens && ast == null) {
+                tokens.discardBefore(pos);
+            }
+            source.fill(tokens);
+        }
+        current = tokens.type(pos);
     }
 
     private void consume(TokenType type) {
-        if (type == current.type) {
-            current = lex.nextToken();
+        if (type == current) {
+            advance();
         } else {
             showError();
         }
     }
 
     private void showError() throws SyntacticException {
-        switch (current.type) {
-            case INVALID_TOKEN -> System.out.printf("Lexema inválido [%s]\n", current.token);
-            case UNEXPECTED_EOF, END_OF_FILE -> System.out.print("Fim de arquivo inesperado\n");
-            default -> System.out.printf("Lexema não esperado [%s]\n", current.token);
+        if (deferChecks) {
+            throw new SyntacticException("Syntax error");
+        }
+        String description = switch (current) {
+            case INVALID_TOKEN -> "Lexema inválido [" + tokens.text(pos) + "]";
+            case UNEXPECTED_EOF, END_OF_FILE -> "Fim de arquivo inesperado";
+            default -> "Lexema não esperado [" + tokens.text(pos) + "]";
+        };
+        if (out != null) {
+            out.print(description + "\n");
         }
-        throw new SyntacticException("Syntax error");
+        throw new SyntacticException("Syntax error", description);
     }
 }
@@ -1,7 +1,20 @@
 package syntatic;
 
+/** Thrown without a stack trace, so failing inputs are cheap to report. */
 public class SyntacticException extends RuntimeException {
+  private final String description;
+
   public SyntacticException(String message) {
-    super(message);
+    this(message, message);
+  }
+
+  public SyntacticException(String message, String description) {
+    super(message, null, false, false);
+    this.description = description;
+  }
+
+  /** The message printed for the error, such as "Lexema não esperado [x]". */
+  public String getDescription() {
+    return description;
   }
 }
@@ -0,0 +1,226 @@
+package vm;
+
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+import semantic.Type;
+import syntatic.Ast;
+import syntatic.NodeKind;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+
+/**
+ * Runs a checked {@link Ast} by walking it recursively, deciding at every node from the
+ * types of its children whether to compute with ints or doubles. It is the baseline the
+ * {@link Interpreter} is measured against, and recurses as deep as the program nests.
+ */
+public class AstInterpreter {
+    private final Console console;
+    private Ast ast;
+    private TokenBuffer tokens;
+    private int[] slots;
+    private boolean[] realTargets;
+    private int[] intConstants;
+    private double[] realConstants;
+    private int[] ints;
+    private double[] doubles;
+
+    public AstInterpreter(InputStream in, OutputStream out) {
+        this(new Console(in, out));
+    }
+
+    public AstInterpreter(Console console) {
+        this.console = console;
+    }
+
+    public void run(Ast ast, SemanticAnalysis semantics) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.slots = new int[ast.size()];
+        this.realTargets = new boolean[ast.size()];
+        this.intConstants = new int[ast.size()];
+        this.realConstants = new double[ast.size()];
+        for (int node = 0; node < ast.size(); node++) {
+            switch (ast.kind(node)) {
+                case IDENTIFIER, ASSIGN, READ -> {
+                    int identifier = ast.identifier(node);
+                    boolean declared = semantics.isVariableDeclared(identifier);
+                    slots[node] = declared ? semantics.getSlot(identifier) : -1;
+                    realTargets[node] = declared && semantics.getType(identifier) == Type.REAL;
+                }
+                case INTEGER_CONST -> intConstants[node] = new BigInteger(ast.text(node)).intValue();
+                case REAL_CONST -> realConstants[node] = Double.parseDouble(ast.text(node));
+                default -> {
+                }
+            }
+        }
+        int variables = semantics.getVariables().size();
+        this.ints = new int[variables];
+        this.doubles = new double[variables];
+
+        int statements = ast.child(ast.root());
+        while (ast.kind(statements) == NodeKind.DECLARATION) {
+            statements = ast.next(statements);
+        }
+        try {
+            statements(statements);
+        } finally {
+            console.flush();
+        }
+    }
+
+    private void statements(int node) {
+        for (int statement = ast.child(node); statement != Ast.NONE; statement = ast.next(statement)) {
+            statement(statement);
+        }
+    }
+
+    private void statement(int node) {
+        int child = ast.child(node);
+        switch (ast.kind(node)) {
+            case ASSIGN -> {
+                if (ast.type(node) == Type.REAL) {
+                    doubles[slots[node]] = real(child);
+                } else {
+                    ints[slots[node]] = integer(child);
+                }
+            }
+            case IF -> {
+                int then = ast.next(child);
+                if (bool(child)) {
+                    statements(then);
+                } else if (ast.next(then) != Ast.NONE) {
+                    statements(ast.next(then));
+                }
+            }
+            case REPEAT -> {
+                do {
+                    statements(child);
+                } while (!bool(ast.next(child)));
+            }
+            case READ -> {
+                int line = tokens.line(ast.token(node));
+                if (slots[node] < 0) {
+                    console.skip(line);
+                } else if (realTargets[node]) {
+                    doubles[slots[node]] = console.readReal(line);
+                } else {
+                    ints[slots[node]] = console.readInt(line);
+                }
+            }
+            case WRITE -> {
+                if (ast.kind(child) == NodeKind.TEXT) {
+                    console.write(ast.text(child));
+                } else if (ast.type(child) == Type.REAL) {
+                    console.write(real(child));
+                } else if (ast.type(child) == Type.BOOLEAN) {
+                    console.write(bool(child));
+                } else {
+                    console.write(integer(child));
+                }
+            }
+            default -> throw new IllegalStateException("Not a statement: " + ast.kind(node));
+        }
+    }
+
+    private int integer(int node) {
+        switch (ast.kind(node)) {
+            case IDENTIFIER:
+                return ints[slots[node]];
+            case INTEGER_CONST:
+                return intConstants[node];
+            case NEGATE:
+                return -integer(ast.child(node));
+            default:
+                int left = integer(ast.child(node));
+                int right = integer(ast.next(ast.child(node)));
+                switch (operator(node)) {
+                    case ADD:
+                        return left + right;
+                    case SUB:
+                        return left - right;
+                    case MUL:
+                        return left * right;
+                    default:
+                        if (right == 0) {
+                            throw new ExecutionException("Divisão por zero", tokens.line(ast.token(node)));
+                        }
+                        return left / right;
+                }
+        }
+    }
+
+    private double real(int node) {
+        if (ast.type(node) == Type.INTEGER) {
+            return integer(node);
+        }
+        switch (ast.kind(node)) {
+            case IDENTIFIER:
+                return doubles[slots[node]];
+            case REAL_CONST:
+                return realConstants[node];
+            case NEGATE:
+                return -real(ast.child(node));
+            default:
+                double left = real(ast.child(node));
+                double right = real(ast.next(ast.child(node)));
+                switch (operator(node)) {
+                    case ADD:
+                        return left + right;
+                    case SUB:
+                        return left - right;
+                    case MUL:
+                        return left * right;
+                    default:
+                        return left / right;
+                }
+        }
+    }
+
+    private boolean bool(int node) {
+        if (ast.kind(node) == NodeKind.NOT) {
+            return !bool(ast.child(node));
+        }
+        int left = ast.child(node);
+        int right = ast.next(left);
+        TokenType op = operator(node);
+        if (op == TokenType.AND) {
+            return bool(left) & bool(right);
+        } else if (op == TokenType.OR) {
+            return bool(left) | bool(right);
+        }
+        Type leftType = ast.type(left);
+        Type rightType = ast.type(right);
+        if (leftType == Type.BOOLEAN) {
+            return (bool(left) == bool(right)) == (op == TokenType.EQUAL);
+        }
+        if (leftType == Type.INTEGER && rightType == Type.INTEGER) {
+            int a = integer(left);
+            int b = integer(right);
+            return switch (op) {
+                case EQUAL -> a == b;
+                case NOT_EQUAL -> a != b;
+                case LOWER_THAN -> a < b;
+                case LOWER_EQUAL -> a <= b;
+                case GREATER_THAN -> a > b;
+                default -> a >= b;
+            };
+        }
+        double a = real(left);
+        double b = real(right);
+        return switch (op) {
+            case EQUAL -> a == b;
+            case NOT_EQUAL -> a != b;
+            case LOWER_THAN -> a < b;
+            case LOWER_EQUAL -> a <= b;
+            case GREATER_THAN -> a > b;
+            default -> a >= b;
+        };
+    }
+
+    private TokenType operator(int node) {
+        return tokens.type(ast.token(node));
+    }
+}
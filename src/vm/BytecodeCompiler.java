@@ -0,0 +1,393 @@
+package vm;
+
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+import semantic.Type;
+import syntatic.Ast;
+import syntatic.AstCursor;
+import syntatic.NodeKind;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a checked {@link Ast} into a {@link Program} for the {@link Interpreter}.
+ *
+ * Code is generated from the exits of an {@link AstCursor} walk, so nesting depth is not
+ * limited by the thread stack. Expression values are kept on a stack of registers:
+ * variables and constants are used in place, every constant having a register loaded once
+ * before the program starts, and temporaries are allocated and freed in stack order. An
+ * expression assigned to a variable of its own type is computed straight into the
+ * variable's register, and a comparison used as a condition becomes a single compare and
+ * branch. Integer operands are converted to real where {@code checkArithmeticOperation},
+ * the ordering comparisons and {@code checkAssignment} accept a mix of both.
+ */
+public class BytecodeCompiler {
+    /** Offset of the negation of each comparison, in the order of {@link #comparisonIndex}. */
+    private static final int[] NEGATED = {1, 0, 5, 4, 3, 2};
+
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final SemanticAnalysis semantics;
+    private final AstCursor cursor;
+    private final Map<Integer, Integer> intConstants;
+    private final Map<Long, Integer> realConstants;
+    private final List<Double> reals;
+    private final List<String> texts;
+    private int[] code;
+    private int[] lines;
+    private int size;
+    private int line;
+    private int[] values;
+    private int valueCount;
+    private int[] controls;
+    private int controlCount;
+    private int intBase;
+    private int doubleBase;
+    private int intTop;
+    private int doubleTop;
+    private int intRegisters;
+    private int doubleRegisters;
+
+    private BytecodeCompiler(Ast ast, SemanticAnalysis semantics) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.semantics = semantics;
+        this.cursor = new AstCursor(ast);
+        this.intConstants = new HashMap<>();
+        this.realConstants = new HashMap<>();
+        this.reals = new ArrayList<>();
+        this.texts = new ArrayList<>();
+        this.code = new int[256];
+        this.lines = new int[256 / Opcodes.WIDTH];
+        this.values = new int[16];
+        this.controls = new int[16];
+        this.line = 1;
+    }
+
+    public static Program compile(Ast ast, SemanticAnalysis semantics) {
+        return new BytecodeCompiler(ast, semantics).compile();
+    }
+
+    private Program compile() {
+        int statements = ast.child(ast.root());
+        while (ast.kind(statements) == NodeKind.DECLARATION) {
+            statements = ast.next(statements);
+        }
+        int variables = semantics.getVariables().size();
+        constants(statements, variables);
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            if (ast.token(node) != Ast.NONE) {
+                line = tokens.line(ast.token(node));
+            }
+            if (cursor.isEntering()) {
+                if (ast.kind(node) == NodeKind.REPEAT) {
+                    control(size);
+                }
+            } else {
+                exit(node, cursor.parent());
+            }
+        }
+        emit(Opcodes.HALT, 0, 0, 0);
+        return new Program(Arrays.copyOf(code, size), Arrays.copyOf(lines, size / Opcodes.WIDTH),
+                reals.stream().mapToDouble(Double::doubleValue).toArray(), texts.toArray(new String[0]),
+                variables, intRegisters, doubleRegisters);
+    }
+
+    /** Gives every distinct constant a register after the variables and loads it up front. */
+    private void constants(int statements, int variables) {
+        int ints = variables;
+        int doubles = variables;
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            if (!cursor.isEntering()) {
+                continue;
+            }
+            if (ast.kind(node) == NodeKind.INTEGER_CONST) {
+                int value = new BigInteger(ast.text(node)).intValue();
+                if (!intConstants.containsKey(value)) {
+                    intConstants.put(value, ints);
+                    emit(Opcodes.ICONST, ints++, value, 0);
+                }
+            } else if (ast.kind(node) == NodeKind.REAL_CONST) {
+                double value = Double.parseDouble(ast.text(node));
+                if (!realConstants.containsKey(Double.doubleToLongBits(value))) {
+                    realConstants.put(Double.doubleToLongBits(value), doubles);
+                    reals.add(value);
+                    emit(Opcodes.DCONST, doubles++, reals.size() - 1, 0);
+                }
+            }
+        }
+        intBase = intTop = intRegisters = ints;
+        doubleBase = doubleTop = doubleRegisters = doubles;
+    }
+
+    private void exit(int node, int parent) {
+        switch (ast.kind(node)) {
+            case IDENTIFIER -> value(node, parent, semantics.getSlot(ast.identifier(node)));
+            case INTEGER_CONST -> value(node, parent, intConstants.get(new BigInteger(ast.text(node)).intValue()));
+            case REAL_CONST -> value(node, parent,
+                    realConstants.get(Double.doubleToLongBits(Double.parseDouble(ast.text(node)))));
+            case BINARY -> binary(node, parent);
+            case NEGATE, NOT -> unary(node, parent);
+            case ASSIGN -> assign(node);
+            case READ -> read(node);
+            case WRITE -> write(node);
+            case STATEMENTS -> {
+                if (parent != Ast.NONE && ast.kind(parent) == NodeKind.IF
+                        && ast.next(ast.child(parent)) == node && ast.next(node) != Ast.NONE) {
+                    // End of the then branch: jump over the else branch, which starts here.
+                    int jump = size + 1;
+                    emit(Opcodes.JMP, 0, 0, 0);
+                    code[controls[--controlCount]] = size;
+                    control(jump);
+                }
+            }
+            case IF -> code[controls[--controlCount]] = size;
+            case REPEAT -> controlCount--;
+            default -> {
+            }
+        }
+    }
+
+    private void value(int node, int parent, int register) {
+        push(register);
+        condition(node, parent);
+    }
+
+    private void binary(int node, int parent) {
+        int left = ast.child(node);
+        int right = ast.next(left);
+        TokenType op = tokens.type(ast.token(node));
+        Type leftType = ast.type(left);
+        Type rightType = ast.type(right);
+        int rightRegister = pop();
+        int leftRegister = pop();
+        boolean real = leftType == Type.REAL || rightType == Type.REAL;
+        boolean comparison = ast.type(node) == Type.BOOLEAN && op != TokenType.AND && op != TokenType.OR;
+
+        if (comparison && isCondition(node, parent)) {
+            int a = real ? toReal(leftRegister, leftType) : leftRegister;
+            int b = real ? toReal(rightRegister, rightType) : rightRegister;
+            release(leftRegister, leftType);
+            release(rightRegister, rightType);
+            release(a, real ? Type.REAL : leftType);
+            release(b, real ? Type.REAL : rightType);
+            branchUnless(op, real, a, b, ast.kind(parent) == NodeKind.REPEAT);
+            return;
+        }
+
+        int opcode;
+        if (op == TokenType.AND || op == TokenType.OR) {
+            opcode = op == TokenType.AND ? Opcodes.AND : Opcodes.OR;
+            real = false;
+        } else if (comparison) {
+            opcode = (real ? Opcodes.DEQ : Opcodes.IEQ) + comparisonIndex(op);
+        } else {
+            opcode = switch (op) {
+                case ADD -> real ? Opcodes.DADD : Opcodes.IADD;
+                case SUB -> real ? Opcodes.DSUB : Opcodes.ISUB;
+                case MUL -> real ? Opcodes.DMUL : Opcodes.IMUL;
+                default -> real ? Opcodes.DDIV : Opcodes.IDIV;
+            };
+        }
+        int a = real ? toReal(leftRegister, leftType) : leftRegister;
+        int b = real ? toReal(rightRegister, rightType) : rightRegister;
+        release(leftRegister, leftType);
+        release(rightRegister, rightType);
+        release(a, real ? Type.REAL : leftType);
+        release(b, real ? Type.REAL : rightType);
+        int target = target(node, parent);
+        emit(opcode, target, a, b);
+        value(node, parent, target);
+    }
+
+    private void unary(int node, int parent) {
+        Type type = ast.type(node);
+        int operand = pop();
+        release(operand, type);
+        int target = target(node, parent);
+        int opcode = ast.kind(node) == NodeKind.NOT ? Opcodes.NOT : type == Type.REAL ? Opcodes.DNEG : Opcodes.INEG;
+        emit(opcode, target, operand, 0);
+        value(node, parent, target);
+    }
+
+    /**
+     * Register an operation stores its result in: the assigned variable when the value
+     * needs no conversion, otherwise a new temporary.
+     */
+    private int target(int node, int parent) {
+        if (parent != Ast.NONE && ast.kind(parent) == NodeKind.ASSIGN && ast.type(parent) == ast.type(node)) {
+            return semantics.getSlot(ast.identifier(parent));
+        }
+        return ast.type(node) == Type.REAL ? doubleTemporary() : intTemporary();
+    }
+
+    /** Branches on a value that is the condition of an if or repeat and not a comparison. */
+    private void condition(int node, int parent) {
+        if (!isCondition(node, parent)) {
+            return;
+        }
+        int register = pop();
+        release(register, Type.BOOLEAN);
+        if (ast.kind(parent) == NodeKind.REPEAT) {
+            emit(Opcodes.JZ, register, controls[controlCount - 1], 0);
+        } else {
+            control(size + 2);
+            emit(Opcodes.JZ, register, 0, 0);
+        }
+    }
+
+    /**
+     * Emits a jump taken when the comparison is false: back to the start of the loop for a
+     * repeat, to a target patched later for an if.
+     */
+    private void branchUnless(TokenType op, boolean real, int a, int b, boolean loop) {
+        int index = comparisonIndex(op);
+        int opcode;
+        if (real) {
+            opcode = Opcodes.JDNEQ + index;
+        } else {
+            // The negation of an int comparison is another comparison.
+            opcode = Opcodes.JIEQ + NEGATED[index];
+        }
+        if (loop) {
+            emit(opcode, a, b, controls[controlCount - 1]);
+        } else {
+            control(size + 3);
+            emit(opcode, a, b, 0);
+        }
+    }
+
+    private void assign(int node) {
+        int register = pop();
+        Type type = ast.type(ast.child(node));
+        int slot = semantics.getSlot(ast.identifier(node));
+        release(register, type);
+        if (ast.type(node) == Type.REAL && type == Type.INTEGER) {
+            emit(Opcodes.I2D, slot, register, 0);
+        } else if (register != slot) {
+            emit(type == Type.REAL ? Opcodes.DMOV : Opcodes.IMOV, slot, register, 0);
+        }
+    }
+
+    private void read(int node) {
+        int identifier = ast.identifier(node);
+        if (!semantics.isVariableDeclared(identifier)) {
+            emit(Opcodes.READX, 0, 0, 0);
+        } else if (semantics.getType(identifier) == Type.REAL) {
+            emit(Opcodes.READD, semantics.getSlot(identifier), 0, 0);
+        } else {
+            emit(Opcodes.READI, semantics.getSlot(identifier), 0, 0);
+        }
+    }
+
+    private void write(int node) {
+        int child = ast.child(node);
+        if (ast.kind(child) == NodeKind.TEXT) {
+            texts.add(ast.text(child));
+            emit(Opcodes.WRITES, texts.size() - 1, 0, 0);
+            return;
+        }
+        Type type = ast.type(child);
+        int register = pop();
+        release(register, type);
+        emit(switch (type) {
+            case INTEGER -> Opcodes.WRITEI;
+            case REAL -> Opcodes.WRITED;
+            case BOOLEAN -> Opcodes.WRITEB;
+        }, register, 0, 0);
+    }
+
+    private boolean isCondition(int node, int parent) {
+        if (parent == Ast.NONE) {
+            return false;
+        }
+        return switch (ast.kind(parent)) {
+            case IF -> ast.child(parent) == node;
+            case REPEAT -> ast.next(ast.child(parent)) == node;
+            default -> false;
+        };
+    }
+
+    /** Offset of a comparison in the EQ, NE, LT, LE, GT, GE groups of opcodes. */
+    private static int comparisonIndex(TokenType op) {
+        return switch (op) {
+            case EQUAL -> 0;
+            case NOT_EQUAL -> 1;
+            case LOWER_THAN -> 2;
+            case LOWER_EQUAL -> 3;
+            case GREATER_THAN -> 4;
+            default -> 5;
+        };
+    }
+
+    private int toReal(int register, Type type) {
+        if (type == Type.REAL) {
+            return register;
+        }
+        int converted = doubleTemporary();
+        emit(Opcodes.I2D, converted, register, 0);
+        return converted;
+    }
+
+    private int intTemporary() {
+        intRegisters = Math.max(intRegisters, intTop + 1);
+        return intTop++;
+    }
+
+    private int doubleTemporary() {
+        doubleRegisters = Math.max(doubleRegisters, doubleTop + 1);
+        return doubleTop++;
+    }
+
+    /** Frees {@code register} if it is a temporary; temporaries are freed from the top. */
+    private void release(int register, Type type) {
+        if (type == Type.REAL) {
+            if (register >= doubleBase) {
+                doubleTop = Math.min(doubleTop, register);
+            }
+        } else if (register >= intBase) {
+            intTop = Math.min(intTop, register);
+        }
+    }
+
+    private void push(int register) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+        }
+        values[valueCount++] = register;
+    }
+
+    private int pop() {
+        return values[--valueCount];
+    }
+
+    private void control(int index) {
+        if (controlCount == controls.length) {
+            controls = Arrays.copyOf(controls, controlCount * 2);
+        }
+        controls[controlCount++] = index;
+    }
+
+    private void emit(int opcode, int a, int b, int c) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+            lines = Arrays.copyOf(lines, code.length / Opcodes.WIDTH);
+        }
+        lines[size / Opcodes.WIDTH] = line;
+        code[size] = opcode;
+        code[size + 1] = a;
+        code[size + 2] = b;
+        code[size + 3] = c;
+        size += Opcodes.WIDTH;
+    }
+}
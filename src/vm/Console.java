@@ -0,0 +1,345 @@
+package vm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Input and output of a running program. {@code read} takes the next word of the input,
+ * separated by ASCII whitespace, and accepts what {@code Integer.parseInt} or
+ * {@code Double.parseDouble} accept; every {@code write} prints one value and a newline in
+ * UTF-8, reals as {@link DoubleToDecimal} formats them. Code compiled by the other backends
+ * calls it as its runtime.
+ *
+ * Both directions go through byte buffers of their own. Plain integers and decimals are
+ * parsed straight from the input bytes, and values are formatted straight into the output
+ * buffer, so reading and writing numbers allocates nothing; only unusual words, such as
+ * {@code NaN} or a real with more than 15 significant digits, are parsed from a String.
+ * When buffered output is written out is set by a {@link Flush} policy.
+ */
+public class Console {
+    /** When buffered output is written out, besides when the buffer is full and at the end. */
+    public enum Flush {
+        /** After every write. */
+        LINE,
+        /** Before waiting for more input, so a prompt is seen before the read after it. */
+        INPUT,
+        /** Never otherwise, for the most throughput. */
+        FULL
+    }
+
+    private static final int BUFFER = 1 << 16;
+    /** Powers of ten a double holds exactly. */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e', '\n'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e', '\n'};
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final Flush flush;
+    private final byte[] output;
+    private byte[] input;
+    private int position;
+    private int limit;
+    private boolean end;
+    private int wordStart;
+    private int wordEnd;
+    private double real;
+    private int size;
+
+    public Console(InputStream in, OutputStream out) {
+        this(in, out, Flush.INPUT);
+    }
+
+    public Console(InputStream in, OutputStream out, Flush flush) {
+        this.in = in;
+        this.out = out;
+        this.flush = flush;
+        this.input = new byte[BUFFER];
+        this.output = new byte[BUFFER];
+    }
+
+    public int readInt(int line) {
+        next(line);
+        int at = wordStart;
+        boolean negative = input[at] == '-';
+        if (negative || input[at] == '+') {
+            at++;
+        }
+        long value = 0;
+        if (at < wordEnd) {
+            for (; at < wordEnd && value <= Integer.MAX_VALUE + 1L; at++) {
+                int digit = input[at] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+            }
+            if (at == wordEnd && value <= (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) {
+                return (int) (negative ? -value : value);
+            }
+        }
+        // Integer.parseInt would also take the digits of other scripts, which the native
+        // runtime does not; every ASCII word it takes was read above.
+        throw new ExecutionException("Entrada inválida [" + word() + "]", line);
+    }
+
+    public double readReal(int line) {
+        next(line);
+        if (parseReal()) {
+            return real;
+        }
+        String word = word();
+        try {
+            return Double.parseDouble(word);
+        } catch (NumberFormatException e) {
+            throw new ExecutionException("Entrada inválida [" + word + "]", line);
+        }
+    }
+
+    public void skip(int line) {
+        next(line);
+    }
+
+    public void write(int value) {
+        reserve(12);
+        int negated = value;
+        if (value < 0) {
+            output[size++] = '-';
+        } else {
+            negated = -value;
+        }
+        // Digits of the negated value, which holds Integer.MIN_VALUE too.
+        int length = 1;
+        for (int rest = negated / 10; rest != 0; rest /= 10) {
+            length++;
+        }
+        for (int at = size + length - 1; at >= size; at--) {
+            output[at] = (byte) ('0' - negated % 10);
+            negated /= 10;
+        }
+        size += length;
+        newline();
+    }
+
+    public void write(double value) {
+        reserve(DoubleToDecimal.MAX_CHARS + 1);
+        size = DoubleToDecimal.write(value, output, size);
+        newline();
+    }
+
+    public void write(boolean value) {
+        byte[] text = value ? TRUE : FALSE;
+        reserve(text.length);
+        System.arraycopy(text, 0, output, size, text.length);
+        size += text.length;
+        if (flush == Flush.LINE) {
+            flush();
+        }
+    }
+
+    public void write(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            reserve(4);
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                output[size++] = (byte) c;
+            } else if (c < 0x800) {
+                output[size++] = (byte) (0xC0 | c >> 6);
+                output[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                output[size++] = (byte) (0xF0 | codePoint >> 18);
+                output[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                output[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                output[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // What the UTF-8 encoder of a PrintStream puts for half a pair.
+                output[size++] = '?';
+            } else {
+                output[size++] = (byte) (0xE0 | c >> 12);
+                output[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                output[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        reserve(1);
+        newline();
+    }
+
+    public void flush() {
+        try {
+            out.write(output, 0, size);
+            out.flush();
+        } catch (IOException e) {
+            // Like a PrintStream, a closed output does not stop the program.
+        }
+        size = 0;
+    }
+
+    private void newline() {
+        output[size++] = '\n';
+        if (flush == Flush.LINE) {
+            flush();
+        }
+    }
+
+    private void reserve(int bytes) {
+        if (size + bytes > output.length) {
+            flush();
+        }
+    }
+
+    /** Finds the next word, between {@link #wordStart} and {@link #wordEnd}. */
+    private void next(int line) {
+        while (true) {
+            if (position == limit && !fill(position)) {
+                throw new ExecutionException("Fim da entrada", line);
+            }
+            if (!isSpace(input[position])) {
+                break;
+            }
+            position++;
+        }
+        int start = position;
+        while (true) {
+            if (position == limit) {
+                int kept = position - start;
+                boolean more = fill(start);
+                start = position - kept;
+                if (!more) {
+                    break;
+                }
+            }
+            if (isSpace(input[position])) {
+                break;
+            }
+            position++;
+        }
+        wordStart = start;
+        wordEnd = position;
+    }
+
+    /**
+     * Reads more input after the bytes from {@code keep} on, which move to the front of the
+     * buffer. Returns false at the end of the input.
+     */
+    private boolean fill(int keep) {
+        if (end) {
+            return false;
+        }
+        try {
+            if (flush != Flush.FULL && size > 0 && in.available() == 0) {
+                flush();
+            }
+            int kept = limit - keep;
+            if (kept == input.length) {
+                input = Arrays.copyOf(input, input.length * 2);
+            } else {
+                System.arraycopy(input, keep, input, 0, kept);
+            }
+            position -= keep;
+            limit = kept;
+            int count = in.read(input, limit, input.length - limit);
+            if (count < 0) {
+                end = true;
+                return false;
+            }
+            limit += count;
+            return count > 0 || fill(0);
+        } catch (IOException e) {
+            // Like a Scanner, an input that fails has ended.
+            end = true;
+            return false;
+        }
+    }
+
+    /**
+     * Parses the word into {@link #real} when it is a decimal of at most 15 significant
+     * digits scaled by at most 10^22 either way: both are exact doubles, so one multiplication
+     * or division rounds correctly. Returns false for any other word.
+     */
+    private boolean parseReal() {
+        int at = wordStart;
+        boolean negative = input[at] == '-';
+        if (negative || input[at] == '+') {
+            at++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; at < wordEnd && isDigit(input[at]); at++) {
+            any = true;
+            if (mantissa != 0 || input[at] != '0') {
+                mantissa = mantissa * 10 + input[at] - '0';
+                digits++;
+            }
+            if (digits > 15) {
+                return false;
+            }
+        }
+        if (at < wordEnd && input[at] == '.') {
+            for (at++; at < wordEnd && isDigit(input[at]); at++) {
+                any = true;
+                if (mantissa != 0 || input[at] != '0') {
+                    mantissa = mantissa * 10 + input[at] - '0';
+                    digits++;
+                }
+                if (digits > 15) {
+                    return false;
+                }
+                exponent--;
+            }
+        }
+        if (!any) {
+            return false;
+        }
+        if (at < wordEnd && (input[at] == 'e' || input[at] == 'E')) {
+            at++;
+            boolean negativeExponent = at < wordEnd && input[at] == '-';
+            if (negativeExponent || at < wordEnd && input[at] == '+') {
+                at++;
+            }
+            if (at == wordEnd) {
+                return false;
+            }
+            int scale = 0;
+            for (; at < wordEnd && isDigit(input[at]) && scale < 1000; at++) {
+                scale = scale * 10 + input[at] - '0';
+            }
+            exponent += negativeExponent ? -scale : scale;
+        }
+        if (at != wordEnd) {
+            return false;
+        }
+        if (mantissa == 0) {
+            real = negative ? -0.0 : 0.0;
+            return true;
+        }
+        if (exponent < -22 || exponent > 22) {
+            return false;
+        }
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        real = negative ? -value : value;
+        return true;
+    }
+
+    private String word() {
+        return new String(input, wordStart, wordEnd - wordStart, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /** Whitespace for {@link Character#isWhitespace} among ASCII bytes. */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b >= '\t' && b <= '\r' || b >= 0x1C && b <= 0x1F;
+    }
+}
@@ -0,0 +1,227 @@
+package vm;
+
+import java.math.BigInteger;
+
+/**
+ * Formats a double as {@link Double#toString} specifies it since Java 19: the shortest
+ * decimal that rounds back to the same double, the closest one to it when there are several,
+ * in plain notation from 10<sup>-3</sup> up to 10<sup>7</sup> and in computerized scientific
+ * notation outside. Earlier Java versions print a few values with more digits than needed.
+ *
+ * This is Raffaello Giulietti's Schubfach algorithm: the bounds of the rounding interval of
+ * the double are multiplied by a 126-bit approximation of a power of ten, chosen so that the
+ * integer parts of the products give the candidate digits. Digits are written straight into
+ * the caller's buffer, so formatting allocates nothing.
+ */
+final class DoubleToDecimal {
+    /** Most bytes a double takes, as in {@code -2.2250738585072014E-308}. */
+    static final int MAX_CHARS = 24;
+
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = (1 << 11) - 1;
+    private static final int C_TINY = 3;
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long[] POW10 = new long[18];
+
+    /**
+     * For every k in [K_MIN, K_MAX], the high and low 63 bits of g = floor(10^-k 2^-r) + 1,
+     * where r makes 2^125 <= g < 2^126.
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        BigInteger ten = BigInteger.TEN;
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger power = ten.pow(-k);
+                g = r >= 0 ? power.shiftRight(r) : power.shiftLeft(-r);
+            } else {
+                g = BigInteger.ONE.shiftLeft(-r).divide(ten.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private DoubleToDecimal() {
+    }
+
+    /** Writes {@code v} into {@code bytes} from {@code at}, which has {@link #MAX_CHARS} free, and returns the end. */
+    static int write(double v, byte[] bytes, int at) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        if (bq == BQ_MASK) {
+            return ascii(t != 0 ? "NaN" : bits > 0 ? "Infinity" : "-Infinity", bytes, at);
+        }
+        if (bits < 0) {
+            bytes[at++] = '-';
+        }
+        if (bq != 0) {
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // An integer below 2^53, printed exactly.
+                    return chars(f, 0, bytes, at);
+                }
+            }
+            return decimal(-mq, c, 0, bytes, at);
+        }
+        if (t != 0) {
+            // Subnormal; the few smallest ones need an extra digit to tell them apart.
+            return t < C_TINY ? decimal(Q_MIN, 10 * t, -1, bytes, at) : decimal(Q_MIN, t, 0, bytes, at);
+        }
+        return ascii("0.0", bytes, at);
+    }
+
+    /** Formats c 2^q, with dk added to the decimal exponent. */
+    private static int decimal(int q, long c, int dk, byte[] bytes, int at) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // The interval below a power of two is half as wide.
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        if (s >= 100) {
+            // One digit fewer, when it is inside the interval.
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return chars(upin ? sp10 : tp10, k, bytes, at);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return chars(uin ? s : t, k + dk, bytes, at);
+        }
+        long cmp = vb - (s + t << 1);
+        return chars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, bytes, at);
+    }
+
+    /** Rounds the product of g and cp, scaled down by 2^127, to odd. */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /** Writes f 10^e in the layout of {@link Double#toString}. */
+    private static int chars(long f, int e, byte[] bytes, int at) {
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+        int length = 1;
+        while (length < POW10.length && f >= POW10[length]) {
+            length++;
+        }
+        int exponent = e + length - 1;
+        if (exponent >= 0 && exponent < 7) {
+            for (int i = 0; i <= exponent; i++) {
+                bytes[at++] = i < length ? digit(f, length, i) : (byte) '0';
+            }
+            bytes[at++] = '.';
+            if (length <= exponent + 1) {
+                bytes[at++] = '0';
+            }
+            for (int i = exponent + 1; i < length; i++) {
+                bytes[at++] = digit(f, length, i);
+            }
+            return at;
+        }
+        if (exponent < 0 && exponent >= -3) {
+            bytes[at++] = '0';
+            bytes[at++] = '.';
+            for (int i = -1; i > exponent; i--) {
+                bytes[at++] = '0';
+            }
+            for (int i = 0; i < length; i++) {
+                bytes[at++] = digit(f, length, i);
+            }
+            return at;
+        }
+        bytes[at++] = digit(f, length, 0);
+        bytes[at++] = '.';
+        if (length == 1) {
+            bytes[at++] = '0';
+        }
+        for (int i = 1; i < length; i++) {
+            bytes[at++] = digit(f, length, i);
+        }
+        bytes[at++] = 'E';
+        if (exponent < 0) {
+            bytes[at++] = '-';
+            exponent = -exponent;
+        }
+        if (exponent >= 100) {
+            bytes[at++] = (byte) ('0' + exponent / 100);
+        }
+        if (exponent >= 10) {
+            bytes[at++] = (byte) ('0' + exponent / 10 % 10);
+        }
+        bytes[at++] = (byte) ('0' + exponent % 10);
+        return at;
+    }
+
+    /** The i-th digit, from the left, of f, which has {@code length} digits. */
+    private static byte digit(long f, int length, int i) {
+        return (byte) ('0' + f / POW10[length - 1 - i] % 10);
+    }
+
+    private static int ascii(String text, byte[] bytes, int at) {
+        for (int i = 0; i < text.length(); i++) {
+            bytes[at++] = (byte) text.charAt(i);
+        }
+        return at;
+    }
+
+    /** floor(q log10 2) */
+    private static int flog10pow2(int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    /** floor(q log10 2 + log10 3/4) */
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    /** floor(e log2 10) */
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+}
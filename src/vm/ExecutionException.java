@@ -0,0 +1,18 @@
+package vm;
+
+/** Thrown without a stack trace when a running program fails, like the compile errors. */
+public class ExecutionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+
+    public ExecutionException(String msg, int line) {
+        super("Erro de execução: " + msg, null, false, false);
+        this.line = line;
+    }
+
+    /** Line of the statement or operator that failed. */
+    public int getLine() {
+        return line;
+    }
+}
@@ -0,0 +1,176 @@
+package vm;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Runs a {@link Program}. The register files are allocated once per run and the dispatch
+ * loop allocates nothing itself; only {@code read} and {@code write} touch objects.
+ */
+public class Interpreter {
+    private final Console console;
+
+    public Interpreter(InputStream in, OutputStream out) {
+        this(new Console(in, out));
+    }
+
+    /** Reads and writes through {@code console}, which every run flushes when it ends. */
+    public Interpreter(Console console) {
+        this.console = console;
+    }
+
+    public void run(Program program) {
+        try {
+            execute(program);
+        } finally {
+            console.flush();
+        }
+    }
+
+    private void execute(Program program) {
+        int[] code = program.code;
+        double[] constants = program.reals;
+        String[] texts = program.texts;
+        int[] ints = new int[program.intRegisters];
+        double[] doubles = new double[program.doubleRegisters];
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case Opcodes.HALT -> {
+                    return;
+                }
+                case Opcodes.ICONST -> ints[code[pc + 1]] = code[pc + 2];
+                case Opcodes.DCONST -> doubles[code[pc + 1]] = constants[code[pc + 2]];
+                case Opcodes.IMOV -> ints[code[pc + 1]] = ints[code[pc + 2]];
+                case Opcodes.DMOV -> doubles[code[pc + 1]] = doubles[code[pc + 2]];
+                case Opcodes.I2D -> doubles[code[pc + 1]] = ints[code[pc + 2]];
+
+                case Opcodes.IADD -> ints[code[pc + 1]] = ints[code[pc + 2]] + ints[code[pc + 3]];
+                case Opcodes.ISUB -> ints[code[pc + 1]] = ints[code[pc + 2]] - ints[code[pc + 3]];
+                case Opcodes.IMUL -> ints[code[pc + 1]] = ints[code[pc + 2]] * ints[code[pc + 3]];
+                case Opcodes.IDIV -> {
+                    int divisor = ints[code[pc + 3]];
+                    if (divisor == 0) {
+                        throw new ExecutionException("Divisão por zero", program.line(pc));
+                    }
+                    ints[code[pc + 1]] = ints[code[pc + 2]] / divisor;
+                }
+                case Opcodes.DADD -> doubles[code[pc + 1]] = doubles[code[pc + 2]] + doubles[code[pc + 3]];
+                case Opcodes.DSUB -> doubles[code[pc + 1]] = doubles[code[pc + 2]] - doubles[code[pc + 3]];
+                case Opcodes.DMUL -> doubles[code[pc + 1]] = doubles[code[pc + 2]] * doubles[code[pc + 3]];
+                case Opcodes.DDIV -> doubles[code[pc + 1]] = doubles[code[pc + 2]] / doubles[code[pc + 3]];
+                case Opcodes.INEG -> ints[code[pc + 1]] = -ints[code[pc + 2]];
+                case Opcodes.DNEG -> doubles[code[pc + 1]] = -doubles[code[pc + 2]];
+                case Opcodes.NOT -> ints[code[pc + 1]] = ints[code[pc + 2]] ^ 1;
+                case Opcodes.AND -> ints[code[pc + 1]] = ints[code[pc + 2]] & ints[code[pc + 3]];
+                case Opcodes.OR -> ints[code[pc + 1]] = ints[code[pc + 2]] | ints[code[pc + 3]];
+
+                case Opcodes.IEQ -> ints[code[pc + 1]] = ints[code[pc + 2]] == ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.INE -> ints[code[pc + 1]] = ints[code[pc + 2]] != ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.ILT -> ints[code[pc + 1]] = ints[code[pc + 2]] < ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.ILE -> ints[code[pc + 1]] = ints[code[pc + 2]] <= ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.IGT -> ints[code[pc + 1]] = ints[code[pc + 2]] > ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.IGE -> ints[code[pc + 1]] = ints[code[pc + 2]] >= ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DEQ -> ints[code[pc + 1]] = doubles[code[pc + 2]] == doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DNE -> ints[code[pc + 1]] = doubles[code[pc + 2]] != doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DLT -> ints[code[pc + 1]] = doubles[code[pc + 2]] < doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DLE -> ints[code[pc + 1]] = doubles[code[pc + 2]] <= doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DGT -> ints[code[pc + 1]] = doubles[code[pc + 2]] > doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DGE -> ints[code[pc + 1]] = doubles[code[pc + 2]] >= doubles[code[pc + 3]] ? 1 : 0;
+
+                case Opcodes.JMP -> {
+                    pc = code[pc + 1];
+                    continue;
+                }
+                case Opcodes.JZ -> {
+                    if (ints[code[pc + 1]] == 0) {
+                        pc = code[pc + 2];
+                        continue;
+                    }
+                }
+                case Opcodes.JIEQ -> {
+                    if (ints[code[pc + 1]] == ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JINE -> {
+                    if (ints[code[pc + 1]] != ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JILT -> {
+                    if (ints[code[pc + 1]] < ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JILE -> {
+                    if (ints[code[pc + 1]] <= ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JIGT -> {
+                    if (ints[code[pc + 1]] > ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JIGE -> {
+                    if (ints[code[pc + 1]] >= ints[code[pc + 2]]) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNEQ -> {
+                    if (!(doubles[code[pc + 1]] == doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNNE -> {
+                    if (!(doubles[code[pc + 1]] != doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNLT -> {
+                    if (!(doubles[code[pc + 1]] < doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNLE -> {
+                    if (!(doubles[code[pc + 1]] <= doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNGT -> {
+                    if (!(doubles[code[pc + 1]] > doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+                case Opcodes.JDNGE -> {
+                    if (!(doubles[code[pc + 1]] >= doubles[code[pc + 2]])) {
+                        pc = code[pc + 3];
+                        continue;
+                    }
+                }
+
+                case Opcodes.READI -> ints[code[pc + 1]] = console.readInt(program.line(pc));
+                case Opcodes.READD -> doubles[code[pc + 1]] = console.readReal(program.line(pc));
+                case Opcodes.READX -> console.skip(program.line(pc));
+                case Opcodes.WRITEI -> console.write(ints[code[pc + 1]]);
+                case Opcodes.WRITED -> console.write(doubles[code[pc + 1]]);
+                case Opcodes.WRITEB -> console.write(ints[code[pc + 1]] != 0);
+                case Opcodes.WRITES -> console.write(texts[code[pc + 1]]);
+                default -> throw new IllegalStateException("Invalid opcode " + code[pc]);
+            }
+            pc += Opcodes.WIDTH;
+        }
+    }
+}
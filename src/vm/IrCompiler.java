@@ -0,0 +1,242 @@
+package vm;
+
+import ir.Block;
+import ir.Instruction;
+import ir.IrProgram;
+import ir.Opcode;
+import ir.Operand;
+import semantic.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an {@link IrProgram}, usually after the {@code ir.Optimizer} passes, into a
+ * {@link Program} for the {@link Interpreter}. Variables keep their slots, every distinct
+ * constant gets a register loaded before the program starts like in
+ * {@link BytecodeCompiler}, and every temporary gets a register of its own. Blocks are laid
+ * out in order, so a jump to the next block disappears, and a comparison only read by the
+ * branch after it becomes a single compare and branch.
+ */
+public class IrCompiler {
+    private static final int[] NEGATED = {1, 0, 5, 4, 3, 2};
+
+    private final IrProgram ir;
+    private final Map<Integer, Integer> intConstants;
+    private final Map<Long, Integer> realConstants;
+    private final List<Double> reals;
+    private final List<String> texts;
+    private final int[] registers;
+    private final int[] uses;
+    private final List<int[]> fixups;
+    private int[] code;
+    private int[] lines;
+    private int size;
+    private int line;
+    private int intRegisters;
+    private int doubleRegisters;
+
+    private IrCompiler(IrProgram ir) {
+        this.ir = ir;
+        this.intConstants = new HashMap<>();
+        this.realConstants = new HashMap<>();
+        this.reals = new ArrayList<>();
+        this.texts = new ArrayList<>();
+        this.registers = new int[ir.registers()];
+        this.uses = new int[ir.registers()];
+        this.fixups = new ArrayList<>();
+        this.code = new int[256];
+        this.lines = new int[256 / Opcodes.WIDTH];
+        this.line = 1;
+    }
+
+    public static Program compile(IrProgram ir) {
+        return new IrCompiler(ir).compile();
+    }
+
+    private Program compile() {
+        allocate();
+        int[] starts = new int[ir.blocks.size()];
+        for (Block block : ir.blocks) {
+            starts[block.index] = size;
+            Block next = block.index + 1 < ir.blocks.size() ? ir.blocks.get(block.index + 1) : null;
+            List<Instruction> instructions = block.instructions;
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i);
+                line = instruction.line;
+                if (instruction.op.isComparison() && i + 2 == instructions.size() && isFused(instruction,
+                        instructions.get(i + 1))) {
+                    continue;
+                }
+                Instruction previous = i > 0 ? instructions.get(i - 1) : null;
+                emit(instruction, previous, next);
+            }
+        }
+        for (int[] fixup : fixups) {
+            code[fixup[0]] = starts[fixup[1]];
+        }
+        return new Program(Arrays.copyOf(code, size), Arrays.copyOf(lines, size / Opcodes.WIDTH),
+                reals.stream().mapToDouble(Double::doubleValue).toArray(), texts.toArray(new String[0]),
+                ir.variables, intRegisters, doubleRegisters);
+    }
+
+    /** Numbers the constants and temporaries of each file after the variables and loads the constants. */
+    private void allocate() {
+        int ints = ir.variables;
+        int doubles = ir.variables;
+        for (Block block : ir.blocks) {
+            for (Instruction instruction : block.instructions) {
+                for (Operand operand : new Operand[] {instruction.a, instruction.b}) {
+                    if (operand == null) {
+                        continue;
+                    }
+                    if (operand.isRegister()) {
+                        uses[operand.register]++;
+                    } else if (operand.isConstant() && operand.type == Type.REAL) {
+                        long bits = Double.doubleToLongBits(operand.realValue);
+                        if (!realConstants.containsKey(bits)) {
+                            realConstants.put(bits, doubles);
+                            reals.add(operand.realValue);
+                            emit(Opcodes.DCONST, doubles++, reals.size() - 1, 0);
+                        }
+                    } else if (operand.isConstant() && !intConstants.containsKey(operand.intValue)) {
+                        intConstants.put(operand.intValue, ints);
+                        emit(Opcodes.ICONST, ints++, operand.intValue, 0);
+                    }
+                }
+            }
+        }
+        for (int register = 0; register < ir.registers(); register++) {
+            if (ir.isVariable(register)) {
+                registers[register] = register;
+            } else {
+                registers[register] = ir.type(register) == Type.REAL ? doubles++ : ints++;
+            }
+        }
+        intRegisters = ints;
+        doubleRegisters = doubles;
+    }
+
+    private void emit(Instruction instruction, Instruction previous, Block next) {
+        Operand a = instruction.a;
+        Operand b = instruction.b;
+        boolean real = instruction.type == Type.REAL;
+        switch (instruction.op) {
+            case COPY -> {
+                int target = registers[instruction.target];
+                if (a.isConstant() && !real) {
+                    emit(Opcodes.ICONST, target, a.intValue, 0);
+                } else if (register(a) != target) {
+                    emit(real ? Opcodes.DMOV : Opcodes.IMOV, target, register(a), 0);
+                }
+            }
+            case I2D -> emit(Opcodes.I2D, registers[instruction.target], register(a), 0);
+            case ADD, SUB, MUL, DIV -> {
+                int opcode = (real ? Opcodes.DADD : Opcodes.IADD) + instruction.op.ordinal() - Opcode.ADD.ordinal();
+                emit(opcode, registers[instruction.target], register(a), register(b));
+            }
+            case NEG -> emit(real ? Opcodes.DNEG : Opcodes.INEG, registers[instruction.target], register(a), 0);
+            case NOT -> emit(Opcodes.NOT, registers[instruction.target], register(a), 0);
+            case AND -> emit(Opcodes.AND, registers[instruction.target], register(a), register(b));
+            case OR -> emit(Opcodes.OR, registers[instruction.target], register(a), register(b));
+            case EQ, NE, LT, LE, GT, GE -> emit((real ? Opcodes.DEQ : Opcodes.IEQ) + comparisonIndex(instruction.op),
+                    registers[instruction.target], register(a), register(b));
+            case READ -> emit(real ? Opcodes.READD : Opcodes.READI, registers[instruction.target], 0, 0);
+            case SKIP -> emit(Opcodes.READX, 0, 0, 0);
+            case WRITE -> {
+                if (a.kind == Operand.Kind.TEXT) {
+                    texts.add(a.text);
+                    emit(Opcodes.WRITES, texts.size() - 1, 0, 0);
+                } else {
+                    emit(switch (a.type) {
+                        case INTEGER -> Opcodes.WRITEI;
+                        case REAL -> Opcodes.WRITED;
+                        case BOOLEAN -> Opcodes.WRITEB;
+                    }, register(a), 0, 0);
+                }
+            }
+            case JUMP -> jump(instruction.first, next);
+            case BRANCH -> branch(instruction, previous, next);
+            case HALT -> emit(Opcodes.HALT, 0, 0, 0);
+        }
+    }
+
+    private void branch(Instruction branch, Instruction previous, Block next) {
+        Operand condition = branch.a;
+        if (condition.isConstant()) {
+            jump(condition.booleanValue() ? branch.first : branch.second, next);
+            return;
+        }
+        if (previous != null && isFused(previous, branch)) {
+            int index = comparisonIndex(previous.op);
+            int a = register(previous.a);
+            int b = register(previous.b);
+            if (previous.type == Type.REAL) {
+                // Only "jump unless" exists for doubles, so NaN takes the else branch.
+                emit(Opcodes.JDNEQ + index, a, b, 0);
+                fixup(branch.second);
+                jump(branch.first, next);
+            } else if (branch.first == next) {
+                emit(Opcodes.JIEQ + NEGATED[index], a, b, 0);
+                fixup(branch.second);
+            } else {
+                emit(Opcodes.JIEQ + index, a, b, 0);
+                fixup(branch.first);
+                jump(branch.second, next);
+            }
+            return;
+        }
+        emit(Opcodes.JZ, register(condition), 0, 0);
+        fixups.add(new int[] {size - 2, branch.second.index});
+        jump(branch.first, next);
+    }
+
+    /** Whether {@code comparison} only computes the condition of {@code branch}, right after it. */
+    private boolean isFused(Instruction comparison, Instruction branch) {
+        return comparison.op.isComparison() && branch.op == Opcode.BRANCH && branch.a.isRegister()
+                && branch.a.register == comparison.target && !ir.isVariable(comparison.target)
+                && uses[comparison.target] == 1;
+    }
+
+    private void jump(Block block, Block next) {
+        if (block != next) {
+            emit(Opcodes.JMP, 0, 0, 0);
+            fixups.add(new int[] {size - 3, block.index});
+        }
+    }
+
+    /** Patches the target of the conditional jump just emitted, which is in its last operand. */
+    private void fixup(Block block) {
+        fixups.add(new int[] {size - 1, block.index});
+    }
+
+    private int register(Operand operand) {
+        if (operand.isRegister()) {
+            return registers[operand.register];
+        }
+        if (operand.type == Type.REAL) {
+            return realConstants.get(Double.doubleToLongBits(operand.realValue));
+        }
+        return intConstants.get(operand.intValue);
+    }
+
+    private static int comparisonIndex(Opcode op) {
+        return op.ordinal() - Opcode.EQ.ordinal();
+    }
+
+    private void emit(int opcode, int a, int b, int c) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+            lines = Arrays.copyOf(lines, code.length / Opcodes.WIDTH);
+        }
+        lines[size / Opcodes.WIDTH] = line;
+        code[size] = opcode;
+        code[size + 1] = a;
+        code[size + 2] = b;
+        code[size + 3] = c;
+        size += Opcodes.WIDTH;
+    }
+}
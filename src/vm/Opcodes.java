@@ -0,0 +1,72 @@
+package vm;
+
+/**
+ * Instructions of the register machine. Every instruction takes {@link #WIDTH} ints of
+ * {@link Program#code}: the opcode and up to three operands. Operands named a, b and c
+ * are register numbers, in the int file for I and boolean operations and in the double
+ * file for D operations; t is the index of the instruction to jump to, multiplied by
+ * {@code WIDTH}.
+ */
+public final class Opcodes {
+    public static final int WIDTH = 4;
+
+    public static final int HALT = 0;
+    public static final int ICONST = 1;   // I[a] = b
+    public static final int DCONST = 2;   // D[a] = reals[b]
+    public static final int IMOV = 3;     // I[a] = I[b]
+    public static final int DMOV = 4;     // D[a] = D[b]
+    public static final int I2D = 5;      // D[a] = I[b]
+
+    public static final int IADD = 6;     // I[a] = I[b] op I[c]
+    public static final int ISUB = 7;
+    public static final int IMUL = 8;
+    public static final int IDIV = 9;
+    public static final int DADD = 10;    // D[a] = D[b] op D[c]
+    public static final int DSUB = 11;
+    public static final int DMUL = 12;
+    public static final int DDIV = 13;
+    public static final int INEG = 14;    // I[a] = -I[b]
+    public static final int DNEG = 15;    // D[a] = -D[b]
+    public static final int NOT = 16;     // I[a] = I[b] ^ 1
+    public static final int AND = 17;     // I[a] = I[b] & I[c]
+    public static final int OR = 18;      // I[a] = I[b] | I[c]
+
+    public static final int IEQ = 19;     // I[a] = I[b] op I[c] ? 1 : 0
+    public static final int INE = 20;
+    public static final int ILT = 21;
+    public static final int ILE = 22;
+    public static final int IGT = 23;
+    public static final int IGE = 24;
+    public static final int DEQ = 25;     // I[a] = D[b] op D[c] ? 1 : 0
+    public static final int DNE = 26;
+    public static final int DLT = 27;
+    public static final int DLE = 28;
+    public static final int DGT = 29;
+    public static final int DGE = 30;
+
+    public static final int JMP = 31;     // goto t, with t in a
+    public static final int JZ = 32;      // if I[a] == 0 goto t, with t in b
+    public static final int JIEQ = 33;    // if I[a] op I[b] goto t, with t in c
+    public static final int JINE = 34;
+    public static final int JILT = 35;
+    public static final int JILE = 36;
+    public static final int JIGT = 37;
+    public static final int JIGE = 38;
+    public static final int JDNEQ = 39;   // if !(D[a] op D[b]) goto t, with t in c, so NaN jumps
+    public static final int JDNNE = 40;
+    public static final int JDNLT = 41;
+    public static final int JDNLE = 42;
+    public static final int JDNGT = 43;
+    public static final int JDNGE = 44;
+
+    public static final int READI = 45;   // I[a] = next integer of the input
+    public static final int READD = 46;   // D[a] = next number of the input
+    public static final int READX = 47;   // skip the next word of the input
+    public static final int WRITEI = 48;  // print I[a] and a newline
+    public static final int WRITED = 49;  // print D[a] and a newline
+    public static final int WRITEB = 50;  // print I[a] as true or false and a newline
+    public static final int WRITES = 51;  // print texts[a] and a newline
+
+    private Opcodes() {
+    }
+}
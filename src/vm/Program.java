@@ -0,0 +1,33 @@
+package vm;
+
+/**
+ * Bytecode of a compiled program with the sizes of its register files. Registers below
+ * {@link #variables} hold the variables, at the slots {@code SemanticAnalysis} gave them,
+ * in the int file for integer variables and in the double file for real ones; constants
+ * and temporaries follow.
+ */
+public class Program {
+    public final int[] code;
+    public final int[] lines;
+    public final double[] reals;
+    public final String[] texts;
+    public final int variables;
+    public final int intRegisters;
+    public final int doubleRegisters;
+
+    public Program(int[] code, int[] lines, double[] reals, String[] texts, int variables,
+                   int intRegisters, int doubleRegisters) {
+        this.code = code;
+        this.lines = lines;
+        this.reals = reals;
+        this.texts = texts;
+        this.variables = variables;
+        this.intRegisters = intRegisters;
+        this.doubleRegisters = doubleRegisters;
+    }
+
+    /** Line of the source that the instruction at {@code pc} was compiled from. */
+    public int line(int pc) {
+        return lines[pc / Opcodes.WIDTH];
+    }
+}
@@ -0,0 +1,402 @@
+package vm;
+
+import jvm.LoopCompiler;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs a {@link Program} in two tiers. It starts at once in an interpreter like
+ * {@link Interpreter} that also counts, per instruction, how often each back edge and each
+ * conditional jump is taken. When a loop header has been jumped back to
+ * {@link #setThreshold threshold} times, {@link LoopCompiler} compiles the loop on a
+ * background thread while the interpreter goes on. Once the class is ready, the header is
+ * patched with an entry into it, so the running loop continues in compiled code at its
+ * next iteration and every later execution starts there; the compiled loop returns to the
+ * interpreter where it exits. Time spent interpreting, in compiled loops and compiling is
+ * counted for {@link #report}.
+ */
+public class TieredInterpreter {
+    public static final int DEFAULT_THRESHOLD = 1000;
+    /** Opcode patched over the header of a compiled loop. */
+    private static final int ENTER = -1;
+    private static final ExecutorService COMPILER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loop-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** A loop found by its back edges, with what happened to it. */
+    public static class Loop {
+        public final int header;
+        public final int line;
+        public int end;
+        public long backEdges;
+        public long entries;
+        /** Time spent running the compiled loop. */
+        public long nanos;
+        public volatile long compileNanos;
+        public volatile boolean failed;
+        volatile MethodHandle compiled;
+
+        Loop(int header, int end, int line) {
+            this.header = header;
+            this.end = end;
+            this.line = line;
+        }
+
+        public boolean isCompiled() {
+            return compiled != null;
+        }
+    }
+
+    private final Console console;
+    private int threshold;
+    private boolean background;
+    private int[] code;
+    private Loop[] headers;
+    private long[] taken;
+    private long[] notTaken;
+    private List<Loop> loops;
+    private Queue<Loop> ready;
+    private long totalNanos;
+
+    public TieredInterpreter(InputStream in, OutputStream out) {
+        this(new Console(in, out));
+    }
+
+    /** Interprets and runs the compiled loops with the same {@code console}. */
+    public TieredInterpreter(Console console) {
+        this.console = console;
+        this.threshold = DEFAULT_THRESHOLD;
+        this.background = true;
+        this.loops = new ArrayList<>();
+    }
+
+    /** Back edges to a loop header after which the loop is compiled. */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /** Whether loops compile on a background thread, or stop the interpreter until they are ready. */
+    public void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    public void run(Program program) {
+        int instructions = program.code.length / Opcodes.WIDTH;
+        code = program.code.clone();
+        headers = new Loop[instructions];
+        taken = new long[instructions];
+        notTaken = new long[instructions];
+        loops = new ArrayList<>();
+        ready = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        try {
+            execute(program);
+        } finally {
+            totalNanos = System.nanoTime() - start;
+            console.flush();
+        }
+    }
+
+    public List<Loop> getLoops() {
+        return loops;
+    }
+
+    /** Times the conditional jump at {@code pc} jumped in the last run. */
+    public long taken(int pc) {
+        return taken[pc / Opcodes.WIDTH];
+    }
+
+    /** Times the conditional jump at {@code pc} fell through in the last run. */
+    public long notTaken(int pc) {
+        return notTaken[pc / Opcodes.WIDTH];
+    }
+
+    public long getCompiledNanos() {
+        long nanos = 0;
+        for (Loop loop : loops) {
+            nanos += loop.nanos;
+        }
+        return nanos;
+    }
+
+    public long getInterpretedNanos() {
+        return totalNanos - getCompiledNanos();
+    }
+
+    /** Time the compiler thread took, which overlaps the other two when it runs in the background. */
+    public long getCompileNanos() {
+        long nanos = 0;
+        for (Loop loop : loops) {
+            nanos += loop.compileNanos;
+        }
+        return nanos;
+    }
+
+    public void report(PrintStream out) {
+        long branches = 0;
+        long jumped = 0;
+        for (int i = 0; i < taken.length; i++) {
+            branches += taken[i] + notTaken[i];
+            jumped += taken[i];
+        }
+        out.printf("%-12s %10s%n", "tier", "ms");
+        out.printf("%-12s %10.3f%n", "interpreter", getInterpretedNanos() / 1e6);
+        out.printf("%-12s %10.3f%n", "compiled", getCompiledNanos() / 1e6);
+        out.printf("%-12s %10.3f%n", "compiling", getCompileNanos() / 1e6);
+        out.printf("%d conditional jumps, %d taken%n", branches, jumped);
+        if (loops.isEmpty()) {
+            return;
+        }
+        out.printf("%-6s %12s %8s %12s %12s  %s%n", "line", "back edges", "entries", "compile ms", "compiled ms",
+                "state");
+        for (Loop loop : loops) {
+            out.printf("%-6d %12d %8d %12.3f %12.3f  %s%n", loop.line, loop.backEdges, loop.entries,
+                    loop.compileNanos / 1e6, loop.nanos / 1e6, loop.isCompiled() ? "compiled"
+                            : loop.failed ? "too large" : loop.backEdges >= threshold ? "compiling" : "interpreted");
+        }
+    }
+
+    private void execute(Program program) {
+        int[] code = this.code;
+        long[] taken = this.taken;
+        long[] notTaken = this.notTaken;
+        double[] constants = program.reals;
+        String[] texts = program.texts;
+        int[] ints = new int[program.intRegisters];
+        double[] doubles = new double[program.doubleRegisters];
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case ENTER -> {
+                    pc = enter(headers[pc / Opcodes.WIDTH], ints, doubles);
+                    continue;
+                }
+                case Opcodes.HALT -> {
+                    return;
+                }
+                case Opcodes.ICONST -> ints[code[pc + 1]] = code[pc + 2];
+                case Opcodes.DCONST -> doubles[code[pc + 1]] = constants[code[pc + 2]];
+                case Opcodes.IMOV -> ints[code[pc + 1]] = ints[code[pc + 2]];
+                case Opcodes.DMOV -> doubles[code[pc + 1]] = doubles[code[pc + 2]];
+                case Opcodes.I2D -> doubles[code[pc + 1]] = ints[code[pc + 2]];
+
+                case Opcodes.IADD -> ints[code[pc + 1]] = ints[code[pc + 2]] + ints[code[pc + 3]];
+                case Opcodes.ISUB -> ints[code[pc + 1]] = ints[code[pc + 2]] - ints[code[pc + 3]];
+                case Opcodes.IMUL -> ints[code[pc + 1]] = ints[code[pc + 2]] * ints[code[pc + 3]];
+                case Opcodes.IDIV -> {
+                    int divisor = ints[code[pc + 3]];
+                    if (divisor == 0) {
+                        throw new ExecutionException("Divisão por zero", program.line(pc));
+                    }
+                    ints[code[pc + 1]] = ints[code[pc + 2]] / divisor;
+                }
+                case Opcodes.DADD -> doubles[code[pc + 1]] = doubles[code[pc + 2]] + doubles[code[pc + 3]];
+                case Opcodes.DSUB -> doubles[code[pc + 1]] = doubles[code[pc + 2]] - doubles[code[pc + 3]];
+                case Opcodes.DMUL -> doubles[code[pc + 1]] = doubles[code[pc + 2]] * doubles[code[pc + 3]];
+                case Opcodes.DDIV -> doubles[code[pc + 1]] = doubles[code[pc + 2]] / doubles[code[pc + 3]];
+                case Opcodes.INEG -> ints[code[pc + 1]] = -ints[code[pc + 2]];
+                case Opcodes.DNEG -> doubles[code[pc + 1]] = -doubles[code[pc + 2]];
+                case Opcodes.NOT -> ints[code[pc + 1]] = ints[code[pc + 2]] ^ 1;
+                case Opcodes.AND -> ints[code[pc + 1]] = ints[code[pc + 2]] & ints[code[pc + 3]];
+                case Opcodes.OR -> ints[code[pc + 1]] = ints[code[pc + 2]] | ints[code[pc + 3]];
+
+                case Opcodes.IEQ -> ints[code[pc + 1]] = ints[code[pc + 2]] == ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.INE -> ints[code[pc + 1]] = ints[code[pc + 2]] != ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.ILT -> ints[code[pc + 1]] = ints[code[pc + 2]] < ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.ILE -> ints[code[pc + 1]] = ints[code[pc + 2]] <= ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.IGT -> ints[code[pc + 1]] = ints[code[pc + 2]] > ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.IGE -> ints[code[pc + 1]] = ints[code[pc + 2]] >= ints[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DEQ -> ints[code[pc + 1]] = doubles[code[pc + 2]] == doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DNE -> ints[code[pc + 1]] = doubles[code[pc + 2]] != doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DLT -> ints[code[pc + 1]] = doubles[code[pc + 2]] < doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DLE -> ints[code[pc + 1]] = doubles[code[pc + 2]] <= doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DGT -> ints[code[pc + 1]] = doubles[code[pc + 2]] > doubles[code[pc + 3]] ? 1 : 0;
+                case Opcodes.DGE -> ints[code[pc + 1]] = doubles[code[pc + 2]] >= doubles[code[pc + 3]] ? 1 : 0;
+
+                case Opcodes.JMP -> {
+                    int target = code[pc + 1];
+                    if (target <= pc) {
+                        backEdge(program, target, pc);
+                    }
+                    pc = target;
+                    continue;
+                }
+                case Opcodes.JZ -> {
+                    if (ints[code[pc + 1]] == 0) {
+                        pc = jump(program, pc, code[pc + 2]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JIEQ -> {
+                    if (ints[code[pc + 1]] == ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JINE -> {
+                    if (ints[code[pc + 1]] != ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JILT -> {
+                    if (ints[code[pc + 1]] < ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JILE -> {
+                    if (ints[code[pc + 1]] <= ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JIGT -> {
+                    if (ints[code[pc + 1]] > ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JIGE -> {
+                    if (ints[code[pc + 1]] >= ints[code[pc + 2]]) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNEQ -> {
+                    if (!(doubles[code[pc + 1]] == doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNNE -> {
+                    if (!(doubles[code[pc + 1]] != doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNLT -> {
+                    if (!(doubles[code[pc + 1]] < doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNLE -> {
+                    if (!(doubles[code[pc + 1]] <= doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNGT -> {
+                    if (!(doubles[code[pc + 1]] > doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+                case Opcodes.JDNGE -> {
+                    if (!(doubles[code[pc + 1]] >= doubles[code[pc + 2]])) {
+                        pc = jump(program, pc, code[pc + 3]);
+                        continue;
+                    }
+                    notTaken[pc / Opcodes.WIDTH]++;
+                }
+
+                case Opcodes.READI -> ints[code[pc + 1]] = console.readInt(program.line(pc));
+                case Opcodes.READD -> doubles[code[pc + 1]] = console.readReal(program.line(pc));
+                case Opcodes.READX -> console.skip(program.line(pc));
+                case Opcodes.WRITEI -> console.write(ints[code[pc + 1]]);
+                case Opcodes.WRITED -> console.write(doubles[code[pc + 1]]);
+                case Opcodes.WRITEB -> console.write(ints[code[pc + 1]] != 0);
+                case Opcodes.WRITES -> console.write(texts[code[pc + 1]]);
+                default -> throw new IllegalStateException("Invalid opcode " + code[pc]);
+            }
+            pc += Opcodes.WIDTH;
+        }
+    }
+
+    /** Counts the conditional jump at {@code pc} as taken and returns its target. */
+    private int jump(Program program, int pc, int target) {
+        taken[pc / Opcodes.WIDTH]++;
+        if (target <= pc) {
+            backEdge(program, target, pc);
+        }
+        return target;
+    }
+
+    /** Counts a jump from {@code latch} back to {@code header} and installs the loops compiled since the last one. */
+    private void backEdge(Program program, int header, int latch) {
+        Loop loop = headers[header / Opcodes.WIDTH];
+        if (loop == null) {
+            loop = new Loop(header, latch + Opcodes.WIDTH, program.line(header));
+            headers[header / Opcodes.WIDTH] = loop;
+            loops.add(loop);
+        }
+        if (loop.backEdges < threshold) {
+            loop.end = Math.max(loop.end, latch + Opcodes.WIDTH);
+        }
+        if (++loop.backEdges == threshold) {
+            Loop hot = loop;
+            Queue<Loop> done = ready;
+            if (background) {
+                COMPILER.execute(() -> compile(program, hot, done));
+            } else {
+                compile(program, hot, done);
+            }
+        }
+        for (Loop compiled = ready.poll(); compiled != null; compiled = ready.poll()) {
+            if (compiled.isCompiled()) {
+                code[compiled.header] = ENTER;
+            }
+        }
+    }
+
+    private static void compile(Program program, Loop loop, Queue<Loop> done) {
+        long start = System.nanoTime();
+        try {
+            loop.compiled = LoopCompiler.compile(program, loop.header, loop.end);
+        } catch (IllegalArgumentException e) {
+            // Too large for one JVM method: the loop stays interpreted.
+            loop.failed = true;
+        }
+        loop.compileNanos = System.nanoTime() - start;
+        done.add(loop);
+    }
+
+    private int enter(Loop loop, int[] ints, double[] doubles) {
+        loop.entries++;
+        long start = System.nanoTime();
+        try {
+            return (int) loop.compiled.invokeExact(ints, doubles, console);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // The compiled loop declares no checked exception.
+            throw new IllegalStateException(e);
+        } finally {
+            loop.nanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package vm;
+
+import ir.IrBuilder;
+import ir.IrProgram;
+import ir.Optimizer;
+import jvm.JvmCompiler;
+import jvm.JvmProgram;
+import lexical.LexicalAnalysis;
+import semantic.SemanticAnalysis;
+import syntatic.Ast;
+import syntatic.SyntacticAnalysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Times the {@link Interpreter}, on bytecode compiled straight from the tree and on
+ * bytecode compiled from the optimized IR, the {@link TieredInterpreter} on the former and
+ * the class compiled by {@link JvmCompiler} against the {@link AstInterpreter} on one program:
+ * {@code java vm.VmBenchmark <file> [runs] [input]}, where the words of {@code input} are
+ * what the program reads. Every engine runs the program once to check that they print the
+ * same, then {@code runs} times per round with the output discarded; the best of several
+ * rounds is reported, so the JIT has compiled every loop.
+ */
+public class VmBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: vm.VmBenchmark <file> [runs] [input]");
+            System.exit(1);
+        }
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        byte[] input = (args.length > 2 ? args[2] : "").getBytes(StandardCharsets.UTF_8);
+
+        SyntacticAnalysis parser = new SyntacticAnalysis(new LexicalAnalysis(args[0]));
+        parser.setExplicitStack(true);
+        parser.setBuildAst(true);
+        parser.start();
+        Ast ast = parser.getAst();
+        SemanticAnalysis semantics = parser.getSemanticAnalysis();
+        long start = System.nanoTime();
+        Program program = BytecodeCompiler.compile(ast, semantics);
+        System.out.printf("bytecode: %d instructions, %d int and %d double registers, compiled in %.2f ms%n",
+                program.code.length / Opcodes.WIDTH, program.intRegisters, program.doubleRegisters,
+                (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        IrProgram ir = IrBuilder.build(ast, semantics);
+        Optimizer.standard().optimize(ir);
+        Program optimized = IrCompiler.compile(ir);
+        System.out.printf("optimized: %d instructions, %d int and %d double registers, compiled in %.2f ms%n",
+                optimized.code.length / Opcodes.WIDTH, optimized.intRegisters, optimized.doubleRegisters,
+                (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        JvmProgram jvm = JvmCompiler.load(ast, semantics);
+        System.out.printf("jvm class: %d bytes, compiled and loaded in %.2f ms%n",
+                jvm.classBytes, (System.nanoTime() - start) / 1e6);
+
+        ByteArrayOutputStream walked = new ByteArrayOutputStream();
+        ByteArrayOutputStream executed = new ByteArrayOutputStream();
+        ByteArrayOutputStream optimizedOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream tieredOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream jitted = new ByteArrayOutputStream();
+        new AstInterpreter(new ByteArrayInputStream(input), new PrintStream(walked, false, StandardCharsets.UTF_8))
+                .run(ast, semantics);
+        new Interpreter(new ByteArrayInputStream(input), new PrintStream(executed, false, StandardCharsets.UTF_8))
+                .run(program);
+        new Interpreter(new ByteArrayInputStream(input), new PrintStream(optimizedOut, false, StandardCharsets.UTF_8))
+                .run(optimized);
+        TieredInterpreter tiered = new TieredInterpreter(new ByteArrayInputStream(input),
+                new PrintStream(tieredOut, false, StandardCharsets.UTF_8));
+        tiered.run(program);
+        tiered.report(System.out);
+        jvm.run(new ByteArrayInputStream(input), new PrintStream(jitted, false, StandardCharsets.UTF_8));
+        String expected = walked.toString(StandardCharsets.UTF_8);
+        if (!expected.equals(executed.toString(StandardCharsets.UTF_8))
+                || !expected.equals(optimizedOut.toString(StandardCharsets.UTF_8))
+                || !expected.equals(tieredOut.toString(StandardCharsets.UTF_8))
+                || !expected.equals(jitted.toString(StandardCharsets.UTF_8))) {
+            System.out.println("Outputs differ");
+            System.exit(1);
+        }
+
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        long bestWalk = Long.MAX_VALUE;
+        long bestVm = Long.MAX_VALUE;
+        long bestOptimized = Long.MAX_VALUE;
+        long bestTiered = Long.MAX_VALUE;
+        long bestJvm = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                new AstInterpreter(in(input), discard).run(ast, semantics);
+            }
+            bestWalk = Math.min(bestWalk, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                new Interpreter(in(input), discard).run(program);
+            }
+            bestVm = Math.min(bestVm, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                new Interpreter(in(input), discard).run(optimized);
+            }
+            bestOptimized = Math.min(bestOptimized, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                new TieredInterpreter(in(input), discard).run(program);
+            }
+            bestTiered = Math.min(bestTiered, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                jvm.run(in(input), discard);
+            }
+            bestJvm = Math.min(bestJvm, System.nanoTime() - start);
+        }
+        System.out.printf("ast walker: %.3f ms/run%n", bestWalk / 1e6 / runs);
+        System.out.printf("bytecode:   %.3f ms/run (%.2fx)%n", bestVm / 1e6 / runs, (double) bestWalk / bestVm);
+        System.out.printf("optimized:  %.3f ms/run (%.2fx)%n", bestOptimized / 1e6 / runs,
+                (double) bestWalk / bestOptimized);
+        System.out.printf("tiered:     %.3f ms/run (%.2fx)%n", bestTiered / 1e6 / runs, (double) bestWalk / bestTiered);
+        System.out.printf("jvm class:  %.3f ms/run (%.2fx)%n", bestJvm / 1e6 / runs, (double) bestWalk / bestJvm);
+    }
+
+    private static InputStream in(byte[] input) {
+        return new ByteArrayInputStream(input);
+    }
+}
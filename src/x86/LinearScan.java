@@ -0,0 +1,72 @@
+package x86;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Linear-scan allocation of the variables of one register class. A variable lives from
+ * the first to the last top-level statement that mentions it; a loop or branch is one
+ * top-level statement or lies inside one, so the interval covers every path between its
+ * uses. Intervals are visited by start; when no register is free, the one of the active
+ * and current intervals that ends last is spilled to the frame for its whole lifetime.
+ */
+final class LinearScan {
+    static final int UNUSED = -1;
+
+    private LinearScan() {
+    }
+
+    /**
+     * Returns, for every variable, the index of its register, {@code registers + k} for
+     * its spill slot k, or {@link #UNUSED} when {@code first[v]} is -1.
+     */
+    static int[] allocate(int[] first, int[] last, int registers) {
+        int[] location = new int[first.length];
+        Arrays.fill(location, UNUSED);
+        List<Integer> order = new ArrayList<>();
+        for (int v = 0; v < first.length; v++) {
+            if (first[v] >= 0) {
+                order.add(v);
+            }
+        }
+        order.sort(Comparator.comparingInt(v -> first[v]));
+
+        boolean[] busy = new boolean[registers];
+        List<Integer> active = new ArrayList<>();
+        int spills = 0;
+        for (int v : order) {
+            for (int i = active.size() - 1; i >= 0; i--) {
+                int other = active.get(i);
+                if (last[other] < first[v]) {
+                    busy[location[other]] = false;
+                    active.remove(i);
+                }
+            }
+            int free = 0;
+            while (free < registers && busy[free]) {
+                free++;
+            }
+            if (free < registers) {
+                busy[free] = true;
+                location[v] = free;
+                active.add(v);
+                continue;
+            }
+            int victim = v;
+            for (int other : active) {
+                if (last[other] > last[victim]) {
+                    victim = other;
+                }
+            }
+            if (victim != v) {
+                location[v] = location[victim];
+                active.remove(Integer.valueOf(victim));
+                active.add(v);
+            }
+            location[victim] = registers + spills++;
+        }
+        return location;
+    }
+}
@@ -0,0 +1,72 @@
+package x86;
+
+import lexical.LexicalAnalysis;
+import syntatic.SyntacticAnalysis;
+import vm.BytecodeCompiler;
+import vm.ExecutionException;
+import vm.Interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Builds every program with {@link NativeCompiler#build} and checks that the executable
+ * prints what the {@link Interpreter} prints on the same input, including the line of a
+ * runtime error: {@code java x86.NativeCheck <input> <file>...}, where the words of
+ * {@code input} are what the programs read. Needs {@code cc} and GNU as on the path.
+ */
+public class NativeCheck {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: x86.NativeCheck <input> <file>...");
+            System.exit(1);
+        }
+        byte[] input = args[0].getBytes(StandardCharsets.UTF_8);
+        Path directory = Files.createTempDirectory("native-check");
+        int failures = 0;
+        for (int i = 1; i < args.length; i++) {
+            SyntacticAnalysis parser = new SyntacticAnalysis(new LexicalAnalysis(args[i]));
+            parser.setOutput(new PrintStream(OutputStream.nullOutputStream()));
+            parser.setExplicitStack(true);
+            parser.setBuildAst(true);
+            parser.start();
+
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(expected, false, StandardCharsets.UTF_8);
+            try {
+                new Interpreter(new ByteArrayInputStream(input), out)
+                        .run(BytecodeCompiler.compile(parser.getAst(), parser.getSemanticAnalysis()));
+            } catch (ExecutionException e) {
+                out.printf("Erro na linha %02d\n", e.getLine());
+            }
+            out.flush();
+
+            Path executable = directory.resolve("program" + i);
+            NativeCompiler.build(parser.getAst(), parser.getSemanticAnalysis(), executable);
+            Process process = new ProcessBuilder(executable.toString())
+                    .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write(input);
+            } catch (IOException e) {
+                // The program stopped before reading all of it.
+            }
+            byte[] actual = process.getInputStream().readAllBytes();
+            process.waitFor();
+            Files.delete(executable);
+
+            boolean same = new String(actual, StandardCharsets.UTF_8).equals(expected.toString(StandardCharsets.UTF_8));
+            System.out.println((same ? "ok      " : "DIFFERS ") + args[i]);
+            if (!same) {
+                failures++;
+            }
+        }
+        Files.delete(directory);
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,864 @@
+package x86;
+
+import lexical.TokenBuffer;
+import lexical.TokenType;
+import semantic.SemanticAnalysis;
+import semantic.Type;
+import semantic.Variable;
+import syntatic.Ast;
+import syntatic.AstCursor;
+import syntatic.NodeKind;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a checked {@link Ast} into x86-64 assembly for GNU as, a {@code main} that
+ * links with libc and the C {@link NativeRuntime} into a standalone Linux executable.
+ *
+ * Variables get registers by {@link LinearScan}: integers and booleans in the callee-saved
+ * general registers, reals in {@code %xmm8}-{@code %xmm15}, which are saved around runtime
+ * calls while they are live. Expressions are computed from the exits of an
+ * {@link AstCursor} walk on a stack of temporaries, with the semantics of the
+ * {@link vm.BytecodeCompiler}: 32-bit wrapping integer arithmetic, integer division by zero
+ * failing with the line of the operator, and integers widened to SSE2 doubles where the
+ * checker accepts a mix. Conditions of {@code if} and {@code repeat} are compiled to jumps:
+ * {@code and}, {@code or} and {@code not} become control flow and a comparison becomes a
+ * compare and branch. An operator whose right operand could fail a division evaluates it
+ * anyway, as the interpreters do.
+ */
+public class NativeCompiler {
+    private static final String[] INT_REGISTERS = {"%ebx", "%ebp", "%r12d", "%r13d", "%r14d", "%r15d"};
+    private static final String[] DOUBLE_REGISTERS = {
+            "%xmm8", "%xmm9", "%xmm10", "%xmm11", "%xmm12", "%xmm13", "%xmm14", "%xmm15"};
+    private static final String[] SAVED = {"%rbx", "%rbp", "%r12", "%r13", "%r14", "%r15"};
+    /** %eax, %edx, %r11d and %xmm0 are scratch registers, never temporaries. */
+    private static final String[] INT_TEMPORARIES = {"%ecx", "%esi", "%edi", "%r8d", "%r9d", "%r10d"};
+    private static final String[] DOUBLE_TEMPORARIES = {"%xmm1", "%xmm2", "%xmm3", "%xmm4", "%xmm5", "%xmm6", "%xmm7"};
+    /** Frame bytes where live real variables are saved across calls, one slot per register. */
+    private static final int XMM_SAVE = 8 * 8;
+
+    /** Condition codes in the EQ, NE, LT, LE, GT, GE order of {@link #comparisonIndex}. */
+    private static final String[] INT_CONDITIONS = {"e", "ne", "l", "le", "g", "ge"};
+    private static final int[] NEGATED = {1, 0, 5, 4, 3, 2};
+
+    private final Ast ast;
+    private final TokenBuffer tokens;
+    private final SemanticAnalysis semantics;
+    private final AstCursor cursor;
+    private final StringBuilder code;
+    private final StringBuilder stubs;
+    private final StringBuilder data;
+    private final Map<Long, String> realConstants;
+    private final Map<String, String> texts;
+    private final boolean[] reals;
+    private final String[] locations;
+    private final int[] first;
+    private final int[] last;
+    /** Whether the first statement a variable lives in is an assignment to it that uses it nowhere else. */
+    private final boolean[] assigned;
+    private final boolean[] mayFail;
+    private final boolean[] conditions;
+    private final int[] trueLabels;
+    private final int[] falseLabels;
+    /** Whether the code after a condition is reached when it holds, rather than when it fails. */
+    private final boolean[] fallsWhenTrue;
+    private final int[] after;
+    private String[] values;
+    private int[] temporaries;
+    private boolean[] realValues;
+    private int valueCount;
+    private int[] controls;
+    private int controlCount;
+    private int statement;
+    private int labels;
+    private int spillBase;
+    private int intTop;
+    private int doubleTop;
+    private int intTemporaries;
+    private int doubleTemporaries;
+
+    private NativeCompiler(Ast ast, SemanticAnalysis semantics) {
+        this.ast = ast;
+        this.tokens = ast.tokens();
+        this.semantics = semantics;
+        this.cursor = new AstCursor(ast);
+        this.code = new StringBuilder();
+        this.stubs = new StringBuilder();
+        this.data = new StringBuilder();
+        this.realConstants = new HashMap<>();
+        this.texts = new HashMap<>();
+        List<Variable> variables = semantics.getVariables();
+        this.reals = new boolean[variables.size()];
+        for (Variable variable : variables) {
+            reals[variable.slot] = variable.type == Type.REAL;
+        }
+        this.locations = new String[variables.size()];
+        this.first = new int[variables.size()];
+        this.last = new int[variables.size()];
+        this.assigned = new boolean[variables.size()];
+        this.mayFail = new boolean[ast.size()];
+        this.conditions = new boolean[ast.size()];
+        this.trueLabels = new int[ast.size()];
+        this.falseLabels = new int[ast.size()];
+        this.fallsWhenTrue = new boolean[ast.size()];
+        this.after = new int[ast.size()];
+        Arrays.fill(after, -1);
+        this.values = new String[16];
+        this.temporaries = new int[16];
+        this.realValues = new boolean[16];
+        this.controls = new int[16];
+    }
+
+    /** Assembly of the program, to be linked with {@link NativeRuntime#SOURCE}. */
+    public static String compile(Ast ast, SemanticAnalysis semantics) {
+        return new NativeCompiler(ast, semantics).compile();
+    }
+
+    /** Compiles the program and links it with {@code cc} into the executable {@code path}. */
+    public static void build(Ast ast, SemanticAnalysis semantics, Path path) throws IOException {
+        String assembly = compile(ast, semantics);
+        Path directory = Files.createTempDirectory("native");
+        Path source = directory.resolve("program.s");
+        Path runtime = directory.resolve("runtime.c");
+        try {
+            Files.writeString(source, assembly);
+            Files.writeString(runtime, NativeRuntime.SOURCE);
+            Process cc = new ProcessBuilder("cc", "-O2", "-o", path.toAbsolutePath().toString(),
+                    source.toString(), runtime.toString(), "-lm").redirectErrorStream(true).start();
+            String output = new String(cc.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (cc.waitFor() != 0) {
+                throw new IOException("cc failed:\n" + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while linking " + path);
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(runtime);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private String compile() {
+        int statements = ast.child(ast.root());
+        while (ast.kind(statements) == NodeKind.DECLARATION) {
+            statements = ast.next(statements);
+        }
+        allocate(statements);
+        for (int node = 0; node < ast.size(); node++) {
+            mayFail[node] = mayFail(node);
+        }
+
+        statement = -1;
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            int parent = cursor.parent();
+            if (cursor.isEntering()) {
+                if (parent == statements) {
+                    statement++;
+                    initialize();
+                }
+                enter(node);
+            } else {
+                exit(node, parent);
+                if (after[node] >= 0) {
+                    label(after[node]);
+                }
+            }
+        }
+
+        int frame = spillBase + 16 * Math.max(Math.max(intTemporaries - INT_TEMPORARIES.length, 0),
+                Math.max(doubleTemporaries - DOUBLE_TEMPORARIES.length, 0));
+        if (frame % 16 == 0) {
+            // The return address and six saved registers leave the stack 8 bytes off.
+            frame += 8;
+        }
+        StringBuilder assembly = new StringBuilder();
+        assembly.append("\t.file\t\"").append(ast.text(ast.root())).append(".cc\"\n");
+        assembly.append("\t.text\n\t.globl\tmain\n\t.type\tmain, @function\nmain:\n");
+        for (String register : SAVED) {
+            assembly.append("\tpushq\t").append(register).append('\n');
+        }
+        assembly.append("\tsubq\t$").append(frame).append(", %rsp\n");
+        assembly.append(code);
+        assembly.append("\taddq\t$").append(frame).append(", %rsp\n");
+        for (int i = SAVED.length - 1; i >= 0; i--) {
+            assembly.append("\tpopq\t").append(SAVED[i]).append('\n');
+        }
+        assembly.append("\txorl\t%eax, %eax\n\tret\n");
+        assembly.append(stubs);
+        assembly.append("\t.size\tmain, .-main\n");
+        assembly.append("\t.section\t.rodata\n\t.align\t16\n.LNEG:\n\t.quad\t0x8000000000000000, 0\n");
+        assembly.append(data);
+        assembly.append("\t.section\t.note.GNU-stack,\"\",@progbits\n");
+        return assembly.toString();
+    }
+
+    /**
+     * Computes the top-level statements every variable is used in and places each one in a
+     * register or a frame slot.
+     */
+    private void allocate(int statements) {
+        Arrays.fill(first, -1);
+        int index = -1;
+        cursor.reset(statements);
+        while (cursor.next()) {
+            int node = cursor.node();
+            if (cursor.isEntering()) {
+                if (cursor.parent() == statements) {
+                    index++;
+                }
+                continue;
+            }
+            // Exits are in evaluation order, so an assignment comes after the uses in its value.
+            NodeKind kind = ast.kind(node);
+            if (kind == NodeKind.IDENTIFIER || kind == NodeKind.ASSIGN || kind == NodeKind.READ) {
+                int identifier = ast.identifier(node);
+                if (semantics.isVariableDeclared(identifier)) {
+                    int slot = semantics.getSlot(identifier);
+                    if (first[slot] < 0) {
+                        first[slot] = index;
+                        assigned[slot] = kind != NodeKind.IDENTIFIER && cursor.parent() == statements;
+                    }
+                    last[slot] = index;
+                }
+            }
+        }
+
+        int[] intFirst = first.clone();
+        int[] doubleFirst = first.clone();
+        for (int slot = 0; slot < reals.length; slot++) {
+            if (reals[slot]) {
+                intFirst[slot] = -1;
+            } else {
+                doubleFirst[slot] = -1;
+            }
+        }
+        int[] ints = LinearScan.allocate(intFirst, last, INT_REGISTERS.length);
+        int[] doubles = LinearScan.allocate(doubleFirst, last, DOUBLE_REGISTERS.length);
+        int intSpills = 0;
+        for (int slot = 0; slot < reals.length; slot++) {
+            if (ints[slot] >= INT_REGISTERS.length) {
+                intSpills = Math.max(intSpills, ints[slot] - INT_REGISTERS.length + 1);
+            }
+        }
+        int spills = intSpills;
+        for (int slot = 0; slot < reals.length; slot++) {
+            if (ints[slot] != LinearScan.UNUSED) {
+                locations[slot] = ints[slot] < INT_REGISTERS.length ? INT_REGISTERS[ints[slot]]
+                        : frame(XMM_SAVE + 8 * (ints[slot] - INT_REGISTERS.length));
+            } else if (doubles[slot] != LinearScan.UNUSED) {
+                int spill = doubles[slot] - DOUBLE_REGISTERS.length;
+                locations[slot] = spill < 0 ? DOUBLE_REGISTERS[doubles[slot]] : frame(XMM_SAVE + 8 * (intSpills + spill));
+                spills = Math.max(spills, intSpills + spill + 1);
+            }
+        }
+        spillBase = XMM_SAVE + 8 * spills;
+    }
+
+    /** Whether evaluating the node can fail an integer division. Children come before parents. */
+    private boolean mayFail(int node) {
+        int child = ast.child(node);
+        if (ast.kind(node) != NodeKind.BINARY && ast.kind(node) != NodeKind.NEGATE && ast.kind(node) != NodeKind.NOT) {
+            return false;
+        }
+        if (mayFail[child] || ast.next(child) != Ast.NONE && mayFail[ast.next(child)]) {
+            return true;
+        }
+        if (ast.kind(node) != NodeKind.BINARY || ast.type(node) != Type.INTEGER
+                || tokens.type(ast.token(node)) != TokenType.DIV) {
+            return false;
+        }
+        int divisor = ast.next(child);
+        return ast.kind(divisor) != NodeKind.INTEGER_CONST || new BigInteger(ast.text(divisor)).intValue() == 0;
+    }
+
+    /**
+     * Variables are 0 until assigned; each is cleared where it starts to live, unless that
+     * top-level statement assigns it before any use.
+     */
+    private void initialize() {
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (first[slot] != statement || assigned[slot]) {
+                continue;
+            }
+            String location = locations[slot];
+            if (reals[slot]) {
+                emit(isMemory(location) ? "movq\t$0, " + location : "xorpd\t" + location + ", " + location);
+            } else {
+                emit(isMemory(location) ? "movl\t$0, " + location : "xorl\t" + location + ", " + location);
+            }
+        }
+    }
+
+    private void enter(int node) {
+        switch (ast.kind(node)) {
+            case IF -> {
+                int otherwise = newLabel();
+                condition(ast.child(node), newLabel(), otherwise, true);
+                after[ast.child(node)] = trueLabels[ast.child(node)];
+                control(otherwise);
+            }
+            case REPEAT -> {
+                int start = newLabel();
+                label(start);
+                int until = ast.next(ast.child(node));
+                condition(until, newLabel(), start, true);
+                after[until] = trueLabels[until];
+            }
+            case BINARY, NOT -> {
+                if (!isBranching(node)) {
+                    return;
+                }
+                int left = ast.child(node);
+                if (ast.kind(node) == NodeKind.NOT) {
+                    condition(left, falseLabels[node], trueLabels[node], !fallsWhenTrue[node]);
+                    return;
+                }
+                int right = ast.next(left);
+                int next = newLabel();
+                if (tokens.type(ast.token(node)) == TokenType.AND) {
+                    condition(left, next, falseLabels[node], true);
+                } else {
+                    condition(left, trueLabels[node], next, false);
+                }
+                after[left] = next;
+                condition(right, trueLabels[node], falseLabels[node], fallsWhenTrue[node]);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void exit(int node, int parent) {
+        switch (ast.kind(node)) {
+            case IDENTIFIER -> {
+                int slot = semantics.getSlot(ast.identifier(node));
+                push(locations[slot], -1, reals[slot]);
+                operand(node, parent);
+            }
+            case INTEGER_CONST -> {
+                push("$" + new BigInteger(ast.text(node)).intValue(), -1, false);
+                operand(node, parent);
+            }
+            case REAL_CONST -> {
+                push(realConstant(Double.parseDouble(ast.text(node))), -1, true);
+                operand(node, parent);
+            }
+            case BINARY -> binary(node, parent);
+            case NEGATE -> {
+                String value = pop();
+                String target = target(node, parent);
+                if (ast.type(node) == Type.REAL) {
+                    emit("movsd\t" + value + ", %xmm0");
+                    emit("xorpd\t.LNEG(%rip), %xmm0");
+                    emit("movsd\t%xmm0, " + target);
+                } else {
+                    moveInt(value, target);
+                    emit("negl\t" + target);
+                }
+                operand(node, parent);
+            }
+            case NOT -> {
+                if (!isBranching(node)) {
+                    String value = pop();
+                    String target = target(node, parent);
+                    moveInt(value, target);
+                    emit("xorl\t$1, " + target);
+                    operand(node, parent);
+                }
+            }
+            case ASSIGN -> {
+                String value = pop();
+                String location = locations[semantics.getSlot(ast.identifier(node))];
+                if (ast.type(node) == Type.REAL) {
+                    moveReal(value, location);
+                } else {
+                    moveInt(value, location);
+                }
+            }
+            case READ -> read(node);
+            case WRITE -> write(node);
+            case STATEMENTS -> {
+                if (parent != Ast.NONE && ast.kind(parent) == NodeKind.IF
+                        && ast.next(ast.child(parent)) == node && ast.next(node) != Ast.NONE) {
+                    // End of the then branch: jump over the else branch, which starts here.
+                    int end = newLabel();
+                    emit("jmp\t" + name(end));
+                    label(controls[--controlCount]);
+                    control(end);
+                }
+            }
+            case IF -> label(controls[--controlCount]);
+            default -> {
+            }
+        }
+    }
+
+    private void binary(int node, int parent) {
+        int left = ast.child(node);
+        int right = ast.next(left);
+        TokenType op = tokens.type(ast.token(node));
+        if (isBranching(node)) {
+            return;
+        }
+        String b = pop();
+        String a = pop();
+        boolean real = ast.type(left) == Type.REAL || ast.type(right) == Type.REAL;
+        if (op == TokenType.AND || op == TokenType.OR) {
+            intOperation(op == TokenType.AND ? "andl" : "orl", a, b, target(node, parent));
+            operand(node, parent);
+            return;
+        }
+        if (ast.type(node) == Type.BOOLEAN) {
+            comparison(node, parent, comparisonIndex(op), real, a, b);
+            return;
+        }
+        String target = target(node, parent);
+        if (op == TokenType.DIV && !real) {
+            divide(node, a, b, target);
+        } else {
+            String suffix = real ? "sd" : "l";
+            String name = switch (op) {
+                case ADD -> "add";
+                case SUB -> "sub";
+                case MUL -> real ? "mul" : "imul";
+                default -> "div";
+            };
+            if (real) {
+                realOperation(name + suffix, a, b, target);
+            } else {
+                intOperation(name + suffix, a, b, target);
+            }
+        }
+        operand(node, parent);
+    }
+
+    private void comparison(int node, int parent, int index, boolean real, String a, String b) {
+        if (real) {
+            // ucomisd sets CF and ZF like an unsigned compare, and PF when either is NaN.
+            boolean swap = index == 2 || index == 3;
+            String x = swap ? b : a;
+            String y = swap ? a : b;
+            if (isMemory(x)) {
+                emit("movsd\t" + x + ", %xmm0");
+                x = "%xmm0";
+            }
+            emit("ucomisd\t" + y + ", " + x);
+        } else if (b.equals("$0") && !isMemory(a) && !a.startsWith("$")) {
+            emit("testl\t" + a + ", " + a);
+        } else if (a.startsWith("$") || isMemory(a) && isMemory(b)) {
+            emit("movl\t" + a + ", %eax");
+            emit("cmpl\t" + b + ", %eax");
+        } else {
+            emit("cmpl\t" + b + ", " + a);
+        }
+
+        if (conditions[node]) {
+            if (real && index <= 1) {
+                equalityJump(node, index == 0);
+            } else {
+                String holds = real ? (index == 2 || index == 4 ? "a" : "ae") : INT_CONDITIONS[index];
+                String fails = real ? (index == 2 || index == 4 ? "be" : "b") : INT_CONDITIONS[NEGATED[index]];
+                jump(node, holds, fails);
+            }
+            return;
+        }
+        if (!real) {
+            emit("set" + INT_CONDITIONS[index] + "\t%al");
+        } else if (index == 0) {
+            emit("sete\t%al");
+            emit("setnp\t%dl");
+            emit("andb\t%dl, %al");
+        } else if (index == 1) {
+            emit("setne\t%al");
+            emit("setp\t%dl");
+            emit("orb\t%dl, %al");
+        } else {
+            emit(index == 2 || index == 4 ? "seta\t%al" : "setae\t%al");
+        }
+        emit("movzbl\t%al, %eax");
+        moveInt("%eax", target(node, parent));
+        operand(node, parent);
+    }
+
+    /** Branches on the flags of a real {@code ==} or {@code <>}: equal means ZF set and PF clear. */
+    private void equalityJump(int node, boolean equal) {
+        boolean jumpWhenEqual = equal != fallsWhenTrue[node];
+        String target = name(fallsWhenTrue[node] ? falseLabels[node] : trueLabels[node]);
+        if (jumpWhenEqual) {
+            int skip = newLabel();
+            emit("jp\t" + name(skip));
+            emit("je\t" + target);
+            label(skip);
+        } else {
+            emit("jne\t" + target);
+            emit("jp\t" + target);
+        }
+    }
+
+    /** Jumps to the label of the outcome that does not fall through. */
+    private void jump(int node, String holds, String fails) {
+        if (fallsWhenTrue[node]) {
+            emit("j" + fails + "\t" + name(falseLabels[node]));
+        } else {
+            emit("j" + holds + "\t" + name(trueLabels[node]));
+        }
+    }
+
+    /**
+     * Integer division like Java's: a divisor of -1 negates, since idiv traps on MIN_VALUE
+     * / -1. A constant divisor needs neither test.
+     */
+    private void divide(int node, String a, String b, String target) {
+        if (b.equals("$-1")) {
+            moveInt(a, target);
+            emit("negl\t" + target);
+            return;
+        }
+        if (b.startsWith("$") && !b.equals("$0")) {
+            emit("movl\t" + a + ", %eax");
+            emit("movl\t" + b + ", %r11d");
+            emit("cltd");
+            emit("idivl\t%r11d");
+            moveInt("%eax", target);
+            return;
+        }
+        int zero = newLabel();
+        if (b.equals("$0")) {
+            emit("jmp\t" + name(zero));
+        } else {
+            int negate = newLabel();
+            int done = newLabel();
+            emit("movl\t" + b + ", %r11d");
+            emit("testl\t%r11d, %r11d");
+            emit("je\t" + name(zero));
+            emit("movl\t" + a + ", %eax");
+            emit("cmpl\t$-1, %r11d");
+            emit("je\t" + name(negate));
+            emit("cltd");
+            emit("idivl\t%r11d");
+            emit("jmp\t" + name(done));
+            label(negate);
+            emit("negl\t%eax");
+            label(done);
+            moveInt("%eax", target);
+        }
+        stubs.append(name(zero)).append(":\n");
+        stubs.append("\tmovl\t$").append(tokens.line(ast.token(node))).append(", %edi\n");
+        stubs.append("\tcall\trt_div_zero\n");
+    }
+
+    private void intOperation(String op, String a, String b, String target) {
+        if (!isMemory(target) && !target.equals(b)) {
+            moveInt(a, target);
+            emit(op + "\t" + b + ", " + target);
+        } else {
+            emit("movl\t" + a + ", %eax");
+            emit(op + "\t" + b + ", %eax");
+            emit("movl\t%eax, " + target);
+        }
+    }
+
+    private void realOperation(String op, String a, String b, String target) {
+        if (!isMemory(target) && !target.equals(b)) {
+            moveReal(a, target);
+            emit(op + "\t" + b + ", " + target);
+        } else {
+            emit("movsd\t" + a + ", %xmm0");
+            emit(op + "\t" + b + ", %xmm0");
+            emit("movsd\t%xmm0, " + target);
+        }
+    }
+
+    /** Widens an integer operand where a real is expected and branches on a condition. */
+    private void operand(int node, int parent) {
+        if (parent == Ast.NONE) {
+            return;
+        }
+        if (ast.type(node) == Type.INTEGER && isWidened(node, parent)) {
+            String value = pop();
+            if (value.startsWith("$")) {
+                push(realConstant(Integer.parseInt(value.substring(1))), -1, true);
+            } else {
+                int temporary = doubleTemporary();
+                String target = doubleLocation(temporary);
+                push(target, temporary, true);
+                if (isMemory(target)) {
+                    emit("cvtsi2sdl\t" + value + ", %xmm0");
+                    emit("movsd\t%xmm0, " + target);
+                } else {
+                    emit("cvtsi2sdl\t" + value + ", " + target);
+                }
+            }
+        }
+        if (conditions[node] && !isBranching(node)) {
+            String value = pop();
+            emit(isMemory(value) ? "cmpl\t$0, " + value : "testl\t" + value + ", " + value);
+            jump(node, "ne", "e");
+        }
+    }
+
+    private boolean isWidened(int node, int parent) {
+        return switch (ast.kind(parent)) {
+            case ASSIGN -> ast.type(parent) == Type.REAL;
+            case BINARY -> {
+                int sibling = ast.child(parent) == node ? ast.next(node) : ast.child(parent);
+                yield ast.type(sibling) == Type.REAL;
+            }
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether the node is a condition compiled to jumps between its operands: a
+     * {@code not}, or an {@code and} or {@code or} whose right operand cannot fail.
+     */
+    private boolean isBranching(int node) {
+        if (!conditions[node]) {
+            return false;
+        }
+        if (ast.kind(node) == NodeKind.NOT) {
+            return true;
+        }
+        if (ast.kind(node) != NodeKind.BINARY) {
+            return false;
+        }
+        TokenType op = tokens.type(ast.token(node));
+        return (op == TokenType.AND || op == TokenType.OR) && !mayFail[ast.next(ast.child(node))];
+    }
+
+    private void condition(int node, int whenTrue, int whenFalse, boolean fallsWhenTrue) {
+        conditions[node] = true;
+        trueLabels[node] = whenTrue;
+        falseLabels[node] = whenFalse;
+        this.fallsWhenTrue[node] = fallsWhenTrue;
+    }
+
+    private void read(int node) {
+        int identifier = ast.identifier(node);
+        emit("movl\t$" + tokens.line(ast.token(node)) + ", %edi");
+        if (!semantics.isVariableDeclared(identifier)) {
+            call("rt_skip");
+            return;
+        }
+        String location = locations[semantics.getSlot(identifier)];
+        if (reals[semantics.getSlot(identifier)]) {
+            call("rt_read_real");
+            moveReal("%xmm0", location);
+        } else {
+            call("rt_read_int");
+            moveInt("%eax", location);
+        }
+    }
+
+    private void write(int node) {
+        int child = ast.child(node);
+        if (ast.kind(child) == NodeKind.TEXT) {
+            byte[] text = ast.text(child).getBytes(StandardCharsets.UTF_8);
+            emit("leaq\t" + text(text) + "(%rip), %rdi");
+            emit("movl\t$" + text.length + ", %esi");
+            call("rt_write_text");
+            return;
+        }
+        String value = pop();
+        if (ast.type(child) == Type.REAL) {
+            moveReal(value, "%xmm0");
+            call("rt_write_real");
+        } else {
+            emit("movl\t" + value + ", %edi");
+            call(ast.type(child) == Type.BOOLEAN ? "rt_write_bool" : "rt_write_int");
+        }
+    }
+
+    /** Calls the runtime, keeping the real variables that live in caller-saved registers. */
+    private void call(String function) {
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (isSavedAcrossCalls(slot)) {
+                emit("movsd\t" + locations[slot] + ", " + saveSlot(locations[slot]));
+            }
+        }
+        emit("call\t" + function);
+        for (int slot = 0; slot < locations.length; slot++) {
+            if (isSavedAcrossCalls(slot)) {
+                emit("movsd\t" + saveSlot(locations[slot]) + ", " + locations[slot]);
+            }
+        }
+    }
+
+    /** Frame slot a real variable in {@code %xmm8}-{@code %xmm15} is saved to. */
+    private static String saveSlot(String register) {
+        return frame(8 * (Integer.parseInt(register.substring("%xmm".length())) - 8));
+    }
+
+    private boolean isSavedAcrossCalls(int slot) {
+        return reals[slot] && locations[slot] != null && !isMemory(locations[slot])
+                && first[slot] <= statement && statement <= last[slot];
+    }
+
+    /**
+     * Location an operation stores its result in, pushed as its value: the assigned
+     * variable when the value needs no conversion, otherwise a new temporary.
+     */
+    private String target(int node, int parent) {
+        if (parent != Ast.NONE && ast.kind(parent) == NodeKind.ASSIGN && ast.type(parent) == ast.type(node)) {
+            String location = locations[semantics.getSlot(ast.identifier(parent))];
+            push(location, -1, ast.type(node) == Type.REAL);
+            return location;
+        }
+        if (ast.type(node) == Type.REAL) {
+            int temporary = doubleTemporary();
+            push(doubleLocation(temporary), temporary, true);
+        } else {
+            int temporary = intTemporary();
+            push(intLocation(temporary), temporary, false);
+        }
+        return values[valueCount - 1];
+    }
+
+    private String intLocation(int temporary) {
+        return temporary < INT_TEMPORARIES.length ? INT_TEMPORARIES[temporary]
+                : frame(spillBase + 16 * (temporary - INT_TEMPORARIES.length));
+    }
+
+    private String doubleLocation(int temporary) {
+        return temporary < DOUBLE_TEMPORARIES.length ? DOUBLE_TEMPORARIES[temporary]
+                : frame(spillBase + 16 * (temporary - DOUBLE_TEMPORARIES.length) + 8);
+    }
+
+    private int intTemporary() {
+        intTemporaries = Math.max(intTemporaries, intTop + 1);
+        return intTop++;
+    }
+
+    private int doubleTemporary() {
+        doubleTemporaries = Math.max(doubleTemporaries, doubleTop + 1);
+        return doubleTop++;
+    }
+
+    private void push(String value, int temporary, boolean real) {
+        if (valueCount == values.length) {
+            values = Arrays.copyOf(values, valueCount * 2);
+            temporaries = Arrays.copyOf(temporaries, valueCount * 2);
+            realValues = Arrays.copyOf(realValues, valueCount * 2);
+        }
+        values[valueCount] = value;
+        temporaries[valueCount] = temporary;
+        realValues[valueCount++] = real;
+    }
+
+    /** Pops a value, freeing it if it is a temporary; temporaries are freed from the top. */
+    private String pop() {
+        String value = values[--valueCount];
+        int temporary = temporaries[valueCount];
+        if (temporary >= 0 && realValues[valueCount]) {
+            doubleTop = Math.min(doubleTop, temporary);
+        } else if (temporary >= 0) {
+            intTop = Math.min(intTop, temporary);
+        }
+        return value;
+    }
+
+    private void moveInt(String from, String to) {
+        if (from.equals(to)) {
+            return;
+        }
+        if (isMemory(from) && isMemory(to)) {
+            emit("movl\t" + from + ", %eax");
+            from = "%eax";
+        }
+        emit("movl\t" + from + ", " + to);
+    }
+
+    private void moveReal(String from, String to) {
+        if (from.equals(to)) {
+            return;
+        }
+        if (isMemory(from) && isMemory(to)) {
+            emit("movsd\t" + from + ", %xmm0");
+            from = "%xmm0";
+        }
+        emit("movsd\t" + from + ", " + to);
+    }
+
+    private String realConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return realConstants.computeIfAbsent(bits, key -> {
+            String name = name(newLabel());
+            data.append("\t.align\t8\n").append(name).append(":\n\t.quad\t").append(key).append('\n');
+            return name + "(%rip)";
+        });
+    }
+
+    private String text(byte[] text) {
+        String key = new String(text, StandardCharsets.ISO_8859_1);
+        return texts.computeIfAbsent(key, k -> {
+            String name = name(newLabel());
+            data.append(name).append(":\n\t.ascii\t\"");
+            for (byte b : text) {
+                int c = b & 0xFF;
+                if (c >= 0x20 && c < 0x7F && c != '"' && c != '\\') {
+                    data.append((char) c);
+                } else {
+                    data.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + (c >> 3 & 7)))
+                            .append((char) ('0' + (c & 7)));
+                }
+            }
+            data.append("\"\n");
+            return name;
+        });
+    }
+
+    /** Offset of a comparison in the EQ, NE, LT, LE, GT, GE tables. */
+    private static int comparisonIndex(TokenType op) {
+        return switch (op) {
+            case EQUAL -> 0;
+            case NOT_EQUAL -> 1;
+            case LOWER_THAN -> 2;
+            case LOWER_EQUAL -> 3;
+            case GREATER_THAN -> 4;
+            default -> 5;
+        };
+    }
+
+    private static boolean isMemory(String operand) {
+        return operand.indexOf('(') >= 0;
+    }
+
+    private static String frame(int offset) {
+        return offset + "(%rsp)";
+    }
+
+    private int newLabel() {
+        return labels++;
+    }
+
+    private void label(int label) {
+        code.append(name(label)).append(":\n");
+    }
+
+    private static String name(int label) {
+        return ".L" + label;
+    }
+
+    private void control(int label) {
+        if (controlCount == controls.length) {
+            controls = Arrays.copyOf(controls, controlCount * 2);
+        }
+        controls[controlCount++] = label;
+    }
+
+    private void emit(String instruction) {
+        code.append('\t').append(instruction).append('\n');
+    }
+}
@@ -0,0 +1,263 @@
+package x86;
+
+/**
+ * C source of the runtime a native program links with, on top of libc. It reads and
+ * prints like {@code vm.Console}: {@code read} takes the next whitespace separated word
+ * and accepts what {@code Integer.parseInt}, with ASCII digits only, or
+ * {@code Double.parseDouble} accept; reals print as {@code Double.toString} does, as the
+ * decimal closest to the value among those with the fewest digits that read back as it,
+ * or with two digits when one is enough; a runtime error flushes the output,
+ * prints {@code Erro na linha NN} like {@code Main --run} and exits with status 1.
+ */
+final class NativeRuntime {
+    static final String SOURCE = """
+            #include <ctype.h>
+            #include <math.h>
+            #include <stdio.h>
+            #include <stdlib.h>
+            #include <string.h>
+
+            static char *word;
+            static size_t capacity;
+
+            static void rt_fail(int line, const char *message, const char *detail) {
+                fflush(stdout);
+                printf("Erro na linha %02d\\n", line);
+                fflush(stdout);
+                if (detail != NULL) {
+                    fprintf(stderr, "Erro de execução: %s [%s]\\n", message, detail);
+                } else {
+                    fprintf(stderr, "Erro de execução: %s\\n", message);
+                }
+                exit(1);
+            }
+
+            void rt_div_zero(int line) {
+                rt_fail(line, "Divisão por zero", NULL);
+            }
+
+            static const char *rt_next(int line) {
+                size_t length = 0;
+                int c;
+                fflush(stdout);
+                do {
+                    c = getchar();
+                } while (c != EOF && isspace(c));
+                if (c == EOF) {
+                    rt_fail(line, "Fim da entrada", NULL);
+                }
+                while (c != EOF && !isspace(c)) {
+                    if (length + 1 >= capacity) {
+                        capacity = capacity == 0 ? 64 : capacity * 2;
+                        word = realloc(word, capacity);
+                        if (word == NULL) {
+                            abort();
+                        }
+                    }
+                    word[length++] = (char) c;
+                    c = getchar();
+                }
+                word[length] = '\\0';
+                return word;
+            }
+
+            int rt_read_int(int line) {
+                const char *text = rt_next(line);
+                const char *p = text;
+                int negative = *p == '-';
+                long long value = 0;
+                if (*p == '-' || *p == '+') {
+                    p++;
+                }
+                if (*p == '\\0') {
+                    rt_fail(line, "Entrada inválida", text);
+                }
+                for (; *p != '\\0'; p++) {
+                    if (*p < '0' || *p > '9') {
+                        rt_fail(line, "Entrada inválida", text);
+                    }
+                    value = value * 10 + (*p - '0');
+                    if (value > 2147483648LL) {
+                        rt_fail(line, "Entrada inválida", text);
+                    }
+                }
+                if (!negative && value == 2147483648LL) {
+                    rt_fail(line, "Entrada inválida", text);
+                }
+                return (int) (negative ? -value : value);
+            }
+
+            double rt_read_real(int line) {
+                const char *text = rt_next(line);
+                const char *p = text;
+                int digits = 0;
+                double sign = 1;
+                char *end;
+                double value;
+                if (*p == '-' || *p == '+') {
+                    sign = *p == '-' ? -1 : 1;
+                    p++;
+                }
+                if (strcmp(p, "NaN") == 0) {
+                    return NAN;
+                }
+                if (strcmp(p, "Infinity") == 0) {
+                    return sign * INFINITY;
+                }
+                if (p[0] == '0' && (p[1] == 'x' || p[1] == 'X')) {
+                    // Hexadecimal needs a binary exponent.
+                    value = strtod(text, &end);
+                    if (end == text || strpbrk(text, "pP") == NULL
+                            || *end != '\\0' && (strchr("fFdD", *end) == NULL || end[1] != '\\0')) {
+                        rt_fail(line, "Entrada inválida", text);
+                    }
+                    return value;
+                }
+                for (; isdigit((unsigned char) *p); p++) {
+                    digits++;
+                }
+                if (*p == '.') {
+                    for (p++; isdigit((unsigned char) *p); p++) {
+                        digits++;
+                    }
+                }
+                if (digits > 0 && (*p == 'e' || *p == 'E')) {
+                    p++;
+                    if (*p == '-' || *p == '+') {
+                        p++;
+                    }
+                    if (!isdigit((unsigned char) *p)) {
+                        digits = 0;
+                    }
+                    while (isdigit((unsigned char) *p)) {
+                        p++;
+                    }
+                }
+                if (strchr("fFdD", *p) != NULL && *p != '\\0') {
+                    p++;
+                }
+                if (digits == 0 || *p != '\\0') {
+                    rt_fail(line, "Entrada inválida", text);
+                }
+                return strtod(text, NULL);
+            }
+
+            void rt_skip(int line) {
+                rt_next(line);
+            }
+
+            void rt_write_int(int value) {
+                printf("%d\\n", value);
+            }
+
+            void rt_write_bool(int value) {
+                fputs(value ? "true\\n" : "false\\n", stdout);
+            }
+
+            void rt_write_text(const char *text, long length) {
+                fwrite(text, 1, (size_t) length, stdout);
+                putchar('\\n');
+            }
+
+            static int rt_reads_as(unsigned long long digits, int exponent, double value) {
+                char buffer[40];
+                snprintf(buffer, sizeof buffer, "%llue%d", digits, exponent);
+                return strtod(buffer, NULL) == value;
+            }
+
+            /*
+             * The decimal of precision digits closest to value that reads back as it, if any.
+             * When the closest one misses, only its neighbour on the other side of value can
+             * still hit, which happens next to a power of two, where the doubles are denser
+             * below than above.
+             */
+            static int rt_closest(double value, int precision, unsigned long long *digits, int *exponent) {
+                char buffer[32];
+                char *p;
+                unsigned long long closest = 0;
+                snprintf(buffer, sizeof buffer, "%.*e", precision - 1, value);
+                for (p = buffer; *p != 'e'; p++) {
+                    if (isdigit((unsigned char) *p)) {
+                        closest = closest * 10 + (unsigned long long) (*p - '0');
+                    }
+                }
+                *exponent = atoi(p + 1) - (precision - 1);
+                *digits = closest;
+                if (rt_reads_as(closest, *exponent, value)) {
+                    return 1;
+                }
+                *digits = strtod(buffer, NULL) < value ? closest + 1 : closest - 1;
+                return rt_reads_as(*digits, *exponent, value);
+            }
+
+            void rt_write_real(double value) {
+                char digits[24];
+                int count;
+                int exponent;
+                int precision;
+                unsigned long long decimal;
+                if (isnan(value)) {
+                    fputs("NaN\\n", stdout);
+                    return;
+                }
+                if (isinf(value)) {
+                    fputs(value < 0 ? "-Infinity\\n" : "Infinity\\n", stdout);
+                    return;
+                }
+                if (value == 0) {
+                    fputs(signbit(value) ? "-0.0\\n" : "0.0\\n", stdout);
+                    return;
+                }
+                if (value < 0) {
+                    putchar('-');
+                    value = -value;
+                }
+                precision = 1;
+                while (!rt_closest(value, precision, &decimal, &exponent)) {
+                    precision++;
+                }
+                if (precision == 1) {
+                    // Two digits are considered too, and the closer wins: 4.9E-324, not 5.0E-324.
+                    rt_closest(value, 2, &decimal, &exponent);
+                }
+                count = snprintf(digits, sizeof digits, "%llu", decimal);
+                exponent += count - 1;
+                while (count > 1 && digits[count - 1] == '0') {
+                    count--;
+                }
+                if (exponent >= -3 && exponent < 7) {
+                    int i;
+                    if (exponent < 0) {
+                        fputs("0.", stdout);
+                        for (i = -1; i > exponent; i--) {
+                            putchar('0');
+                        }
+                        fwrite(digits, 1, (size_t) count, stdout);
+                    } else {
+                        for (i = 0; i <= exponent; i++) {
+                            putchar(i < count ? digits[i] : '0');
+                        }
+                        putchar('.');
+                        if (count > exponent + 1) {
+                            fwrite(digits + exponent + 1, 1, (size_t) (count - exponent - 1), stdout);
+                        } else {
+                            putchar('0');
+                        }
+                    }
+                    putchar('\\n');
+                } else {
+                    putchar(digits[0]);
+                    putchar('.');
+                    if (count > 1) {
+                        fwrite(digits + 1, 1, (size_t) (count - 1), stdout);
+                    } else {
+                        putchar('0');
+                    }
+                    printf("E%d\\n", exponent);
+                }
+            }
+            """;
+
+    private NativeRuntime() {
+    }
+}